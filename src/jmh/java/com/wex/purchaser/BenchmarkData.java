@@ -0,0 +1,97 @@
+package com.wex.purchaser;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.fiscalapi.ExchangeRate;
+
+/**
+ * Synthetic transactions and exchange rates for the benchmarks.
+ * Data is generated from a fixed seed so every run measures the same input.
+ */
+public final class BenchmarkData {
+
+	public static final String CURRENCY="Canada-Dollar";
+	
+	//transactions are spread over three years from this day
+	public static final LocalDate FIRST_DAY=LocalDate.of(2021, 1, 1);
+	public static final int DAYS=3 * 365;
+	
+	//rates start before the first transaction, so its 6 month window is covered
+	private static final int RATE_LEAD_DAYS=200;
+	
+	private BenchmarkData() {
+	}
+	
+	public static List<Transaction> transactions(int count) {
+		
+		Random random=new Random(42);
+		long firstMillis=FIRST_DAY.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+		long rangeMillis=DAYS * 86_400_000L;
+		
+		List<Transaction> transactions=new ArrayList<>(count);
+		for (int i=0; i<count; i++) {
+			transactions.add(Transaction.builder()
+					.transactionId(i + 1)
+					.description("Transaction " + (i + 1))
+					.amount(BigDecimal.valueOf(random.nextInt(1_000_000), 2))
+					.createdAt(new Timestamp(firstMillis + (long) (random.nextDouble() * rangeMillis)))
+					.build());
+		}
+		return transactions;
+	}
+	
+	   /**
+	   * Exchange rates evenly spread over the transaction period, in random order like the fiscal API response
+	   * @param count number of rates
+	   * @return exchange rate list
+	   */
+	public static List<ExchangeRate> rates(int count) {
+		
+		Random random=new Random(7);
+		LocalDate firstRateDay=FIRST_DAY.minusDays(RATE_LEAD_DAYS);
+		double step=(double) (DAYS + RATE_LEAD_DAYS) / count;
+		
+		List<ExchangeRate> rates=new ArrayList<>(count);
+		for (int i=0; i<count; i++) {
+			LocalDate effectiveDate=firstRateDay.plusDays((long) (i * step));
+			rates.add(ExchangeRate.builder()
+					.countryCurrencyDesc(CURRENCY)
+					.exchangeRate(BigDecimal.valueOf(12000 + random.nextInt(2000), 4))
+					.effectiveDate(effectiveDate.toString())
+					.recordDate(effectiveDate.toString())
+					.build());
+		}
+		Collections.shuffle(rates, random);
+		return rates;
+	}
+	
+	public static List<TransactionDTO> transactionDTOs(int count) {
+		
+		Random random=new Random(42);
+		List<TransactionDTO> transactionList=new ArrayList<>(count);
+		for (int i=0; i<count; i++) {
+			BigDecimal amountInUSD=BigDecimal.valueOf(random.nextInt(1_000_000), 2);
+			BigDecimal rate=BigDecimal.valueOf(12000 + random.nextInt(2000), 4);
+			transactionList.add(TransactionDTO.builder()
+					.transactionId(i + 1)
+					.description("Transaction " + (i + 1))
+					.amountInUSD(amountInUSD)
+					.currency(CURRENCY)
+					.exchangeRate(rate)
+					.exchangeRateEfferctiveDate("2023-12-31")
+					.amount(amountInUSD.multiply(rate).setScale(2, BigDecimal.ROUND_HALF_UP))
+					.transactionDate("2024-01-15")
+					.build());
+		}
+		return transactionList;
+	}
+}
@@ -0,0 +1,98 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wex.purchaser.BenchmarkData;
+
+/**
+ * Decoding a fiscal API response page of several currencies into rate timelines:
+ * the page decode and timeline builders of a fetch, as run by FiscalApi and ExchangeRateService, 
+ * against the former data binding into ApiResponse, grouping by currency and sorting each list.
+ * Run with -prof gc to compare the allocation per response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExchangeRateReaderBenchmark {
+	
+	private static final String[] CURRENCIES={"Canada-Dollar", "Euro Zone-Euro", "Hong Kong-Dollar", "Japan-Yen", "Mexico-Peso"};
+	
+	//rates of each currency in the response
+	@Param({"100", "10000"})
+	private int rateCount;
+	
+	private byte[] payload;
+	
+	private ObjectMapper objectMapper;
+	
+	@Setup
+	public void setup() {
+		
+		//numbers are strings and record date comes first, as sent by fiscal API
+		StringBuilder json=new StringBuilder("{\"data\":[");
+		List<ExchangeRate> rates=BenchmarkData.rates(rateCount);
+		for (int i=0; i<rates.size(); i++) {
+			for (int c=0; c<CURRENCIES.length; c++) {
+				ExchangeRate rate=rates.get(i);
+				if (i > 0 || c > 0) {
+					json.append(',');
+				}
+				json.append("{\"record_date\":\"").append(rate.getRecordDate())
+						.append("\",\"country_currency_desc\":\"").append(CURRENCIES[c])
+						.append("\",\"exchange_rate\":\"").append(rate.getExchangeRate().toPlainString())
+						.append("\",\"effective_date\":\"").append(rate.getEffectiveDate()).append("\"}");
+			}
+		}
+		int total=rateCount * CURRENCIES.length;
+		json.append("],\"meta\":{\"count\":").append(total).append(",\"total-count\":").append(total).append(",\"total-pages\":1}}");
+		payload=json.toString().getBytes(StandardCharsets.UTF_8);
+		
+		objectMapper=new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+	}
+	
+	@Benchmark
+	public Map<String, RateTimeline> streaming() throws IOException {
+		
+		RateTimelines timelines=new RateTimelines(Arrays.asList(CURRENCIES), rateCount);
+		FiscalApi.readPage(new ByteArrayInputStream(payload)).getData().forEach(timelines::add);
+		return timelines.build();
+	}
+	
+	@Benchmark
+	public Map<String, RateTimeline> dataBinding() throws IOException {
+		
+		ApiResponse response=objectMapper.readValue(new ByteArrayInputStream(payload), ApiResponse.class);
+		
+		Map<String, List<ExchangeRate>> rateMap=response.getData().stream()
+				.collect(Collectors.groupingBy(ExchangeRate::getCountryCurrencyDesc));
+		
+		Map<String, RateTimeline> timelines=new HashMap<>();
+		rateMap.forEach((currency, rateList)->timelines.put(currency, RateTimeline.of(currency, rateList)));
+		return timelines;
+	}
+}
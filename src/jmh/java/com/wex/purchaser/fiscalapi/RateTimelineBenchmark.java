@@ -0,0 +1,87 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wex.purchaser.BenchmarkData;
+
+/**
+ * Rate lookup for one transaction: the binary search of RateTimeline against 
+ * the former sort and string date comparison of every rate (checkExchangeDate / exchangeDateToInt)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RateTimelineBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	private int rateCount;
+	
+	private List<ExchangeRate> rates;
+	
+	private RateTimeline timeline;
+	
+	private int[] days;
+	
+	private int next;
+	
+	@Setup
+	public void setup() {
+		
+		rates=BenchmarkData.rates(rateCount);
+		timeline=RateTimeline.of(BenchmarkData.CURRENCY, rates);
+		
+		days=new int[1024];
+		int firstDay=(int) BenchmarkData.FIRST_DAY.toEpochDay();
+		for (int i=0; i<days.length; i++) {
+			days[i]=firstDay + (int) ((long) i * BenchmarkData.DAYS / days.length);
+		}
+	}
+	
+	@Benchmark
+	public int indexOfLatest() {
+		int day=nextDay();
+		return timeline.indexOfLatest((int) LocalDate.ofEpochDay(day).minusMonths(6).toEpochDay(), day);
+	}
+	
+	@Benchmark
+	public ExchangeRate sortAndCompareStrings() {
+		LocalDate date=LocalDate.ofEpochDay(nextDay());
+		String startDate=date.minusMonths(6).toString();
+		String endDate=date.toString();
+		return rates.stream()
+				.sorted((r1,r2)->-r1.getEffectiveDate().compareTo(r2.getEffectiveDate()))
+				.filter(r->checkExchangeDate(r.getEffectiveDate(), startDate, endDate))
+				.findFirst().orElse(null);
+	}
+	
+	private int nextDay() {
+		next=(next + 1) & (days.length - 1);
+		return days[next];
+	}
+	
+	private boolean checkExchangeDate(String date, String startDate, String endDate) {
+		int dateInt=exchangeDateToInt(date);
+		return dateInt > exchangeDateToInt(startDate) && dateInt < exchangeDateToInt(endDate);
+	}
+	
+	private int exchangeDateToInt(String date) {
+		return Integer.valueOf(date.replaceAll("-", ""));
+	}
+}
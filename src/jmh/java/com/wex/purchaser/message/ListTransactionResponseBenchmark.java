@@ -0,0 +1,56 @@
+package com.wex.purchaser.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wex.purchaser.BenchmarkData;
+
+/**
+ * JSON serialization of the list response with the same ObjectMapper defaults as Spring MVC
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ListTransactionResponseBenchmark {
+
+	@Param({"1000", "100000"})
+	private int transactionCount;
+	
+	private ObjectMapper objectMapper;
+	
+	private ListTransactionResponse response;
+	
+	private ByteArrayOutputStream out;
+	
+	@Setup
+	public void setup() {
+		objectMapper=Jackson2ObjectMapperBuilder.json().build();
+		response=new ListTransactionResponse(BenchmarkData.transactionDTOs(transactionCount));
+		out=new ByteArrayOutputStream(transactionCount * 256);
+	}
+	
+	@Benchmark
+	public int serialize() throws IOException {
+		out.reset();
+		objectMapper.writeValue(out, response);
+		return out.size();
+	}
+}
@@ -0,0 +1,105 @@
+package com.wex.purchaser.service;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.wex.purchaser.BenchmarkData;
+import com.wex.purchaser.config.ConversionViewProperties;
+import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.fiscalapi.ExchangeRate;
+import com.wex.purchaser.fiscalapi.ExchangeRateCache;
+import com.wex.purchaser.fiscalapi.RateTimeline;
+import com.wex.purchaser.repository.TransactionRepository;
+
+/**
+ * Conversion hot path of TransactionService with the repository and rate cache stubbed,
+ * so only the conversion work is measured
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransactionServiceBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	private int transactionCount;
+	
+	@Param({"10", "1000", "10000"})
+	private int rateCount;
+	
+	private TransactionService service;
+	
+	private List<Transaction> transactions;
+	
+	private List<ExchangeRate> rates;
+	
+	private RateTimeline timeline;
+	
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setup() throws ServiceException {
+		
+		transactions=BenchmarkData.transactions(transactionCount);
+		rates=BenchmarkData.rates(rateCount);
+		timeline=RateTimeline.of(BenchmarkData.CURRENCY, rates);
+		
+		TransactionRepository repository=mock(TransactionRepository.class);
+		when(repository.findAll()).thenReturn(transactions);
+		
+		ExchangeRateCache rateCache=mock(ExchangeRateCache.class);
+		when(rateCache.getTimelines(anyList(), anyString())).thenReturn(Collections.singletonMap(BenchmarkData.CURRENCY, timeline));
+		
+		service=new TransactionService();
+		ReflectionTestUtils.setField(service, "repository", repository);
+		ReflectionTestUtils.setField(service, "rateCache", rateCache);
+		ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+		
+		//conversion view disabled, every transaction is converted
+		ConversionViewService conversionView=new ConversionViewService();
+		ReflectionTestUtils.setField(conversionView, "properties", new ConversionViewProperties());
+		ReflectionTestUtils.setField(service, "conversionView", conversionView);
+	}
+	
+	@Benchmark
+	public List<TransactionDTO> listTransaction() throws ServiceException {
+		return service.listTransaction(BenchmarkData.CURRENCY);
+	}
+	
+	@Benchmark
+	public TransactionDTO mapToDTO() {
+		next=next + 1 == transactions.size() ? 0 : next + 1;
+		return service.mapToDTO(transactions.get(next), timeline);
+	}
+	
+	@Benchmark
+	public RateTimeline buildTimeline() {
+		return RateTimeline.of(BenchmarkData.CURRENCY, rates);
+	}
+}
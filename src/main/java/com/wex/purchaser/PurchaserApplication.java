@@ -3,13 +3,21 @@ package com.wex.purchaser;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableEurekaClient
+@EnableScheduling
 public class PurchaserApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(PurchaserApplication.class, args);
+		ConfigurableApplicationContext context=SpringApplication.run(PurchaserApplication.class, args);
+		
+		//a launch for the rate import only stops once started, the runners are done by then
+		if (context.getEnvironment().getProperty("purchaser.rate-import.exit", Boolean.class, false)) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -0,0 +1,29 @@
+package com.wex.purchaser.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings for the stored conversions of the most used currencies
+ * @author Ray Cheng
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purchaser.conversion-view")
+public class ConversionViewProperties {
+
+	private boolean enabled = false;
+	
+	//currencies kept converted, e.g. Canada-Dollar,Euro Zone-Euro
+	private List<String> currencies = new ArrayList<>();
+	
+	//transactions converted per batch when the view is rebuilt
+	private int batchSize = 1000;
+}
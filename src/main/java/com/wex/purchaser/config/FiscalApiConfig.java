@@ -0,0 +1,165 @@
+package com.wex.purchaser.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.wex.purchaser.fiscalapi.FiscalApi;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Shared HTTP client for fiscal API. 
+ * Connections are pooled and kept alive between calls, so each fetch does not pay a new TCP and TLS handshake,
+ * and responses are requested gzip compressed.
+ * The non-blocking WebClient for async requests has its own pool with the same limits.
+ * Calls go through a circuit breaker and are retried with jittered backoff on transient errors,
+ * blocking calls and the pages they request are also limited by a bulkhead.
+ * @author Ray Cheng
+ */
+@Configuration
+public class FiscalApiConfig {
+
+	//a page of rates is small, but leave room for large date ranges
+	private static final int MAX_RESPONSE_BYTES=16 * 1024 * 1024;
+	
+	public static final String RESILIENCE_NAME="fiscalApi";
+
+	@Bean(destroyMethod = "close")
+	public CloseableHttpClient fiscalApiHttpClient(FiscalApiProperties properties) {
+		
+		PoolingHttpClientConnectionManager connectionManager=new PoolingHttpClientConnectionManager(
+				properties.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(properties.getMaxConnections());
+		//all calls go to the same host
+		connectionManager.setDefaultMaxPerRoute(properties.getMaxConnections());
+		
+		RequestConfig requestConfig=RequestConfig.custom()
+				.setConnectTimeout((int) properties.getConnectTimeout().toMillis())
+				.setSocketTimeout((int) properties.getReadTimeout().toMillis())
+				.setConnectionRequestTimeout((int) properties.getConnectionRequestTimeout().toMillis())
+				.build();
+		
+		long keepAlive=properties.getKeepAlive().toMillis();
+		
+		//content compression is enabled by default: gzip and deflate are requested and decoded
+		return HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy((response, context)->{
+					long serverKeepAlive=DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+				.build();
+	}
+	
+	@Bean
+	public RestTemplate fiscalApiRestTemplate(CloseableHttpClient fiscalApiHttpClient) {
+		
+		return new RestTemplate(new HttpComponentsClientHttpRequestFactory(fiscalApiHttpClient));
+	}
+	
+	@Bean(destroyMethod = "dispose")
+	public ConnectionProvider fiscalApiConnectionProvider(FiscalApiProperties properties) {
+		
+		return ConnectionProvider.builder("fiscal-api")
+				.maxConnections(properties.getMaxConnections())
+				.pendingAcquireMaxCount(properties.getMaxPendingRequests())
+				.pendingAcquireTimeout(properties.getConnectionRequestTimeout())
+				.maxIdleTime(properties.getKeepAlive())
+				.evictInBackground(properties.getKeepAlive())
+				.build();
+	}
+	
+	@Bean
+	public WebClient fiscalApiWebClient(ConnectionProvider fiscalApiConnectionProvider, FiscalApiProperties properties) {
+		
+		HttpClient httpClient=HttpClient.create(fiscalApiConnectionProvider)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+				.responseTimeout(properties.getReadTimeout())
+				.compress(true);
+		
+		return WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(httpClient))
+				.codecs(codecs->codecs.defaultCodecs().maxInMemorySize(MAX_RESPONSE_BYTES))
+				.build();
+	}
+	
+	@Bean
+	public CircuitBreaker fiscalApiCircuitBreaker(FiscalApiProperties properties, MeterRegistry meterRegistry) {
+		
+		CircuitBreakerConfig config=CircuitBreakerConfig.custom()
+				.slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+				.slidingWindowSize(properties.getCircuitBreakerWindow())
+				.minimumNumberOfCalls(properties.getCircuitBreakerMinimumCalls())
+				.failureRateThreshold(properties.getCircuitBreakerFailureRate())
+				.slowCallDurationThreshold(properties.getCircuitBreakerSlowCall())
+				.waitDurationInOpenState(properties.getCircuitBreakerOpenDuration())
+				//client errors are our fault, fiscal API is not down
+				.recordException(FiscalApi::isTransient)
+				.ignoreExceptions(BulkheadFullException.class)
+				.build();
+		
+		CircuitBreakerRegistry registry=CircuitBreakerRegistry.of(config);
+		TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+		return registry.circuitBreaker(RESILIENCE_NAME);
+	}
+	
+	@Bean
+	public Retry fiscalApiRetry(FiscalApiProperties properties, MeterRegistry meterRegistry) {
+		
+		RetryConfig config=RetryConfig.custom()
+				.maxAttempts(properties.getRetryMaxAttempts())
+				//random backoff, so callers failing together do not retry together
+				.intervalFunction(IntervalFunction.ofExponentialRandomBackoff(properties.getRetryBackoff().toMillis()
+						, properties.getRetryBackoffMultiplier(), properties.getRetryJitter()))
+				.retryOnException(FiscalApi::isTransient)
+				.build();
+		
+		RetryRegistry registry=RetryRegistry.of(config);
+		TaggedRetryMetrics.ofRetryRegistry(registry).bindTo(meterRegistry);
+		return registry.retry(RESILIENCE_NAME);
+	}
+	
+	@Bean
+	public Bulkhead fiscalApiBulkhead(FiscalApiProperties properties, MeterRegistry meterRegistry) {
+		
+		BulkheadConfig config=BulkheadConfig.custom()
+				.maxConcurrentCalls(properties.getMaxConcurrentCalls())
+				.maxWaitDuration(properties.getBulkheadMaxWait())
+				.build();
+		
+		BulkheadRegistry registry=BulkheadRegistry.of(config);
+		TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(meterRegistry);
+		return registry.bulkhead(RESILIENCE_NAME);
+	}
+}
@@ -0,0 +1,73 @@
+package com.wex.purchaser.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings for the HTTP client calling fiscal API
+ * @author Ray Cheng
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purchaser.fiscal-api")
+public class FiscalApiProperties {
+
+	private String baseUrl = "https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange";
+	
+	private Duration connectTimeout = Duration.ofSeconds(5);
+	
+	private Duration readTimeout = Duration.ofSeconds(30);
+	
+	//max. wait for a free connection from the pool
+	private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+	
+	private int maxConnections = 20;
+	
+	//max. async requests waiting for a free connection
+	private int maxPendingRequests = 1000;
+	
+	//idle connections are kept for reuse up to this time
+	private Duration keepAlive = Duration.ofSeconds(60);
+	
+	//rates per page, fiscal API allows up to 10000
+	private int pageSize = 10000;
+	
+	//max. pages of one query fetched at the same time
+	private int maxParallelPages = 4;
+	
+	//calls including the first one, only IO errors, 5xx and 429 are retried
+	private int retryMaxAttempts = 3;
+	
+	//wait before the first retry, multiplied for each next retry and randomized by the jitter factor
+	private Duration retryBackoff = Duration.ofMillis(200);
+	
+	private double retryBackoffMultiplier = 2.0;
+	
+	private double retryJitter = 0.5;
+	
+	//failure rate in percent of the recent calls which opens the circuit
+	private float circuitBreakerFailureRate = 50;
+	
+	//number of recent calls the failure rate is computed from
+	private int circuitBreakerWindow = 20;
+	
+	private int circuitBreakerMinimumCalls = 10;
+	
+	//calls slower than this count as failure
+	private Duration circuitBreakerSlowCall = Duration.ofSeconds(10);
+	
+	//calls are rejected at once for this time after the circuit opens, then a few trial calls are let through
+	private Duration circuitBreakerOpenDuration = Duration.ofSeconds(30);
+	
+	//max. blocking calls and their follow-up pages at the same time, including those waiting for a pooled connection
+	private int maxConcurrentCalls = 50;
+	
+	//max. wait for a blocking call to start when max. concurrent calls are running
+	private Duration bulkheadMaxWait = Duration.ZERO;
+}
@@ -0,0 +1,44 @@
+package com.wex.purchaser.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings for the local exchange rate cache in front of the fiscal API
+ * @author Ray Cheng
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purchaser.rate-cache")
+public class RateCacheProperties {
+
+	private boolean enabled = true;
+	
+	//default time to live of a cached currency
+	private Duration ttl = Duration.ofHours(6);
+	
+	//time to live per currency, e.g. purchaser.rate-cache.currency-ttl.[Canada-Dollar]=12h
+	private Map<String, Duration> currencyTtl = new HashMap<>();
+	
+	//time to live of stored rates served while fiscal API was not available, so they are fetched again soon
+	private Duration staleTtl = Duration.ofMinutes(1);
+	
+	private int maxEntries = 256;
+	
+	private long maxBytes = 8L * 1024 * 1024;
+	
+	//binary snapshot of the cached rates, restored at startup and written after each prefetch; not written when empty
+	private String snapshotFile;
+	
+	public Duration getTtl(String currency) {
+		return currencyTtl.getOrDefault(currency, ttl);
+	}
+}
@@ -0,0 +1,27 @@
+package com.wex.purchaser.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings for importing exchange rates from a local rates_of_exchange export file
+ * @author Ray Cheng
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purchaser.rate-import")
+public class RateImportProperties {
+	
+	//CSV or JSON file imported at startup, e.g. --purchaser.rate-import.file=RprtRateXchg.csv
+	private String file;
+	
+	//rates inserted per batch and transaction
+	private int batchSize = 1000;
+	
+	//launch for the import only, the application exits once started, for seeding a node from the command line
+	private boolean exit = false;
+}
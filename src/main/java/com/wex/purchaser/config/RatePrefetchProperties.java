@@ -0,0 +1,37 @@
+package com.wex.purchaser.config;
+
+import java.time.Duration;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings for prefetching exchange rates in background
+ * @author Ray Cheng
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purchaser.rate-prefetch")
+public class RatePrefetchProperties {
+
+	private boolean enabled = true;
+	
+	//currencies to be prefetched, e.g. Canada-Dollar,Euro Zone-Euro
+	private List<String> currencies = new ArrayList<>();
+	
+	//how far back the rates are prefetched
+	private Period lookback = Period.ofYears(2);
+	
+	//refresh schedule, see purchaser.rate-prefetch.cron
+	private String cron = "0 0 6 * * *";
+	
+	//delay between retries of a failed warm-up, see purchaser.rate-prefetch.retry-delay
+	private Duration retryDelay = Duration.ofMinutes(1);
+}
@@ -0,0 +1,76 @@
+package com.wex.purchaser.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Run Tomcat request handling and the task executor on virtual threads, enabled by purchaser.virtual-threads.enabled
+ * (see the virtual-threads profile). Blocking calls such as the fiscal API fetch then park a virtual thread
+ * instead of holding a platform thread, so concurrency is bounded by the connection pools only.
+ * The build still targets Java 8, so the JDK 21 API is looked up by reflection.
+ * @author Ray Cheng
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "purchaser.virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService virtualThreadExecutor() {
+
+		log.info("request handling on virtual threads");
+		return newVirtualThreadPerTaskExecutor();
+	}
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+
+		return protocolHandler->protocolHandler.setExecutor(virtualThreadExecutor);
+	}
+
+	//replaces the pooled applicationTaskExecutor of Spring Boot, used by async endpoints and streaming
+	@Bean(name = { "applicationTaskExecutor", "taskExecutor" })
+	public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+
+		return new TaskExecutorAdapter(virtualThreadExecutor);
+	}
+
+	   /**
+	   * Check whether the running JDK supports virtual threads
+	   * @return return true on JDK 21 or later
+	   */
+	public static boolean isAvailable() {
+
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	   /**
+	   * Create an executor starting a new virtual thread for each task
+	   * @return return the executor
+	   * @throws IllegalStateException if the running JDK does not support virtual threads
+	   */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Virtual threads require JDK 21 or later, running on " + System.getProperty("java.version"));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Create virtual thread executor failed", e);
+		}
+	}
+}
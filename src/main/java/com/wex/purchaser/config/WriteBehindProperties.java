@@ -0,0 +1,56 @@
+package com.wex.purchaser.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings for creating transactions in write-behind mode: accepted transactions are 
+ * journaled to a local file and queued, and stored into DB in batches by a writer thread
+ * @author Ray Cheng
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "purchaser.write-behind")
+public class WriteBehindProperties {
+	
+	//when disabled, each transaction is saved into DB before the request returns
+	private boolean enabled = false;
+	
+	//append-only journal of transactions not yet stored, replayed at startup
+	private String journalFile;
+	
+	//a new journal segment is started at this size, segments are deleted once all their transactions are stored
+	private DataSize journalSegmentSize = DataSize.ofMegabytes(64);
+	
+	private FsyncPolicy fsync = FsyncPolicy.ALWAYS;
+	
+	//transactions accepted but not yet stored; further requests wait for room up to the offer timeout
+	private int queueCapacity = 10000;
+	
+	private Duration offerTimeout = Duration.ofMillis(100);
+	
+	//transactions inserted per batch and DB transaction
+	private int batchSize = 500;
+	
+	//how long the writer waits for more transactions before storing a partial batch
+	private Duration flushInterval = Duration.ofMillis(50);
+	
+	//wait before a failed batch is inserted again
+	private Duration retryDelay = Duration.ofSeconds(1);
+	
+	public enum FsyncPolicy {
+		//force the journal to disk before each transaction is accepted
+		ALWAYS,
+		//force the journal once per batch, before it is stored; a crash of the host may lose the transactions of one batch
+		BATCH,
+		//leave it to the operating system; survives a crash of the application only
+		NEVER
+	}
+}
@@ -1,10 +1,14 @@
 package com.wex.purchaser.controller;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.websocket.server.PathParam;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,14 +16,27 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.wex.purchaser.dto.CreateTransactionResultDTO;
 import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.dto.TransactionPageDTO;
+import com.wex.purchaser.dto.TransactionStatisticsDTO;
+import com.wex.purchaser.entity.Transaction;
 import com.wex.purchaser.exception.ServiceException;
 import com.wex.purchaser.message.AbstractResponse;
+import com.wex.purchaser.message.CreateTransactionBatchRequest;
+import com.wex.purchaser.message.CreateTransactionBatchResponse;
 import com.wex.purchaser.message.CreateTransactionRequest;
 import com.wex.purchaser.message.CreateTransactionResponse;
 import com.wex.purchaser.message.EnquireLastTransactionResponse;
+import com.wex.purchaser.message.ListTransactionPageResponse;
+import com.wex.purchaser.message.ListTransactionRequest;
 import com.wex.purchaser.message.ListTransactionResponse;
+import com.wex.purchaser.message.TransactionStatisticsResponse;
+import com.wex.purchaser.service.AsyncTasks;
 import com.wex.purchaser.service.TransactionService;
 
 import lombok.extern.slf4j.Slf4j;
@@ -34,9 +51,16 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class TransactionController {
 
+	private static final int STREAM_PAGE_SIZE=500;
+	
+	private static final MediaType NDJSON=MediaType.parseMediaType("application/x-ndjson");
+	
 	@Autowired
 	private TransactionService service;
 	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
 	/**
 	 * End point for store purchase transaction
 	 */
@@ -45,8 +69,9 @@ public class TransactionController {
 
 		log.info("create transaction");
 		try {
-			service.createTransaction(request);
+			Transaction transaction=service.createTransaction(request);
 			CreateTransactionResponse response=new CreateTransactionResponse();
+			response.setTransactionId(transaction.getTransactionId());
 			log.info("create transaction done");
 			return ResponseEntity.ok(response);
 		} catch (ServiceException e) {
@@ -54,6 +79,22 @@ public class TransactionController {
 		}
 	}
 
+	/**
+	 * End point for store purchase transactions in bulk
+	 */
+	@PostMapping("/transactions")
+	public ResponseEntity<AbstractResponse> createBatch(@RequestBody CreateTransactionBatchRequest request){
+		
+		log.info("create transactions");
+		try {
+			List<CreateTransactionResultDTO> resultList=service.createTransactions(request.getTransactionList());
+			log.info("create transactions done, size: " + resultList.size());
+			return ResponseEntity.ok( new CreateTransactionBatchResponse(resultList));
+		} catch (ServiceException e) {
+			return ResponseEntity.ok( new AbstractResponse(e.getMessage()));
+		}
+	}
+
 	/**
 	 * End point for retrieve last purchase transaction and convert the amount with specific currency
 	 */
@@ -63,24 +104,26 @@ public class TransactionController {
 		log.info("enquire transaction");
 				
 		try {
-			TransactionDTO transaction = service.enquireLastTransaction(currency);
+			List<TransactionDTO> transactionList = service.enquireLastTransactions(currency);
+			TransactionDTO transaction = transactionList.get(0);
 			log.info("last transaction: " + transaction);
-			return ResponseEntity.ok( new EnquireLastTransactionResponse(transaction));
+			return ResponseEntity.ok( new EnquireLastTransactionResponse(transaction, transactionList.size() > 1 ? transactionList : null));
 		} catch (ServiceException e) {
 			return ResponseEntity.ok( new AbstractResponse(e.getMessage()));			
 		}
 	}
 	
 	/**
-	 * End point for retrieve last purchase transaction and convert the amount with specific currency
+	 * End point for list purchase transactions and convert the amount with specific currency.
+	 * Optional fromDate, toDate, minAmount, maxAmount and description (prefix) filter the transactions in DB.
 	 */
 	@GetMapping("/transactions")
-	public ResponseEntity<AbstractResponse> list(@PathParam("currency") String currency){
+	public ResponseEntity<AbstractResponse> list(ListTransactionRequest request){
 				
 		log.info("list transaction");
 		
 		try {
-			List<TransactionDTO> transactionList=service.listTransaction(currency);
+			List<TransactionDTO> transactionList=service.listTransactionFiltered(request);
 			log.info("list transaction size: " + transactionList.size());
 			return ResponseEntity.ok( new ListTransactionResponse(transactionList));			
 		} catch (ServiceException e) {
@@ -89,4 +132,126 @@ public class TransactionController {
 						
 	}
 	
+	/**
+	 * End point for count and sum up purchase transactions by day or month and convert the amounts with specific currency
+	 */
+	@GetMapping("/transactions/statistics")
+	public ResponseEntity<AbstractResponse> statistics(@PathParam("currency") String currency, @PathParam("period") String period
+			, @PathParam("fromDate") String fromDate, @PathParam("toDate") String toDate){
+		
+		log.info("transaction statistics");
+		
+		try {
+			List<TransactionStatisticsDTO> statisticsList=service.getStatistics(currency, period, fromDate, toDate);
+			log.info("transaction statistics size: " + statisticsList.size());
+			return ResponseEntity.ok( new TransactionStatisticsResponse(statisticsList));
+		} catch (ServiceException e) {
+			return ResponseEntity.ok( new AbstractResponse(e.getMessage()));
+		}
+	}
+	
+	/**
+	 * Async end point for retrieve last purchase transaction and convert the amount with specific currency.
+	 * The servlet thread is released while exchange rates are fetched.
+	 */
+	@GetMapping("/transaction/async")
+	public CompletableFuture<ResponseEntity<AbstractResponse>> enquireLastTransactionAsync(@PathParam("currency") String currency){
+		
+		log.info("enquire transaction async");
+		
+		return service.enquireLastTransactionsAsync(currency).thenApply(transactionList->{
+			TransactionDTO transaction = transactionList.get(0);
+			log.info("last transaction: " + transaction);
+			AbstractResponse response=new EnquireLastTransactionResponse(transaction, transactionList.size() > 1 ? transactionList : null);
+			return ResponseEntity.ok(response);
+		}).exceptionally(this::errorResponse);
+	}
+	
+	/**
+	 * Async end point for list all purchase transactions and convert the amount with specific currency.
+	 * The servlet thread is released while exchange rates are fetched.
+	 */
+	@GetMapping("/transactions/async")
+	public CompletableFuture<ResponseEntity<AbstractResponse>> listAsync(@PathParam("currency") String currency){
+		
+		log.info("list transaction async");
+		
+		return service.listTransactionAsync(currency).thenApply(transactionList->{
+			log.info("list transaction size: " + transactionList.size());
+			AbstractResponse response=new ListTransactionResponse(transactionList);
+			return ResponseEntity.ok(response);
+		}).exceptionally(this::errorResponse);
+	}
+	
+	//business errors are returned as message, other errors are left to the container
+	private ResponseEntity<AbstractResponse> errorResponse(Throwable e) {
+		
+		Throwable cause=AsyncTasks.unwrap(e);
+		if (cause instanceof ServiceException) {
+			return ResponseEntity.ok( new AbstractResponse(cause.getMessage()));
+		}
+		throw new CompletionException(cause);
+	}
+	
+	/**
+	 * End point for retrieve one page of purchase transactions and convert the amount with specific currency
+	 */
+	@GetMapping("/transactions/page")
+	public ResponseEntity<AbstractResponse> listPage(@PathParam("currency") String currency, @PathParam("cursor") String cursor, @PathParam("size") Integer size){
+		
+		log.info("list transaction page");
+		
+		try {
+			TransactionPageDTO page=service.listTransactionPage(currency, cursor, size);
+			log.info("list transaction page size: " + page.getTransactionList().size());
+			return ResponseEntity.ok( new ListTransactionPageResponse(page.getTransactionList(), page.getNextCursor()));
+		} catch (ServiceException e) {
+			return ResponseEntity.ok( new AbstractResponse(e.getMessage()));
+		}
+	}
+	
+	/**
+	 * End point for stream all purchase transactions as newline delimited JSON and convert the amount with specific currency.
+	 * Transactions are read and written page by page, so memory usage does not grow with the table.
+	 */
+	@GetMapping("/transactions/stream")
+	public ResponseEntity<?> stream(@PathParam("currency") String currency){
+		
+		log.info("stream transaction");
+		
+		TransactionPageDTO firstPage;
+		try {
+			firstPage=service.listTransactionPage(currency, null, STREAM_PAGE_SIZE);
+		} catch (ServiceException e) {
+			return ResponseEntity.ok( new AbstractResponse(e.getMessage()));
+		}
+		
+		StreamingResponseBody body=out->{
+			TransactionPageDTO page=firstPage;
+			long count=0;
+			try (SequenceWriter writer=objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+				while (true) {
+					for (TransactionDTO transaction : page.getTransactionList()) {
+						writer.write(transaction);
+					}
+					writer.flush();
+					count+=page.getTransactionList().size();
+					
+					if (page.getNextCursor() == null) {
+						break;
+					}
+					try {
+						page=service.listTransactionPage(currency, page.getNextCursor(), STREAM_PAGE_SIZE);
+					} catch (ServiceException e) {
+						log.error("stream transaction aborted: " + e.getMessage());
+						throw new IOException(e.getMessage(), e);
+					}
+				}
+			}
+			log.info("stream transaction size: " + count);
+		};
+		
+		return ResponseEntity.ok().contentType(NDJSON).body(body);
+	}
+	
 }
@@ -0,0 +1,21 @@
+package com.wex.purchaser.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreateTransactionResultDTO {
+
+	//position of the transaction in the request
+	private int index;
+	private Long transactionId;
+	private String errorMessage;
+	
+}
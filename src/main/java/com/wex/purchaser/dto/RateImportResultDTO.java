@@ -0,0 +1,29 @@
+package com.wex.purchaser.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@Builder
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class RateImportResultDTO {
+	
+	private String file;
+	//rates read from the file
+	private long rowCount;
+	private long insertedCount;
+	//rates already stored
+	private long skippedCount;
+	//rows without currency, rate or effective date
+	private long rejectedCount;
+	private long millis;
+	private double rowsPerSecond;
+	
+}
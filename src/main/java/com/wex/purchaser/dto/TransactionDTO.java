@@ -24,5 +24,7 @@ public class TransactionDTO {
 	private BigDecimal exchangeRate;
 	private String exchangeRateEfferctiveDate;
 	private String transactionDate;
+	//converted with stored rates while fiscal API was not available
+	private boolean staleRate;
 	
 }
@@ -0,0 +1,21 @@
+package com.wex.purchaser.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionPageDTO {
+
+	private List<TransactionDTO> transactionList;
+	
+	//cursor for next page, null when this is the last page
+	private String nextCursor;
+	
+}
@@ -0,0 +1,26 @@
+package com.wex.purchaser.dto;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionStatisticsDTO {
+
+	//yyyy-MM-dd for daily, yyyy-MM for monthly statistics
+	private String period;
+	private String currency;
+	private long transactionCount;
+	private BigDecimal amountInUSD;
+	private BigDecimal amount;
+	private BigDecimal averageAmount;
+	
+}
@@ -0,0 +1,60 @@
+package com.wex.purchaser.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+* Exchange rate fetched from fiscaldata and kept locally, 
+* so conversions are an indexed lookup and do not depend on the remote API
+* 
+* @author Ray Cheng
+* 
+*/
+
+@Entity
+@Builder
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name ="exchange_rates", indexes = {
+		@Index(name = "uk_exchange_rates_currency_date", columnList = "currency, effective_date", unique = true)
+})
+public class StoredExchangeRate {
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "exchange_rate_seq")
+	@SequenceGenerator(name = "exchange_rate_seq", sequenceName = "exchange_rate_seq", allocationSize = 50)
+	@Column(name="exchange_rate_id")
+	private long exchangeRateId;
+
+	@Column(name="currency", length=100, nullable = false)
+	private String currency;
+	
+	@Column(name="effective_date", nullable = false)
+	private LocalDate effectiveDate;
+	
+	@Column(name="record_date")
+	private LocalDate recordDate;
+	
+	@Column(name="exchange_rate", precision=19, scale=6, nullable = false)
+	private BigDecimal exchangeRate;
+		
+}
@@ -8,6 +8,8 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import lombok.AllArgsConstructor;
@@ -31,11 +33,19 @@ import lombok.ToString;
 @ToString
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name ="transactions")
+//latest transaction is read from the top of the descending index instead of sorting the table
+@Table(name ="transactions", indexes = {
+		@Index(name = "idx_transactions_created_at_desc", columnList = "created_at desc, transaction_id desc"),
+		//amount range and description prefix filters of the list
+		@Index(name = "idx_transactions_amount", columnList = "amount"),
+		@Index(name = "idx_transactions_description", columnList = "description")
+})
 public class Transaction {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+	//pooled optimizer reserves ids in blocks, so inserts can be sent in JDBC batches
+	@SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_seq", allocationSize = 50)
 	@Column(name="transaction_id")
 	private long transactionId;
 
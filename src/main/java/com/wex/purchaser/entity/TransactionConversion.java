@@ -0,0 +1,69 @@
+package com.wex.purchaser.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+* Purchase transaction converted to one currency, kept for the currencies of the conversion view
+* so listing them reads the stored amounts instead of converting every transaction again
+* 
+* @author Ray Cheng
+* 
+*/
+
+@Entity
+@Builder
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name ="transaction_conversions", uniqueConstraints = {
+		@UniqueConstraint(name = "uk_transaction_conversions_currency_transaction", columnNames = { "currency", "transaction_id" })
+}, indexes = {
+		@Index(name = "idx_transaction_conversions_currency_date", columnList = "currency, transaction_date")
+})
+public class TransactionConversion {
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_conversion_seq")
+	@SequenceGenerator(name = "transaction_conversion_seq", sequenceName = "transaction_conversion_seq", allocationSize = 50)
+	@Column(name="conversion_id")
+	private long conversionId;
+
+	@Column(name="transaction_id", nullable = false)
+	private long transactionId;
+	
+	@Column(name="currency", length=100, nullable = false)
+	private String currency;
+	
+	@Column(name="transaction_date", nullable = false)
+	private LocalDate transactionDate;
+	
+	@Column(name="exchange_rate", precision=19, scale=6, nullable = false)
+	private BigDecimal exchangeRate;
+	
+	@Column(name="effective_date", nullable = false)
+	private LocalDate effectiveDate;
+	
+	@Column(name="amount", nullable = false)
+	private BigDecimal amount;
+		
+}
@@ -0,0 +1,46 @@
+package com.wex.purchaser.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+* Count and USD amount of the purchase transactions of one day (UTC), 
+* kept up to date on create so statistics do not read the transactions table
+* 
+* @author Ray Cheng
+* 
+*/
+
+@Entity
+@Builder
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name ="transaction_daily_totals")
+public class TransactionDailyTotal {
+	
+	@Id
+	@Column(name="transaction_date")
+	private LocalDate transactionDate;
+
+	@Column(name="transaction_count", nullable = false)
+	private long transactionCount;
+	
+	@Column(name="amount", nullable = false)
+	private BigDecimal amount;
+		
+}
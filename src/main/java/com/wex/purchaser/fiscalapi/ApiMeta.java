@@ -0,0 +1,36 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+* This object is the paging information return from fiscaldata
+* 
+* @author Ray Cheng
+* 
+*/
+@ToString
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ApiMeta implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	//rates in this page
+	@JsonProperty("count")
+	private int count;
+	
+	//rates in all pages
+	@JsonProperty("total-count")
+	private int totalCount;
+	
+	@JsonProperty("total-pages")
+	private int totalPages;
+}
@@ -22,4 +22,7 @@ public class ApiResponse  implements Serializable {
 	
 	@JsonProperty("data")
 	private List<ExchangeRate> data;
+	
+	@JsonProperty("meta")
+	private ApiMeta meta;
 }
@@ -0,0 +1,47 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read, for the size of fiscal API responses
+ * @author Ray Cheng
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private long count;
+	
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b=super.read();
+		if (b >= 0) {
+			count++;
+		}
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n=super.read(b, off, len);
+		if (n > 0) {
+			count+=n;
+		}
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped=super.skip(n);
+		count+=skipped;
+		return skipped;
+	}
+	
+	long getCount() {
+		return count;
+	}
+}
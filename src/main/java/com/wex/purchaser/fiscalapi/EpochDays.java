@@ -0,0 +1,176 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.time.LocalDate;
+
+/**
+ * Date arithmetic on epoch days (days since 1970-01-01, UTC) without creating date objects.
+ * Used on the conversion path where every transaction needs its date, its 6 months window
+ * and the formatted date, so the work is done on int only and the result matches {@link LocalDate}.
+ * @author Ray Cheng
+ */
+public final class EpochDays {
+
+	private static final long MILLIS_PER_DAY=86_400_000L;
+
+	private static final int DAYS_PER_ERA=146_097;
+
+	//days from 0000-03-01 to 1970-01-01
+	private static final int DAYS_0000_TO_1970=719_468;
+
+	private EpochDays() {
+	}
+
+	   /**
+	   * Convert a point of time to the date in UTC
+	   * @param epochMillis milliseconds since 1970-01-01T00:00:00Z
+	   * @return epoch day of the date
+	   */
+	public static int ofEpochMilli(long epochMillis) {
+
+		return (int) Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+	}
+
+	   /**
+	   * Subtract months from a date, same as {@link LocalDate#minusMonths(long)}:
+	   * the day of month is adjusted to the last valid day if the result month is shorter
+	   * @param epochDay epoch day of the date
+	   * @param months number of months to subtract
+	   * @return epoch day of the result date
+	   */
+	public static int minusMonths(int epochDay, int months) {
+
+		long civil=toCivil(epochDay);
+		int year=(int) (civil >> 16);
+		int month=(int) (civil >> 8) & 0xFF;
+		int day=(int) civil & 0xFF;
+
+		int monthIndex=year * 12 + (month - 1) - months;
+		int newYear=Math.floorDiv(monthIndex, 12);
+		int newMonth=Math.floorMod(monthIndex, 12) + 1;
+
+		return fromCivil(newYear, newMonth, Math.min(day, lengthOfMonth(newYear, newMonth)));
+	}
+
+	   /**
+	   * Format a date in ISO format yyyy-MM-dd, same as {@link LocalDate#toString()} for years 0 to 9999
+	   * @param epochDay epoch day of the date
+	   * @return the formatted date
+	   */
+	public static String format(int epochDay) {
+
+		long civil=toCivil(epochDay);
+		int year=(int) (civil >> 16);
+		if (year < 0 || year > 9999) {
+			return LocalDate.ofEpochDay(epochDay).toString();
+		}
+		int month=(int) (civil >> 8) & 0xFF;
+		int day=(int) civil & 0xFF;
+
+		char[] chars=new char[10];
+		chars[0]=(char) ('0' + year / 1000);
+		chars[1]=(char) ('0' + year / 100 % 10);
+		chars[2]=(char) ('0' + year / 10 % 10);
+		chars[3]=(char) ('0' + year % 10);
+		chars[4]='-';
+		chars[5]=(char) ('0' + month / 10);
+		chars[6]=(char) ('0' + month % 10);
+		chars[7]='-';
+		chars[8]=(char) ('0' + day / 10);
+		chars[9]=(char) ('0' + day % 10);
+		return new String(chars);
+	}
+
+	   /**
+	   * Parse a date in ISO format yyyy-MM-dd
+	   * @param date the date text, e.g. effective date return from the fiscal API
+	   * @return epoch day of the date
+	   * @throws java.time.format.DateTimeParseException if the text is not a valid date
+	   */
+	public static int parse(String date) {
+
+		if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+			return (int) LocalDate.parse(date).toEpochDay();
+		}
+
+		int year=digits(date, 0, 4);
+		int month=digits(date, 5, 7);
+		int day=digits(date, 8, 10);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+			//let LocalDate report the error
+			return (int) LocalDate.parse(date).toEpochDay();
+		}
+		return fromCivil(year, month, day);
+	}
+
+	private static int digits(String text, int start, int end) {
+
+		int value=0;
+		for (int i=start; i<end; i++) {
+			int digit=text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value=value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+
+		switch (month) {
+		case 2:
+			return isLeapYear(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	private static boolean isLeapYear(int year) {
+
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	   /**
+	   * Function for convert epoch day to year, month and day.
+	   * Years are counted from March so the leap day is the last day of the year.
+	   * @param epochDay epoch day of the date
+	   * @return return year, month and day packed as (year << 16 | month << 8 | day)
+	   */
+	private static long toCivil(int epochDay) {
+
+		long days=(long) epochDay + DAYS_0000_TO_1970;
+		long era=Math.floorDiv(days, DAYS_PER_ERA);
+		long dayOfEra=days - era * DAYS_PER_ERA;
+		long yearOfEra=(dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear=dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long monthFromMarch=(5 * dayOfYear + 2) / 153;
+		long day=dayOfYear - (153 * monthFromMarch + 2) / 5 + 1;
+		long month=monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+		long year=yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		return (year << 16) | (month << 8) | day;
+	}
+
+	   /**
+	   * Function for convert year, month and day to epoch day
+	   * @param year year
+	   * @param month month of year, 1 to 12
+	   * @param day day of month
+	   * @return return epoch day of the date
+	   */
+	private static int fromCivil(int year, int month, int day) {
+
+		long y=month <= 2 ? year - 1 : year;
+		long era=Math.floorDiv(y, 400);
+		long yearOfEra=y - era * 400;
+		long dayOfYear=(153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra=yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+		return (int) (era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970);
+	}
+}
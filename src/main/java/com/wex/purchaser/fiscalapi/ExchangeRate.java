@@ -3,6 +3,7 @@ package com.wex.purchaser.fiscalapi;
 import java.io.Serializable;
 import java.math.BigDecimal;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import lombok.AllArgsConstructor;
@@ -35,6 +36,10 @@ public class ExchangeRate implements Serializable {
 	@JsonProperty("effective_date")
 	private String effectiveDate;
 
+	//read from the local table because fiscal API was not available, newer rates may be missing
+	@JsonIgnore
+	private boolean stale;
+	
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -0,0 +1,552 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.wex.purchaser.config.RateCacheProperties;
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.service.AsyncTasks;
+import com.wex.purchaser.service.ExchangeRateService;
+import com.wex.purchaser.service.ExchangeRatesStoredEvent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local cache of exchange rates in front of the exchange rate table and fiscal API. 
+ * Each currency keeps the rates fetched from the earliest requested date, 
+ * so any later request starting on or after that date is served locally.
+ * Entries expire after the configured time to live and the least recently used 
+ * entries are evicted when the entry count or estimated size exceeds its limit.
+ * @author Ray Cheng
+ */
+@Slf4j
+@Component
+public class ExchangeRateCache {
+
+	//rough heap cost of an entry and of each rate it holds, used for the size limit
+	static final long ENTRY_OVERHEAD_BYTES=128;
+	static final long RATE_BYTES=96;
+	
+	@Autowired
+	private ExchangeRateService rateService;
+	
+	@Autowired
+	private RateCacheProperties properties;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	private Clock clock=Clock.systemUTC();
+	
+	private final LinkedHashMap<String, CacheEntry> entries=new LinkedHashMap<>(16, 0.75f, true);
+	
+	private long totalBytes;
+	
+	private final AtomicLong hitCount=new AtomicLong();
+	private final AtomicLong missCount=new AtomicLong();
+	private final AtomicLong evictionCount=new AtomicLong();
+	private final AtomicLong coalescedCount=new AtomicLong();
+	
+	//outstanding loads by currency and date
+	private final ConcurrentHashMap<String, CompletableFuture<RateTimeline>> inFlight=new ConcurrentHashMap<>();
+	
+	   /**
+	   * This method return the exchange rate timeline of the currency from the cache 
+	   * , and load from the exchange rate table only when the cache does not cover the date
+	   * @param currency The currency for the exchange rate
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return timeline It return the exchange rates effective on or after the date
+	   */
+	public RateTimeline getTimeline(String currency, String date) throws ServiceException {
+		
+		return getTimelines(Collections.singletonList(currency), date).get(currency);
+	}
+	
+	   /**
+	   * This method return the exchange rate timelines of several currencies from the cache 
+	   * , and load once for all currencies the cache does not cover
+	   * @param currencies The currencies for the exchange rate
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return timelines It return the exchange rates of each currency effective on or after the date
+	   */
+	public Map<String, RateTimeline> getTimelines(List<String> currencies, String date) throws ServiceException {
+		
+		if (!properties.isEnabled()) {
+			return rateService.loadTimelines(currencies, date);
+		}
+		
+		Map<String, RateTimeline> cached=new HashMap<>();
+		List<String> missed=new ArrayList<>();
+		for (String currency : currencies) {
+			CacheEntry entry=lookup(currency, date);
+			if (entry != null) {
+				hitCount.incrementAndGet();
+				cached.put(currency, entry.getTimeline());
+			} else {
+				missCount.incrementAndGet();
+				missed.add(currency);
+			}
+		}
+		
+		if (!missed.isEmpty()) {
+			cached.putAll(load(missed, date));
+		}
+		
+		Map<String, RateTimeline> timelines=new LinkedHashMap<>();
+		for (String currency : currencies) {
+			timelines.put(currency, cached.get(currency));
+		}
+		return timelines;
+	}
+	
+	   /**
+	   * Load the missed currencies. Concurrent callers missing the same currency and date 
+	   * share one outstanding load instead of each calling out: the first caller loads 
+	   * the currencies nobody else is loading, and waits for the others.
+	   * @param missed The currencies not in the cache
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return timelines It return the exchange rates of each missed currency
+	   */
+	private Map<String, RateTimeline> load(List<String> missed, String date) throws ServiceException {
+		
+		Map<String, RateTimeline> loaded=new HashMap<>();
+		Map<String, CompletableFuture<RateTimeline>> leading=new LinkedHashMap<>();
+		Map<String, CompletableFuture<RateTimeline>> following=new LinkedHashMap<>();
+		
+		for (String currency : missed) {
+			CompletableFuture<RateTimeline> future=new CompletableFuture<>();
+			CompletableFuture<RateTimeline> inFlightFuture=inFlight.putIfAbsent(inFlightKey(currency, date), future);
+			if (inFlightFuture != null) {
+				following.put(currency, inFlightFuture);
+				continue;
+			}
+			
+			//another caller may have finished loading just before
+			CacheEntry entry=lookup(currency, date);
+			if (entry != null) {
+				inFlight.remove(inFlightKey(currency, date), future);
+				future.complete(entry.getTimeline());
+				loaded.put(currency, entry.getTimeline());
+			} else {
+				leading.put(currency, future);
+			}
+		}
+		
+		if (!leading.isEmpty()) {
+			List<String> leadingCurrencies=new ArrayList<>(leading.keySet());
+			try {
+				Map<String, RateTimeline> timelines=rateService.loadTimelines(leadingCurrencies, date);
+				cacheLoaded(date, timelines, leading);
+				loaded.putAll(timelines);
+			} catch (ServiceException | RuntimeException e) {
+				leading.values().forEach(f->f.completeExceptionally(e));
+				throw e;
+			} finally {
+				leading.forEach((currency, future)->inFlight.remove(inFlightKey(currency, date), future));
+			}
+		}
+		
+		for (Map.Entry<String, CompletableFuture<RateTimeline>> follow : following.entrySet()) {
+			coalescedCount.incrementAndGet();
+			try {
+				loaded.put(follow.getKey(), follow.getValue().get());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ServiceException) {
+					throw new ServiceException(e.getCause().getMessage());
+				}
+				throw new IllegalStateException("Load exchange rate failed", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException("Load exchange rate interrupted");
+			}
+		}
+		
+		return loaded;
+	}
+	
+	   /**
+	   * This method is the non-blocking version of getTimelines. 
+	   * Cached currencies complete at once, missed currencies join any outstanding load 
+	   * or are loaded together without blocking the caller.
+	   * @param currencies The currencies for the exchange rate
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return timelines It return the exchange rates of each currency effective on or after the date, in request order
+	   */
+	public CompletableFuture<Map<String, RateTimeline>> getTimelinesAsync(List<String> currencies, String date) {
+		
+		if (!properties.isEnabled()) {
+			return rateService.loadTimelinesAsync(currencies, date);
+		}
+		
+		Map<String, CompletableFuture<RateTimeline>> futures=new HashMap<>();
+		List<String> missed=new ArrayList<>();
+		for (String currency : currencies) {
+			CacheEntry entry=lookup(currency, date);
+			if (entry != null) {
+				hitCount.incrementAndGet();
+				futures.put(currency, CompletableFuture.completedFuture(entry.getTimeline()));
+			} else {
+				missCount.incrementAndGet();
+				missed.add(currency);
+			}
+		}
+		
+		if (!missed.isEmpty()) {
+			futures.putAll(loadAsync(missed, date));
+		}
+		
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v->{
+			Map<String, RateTimeline> timelines=new LinkedHashMap<>();
+			for (String currency : currencies) {
+				timelines.put(currency, futures.get(currency).join());
+			}
+			return timelines;
+		});
+	}
+	
+	   /**
+	   * Start loading the missed currencies, sharing outstanding loads the same way as load
+	   * @param missed The currencies not in the cache
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return futures It return the future timeline of each missed currency
+	   */
+	private Map<String, CompletableFuture<RateTimeline>> loadAsync(List<String> missed, String date) {
+		
+		Map<String, CompletableFuture<RateTimeline>> loading=new HashMap<>();
+		Map<String, CompletableFuture<RateTimeline>> leading=new LinkedHashMap<>();
+		
+		for (String currency : missed) {
+			CompletableFuture<RateTimeline> future=new CompletableFuture<>();
+			CompletableFuture<RateTimeline> inFlightFuture=inFlight.putIfAbsent(inFlightKey(currency, date), future);
+			if (inFlightFuture != null) {
+				coalescedCount.incrementAndGet();
+				loading.put(currency, inFlightFuture);
+				continue;
+			}
+			
+			CacheEntry entry=lookup(currency, date);
+			if (entry != null) {
+				inFlight.remove(inFlightKey(currency, date), future);
+				future.complete(entry.getTimeline());
+			} else {
+				leading.put(currency, future);
+			}
+			loading.put(currency, future);
+		}
+		
+		if (!leading.isEmpty()) {
+			List<String> leadingCurrencies=new ArrayList<>(leading.keySet());
+			rateService.loadTimelinesAsync(leadingCurrencies, date).whenComplete((timelines, e)->{
+				try {
+					if (e != null) {
+						leading.values().forEach(f->f.completeExceptionally(AsyncTasks.unwrap(e)));
+					} else {
+						cacheLoaded(date, timelines, leading);
+					}
+				} catch (RuntimeException putError) {
+					leading.values().forEach(f->f.completeExceptionally(putError));
+				} finally {
+					leading.forEach((currency, future)->inFlight.remove(inFlightKey(currency, date), future));
+				}
+			});
+		}
+		
+		return loading;
+	}
+	
+	   /**
+	   * Put the loaded timelines into the cache and complete the callers waiting for them
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @param timelines the loaded timeline of each currency
+	   * @param leading the outstanding load of each currency
+	   */
+	private void cacheLoaded(String date, Map<String, RateTimeline> timelines, Map<String, CompletableFuture<RateTimeline>> leading) {
+		
+		long now=clock.millis();
+		for (RateTimeline timeline : timelines.values()) {
+			Duration ttl=timeline.isStale() ? properties.getStaleTtl() : properties.getTtl(timeline.getCurrency());
+			put(new CacheEntry(timeline.getCurrency(), date, timeline, now + ttl.toMillis(), false));
+			leading.get(timeline.getCurrency()).complete(timeline);
+		}
+	}
+	
+	private String inFlightKey(String currency, String date) {
+		return currency + "|" + date;
+	}
+	
+	   /**
+	   * This method load the exchange rates of the currencies into the cache.
+	   * Refreshed currencies are pinned: they do not expire and are not evicted, 
+	   * so they stay local until the next refresh replaces them.
+	   * @param currencies The currencies for the exchange rate
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   */
+	public void refresh(List<String> currencies, String date) throws ServiceException {
+		
+		Map<String, RateTimeline> loaded=rateService.loadTimelines(currencies, date);
+		long now=clock.millis();
+		for (RateTimeline timeline : loaded.values()) {
+			if (timeline.isStale()) {
+				//not pinned, so the next request tries fiscal API again
+				put(new CacheEntry(timeline.getCurrency(), date, timeline, now + properties.getStaleTtl().toMillis(), false));
+			} else {
+				put(new CacheEntry(timeline.getCurrency(), date, timeline, Long.MAX_VALUE, true));
+			}
+		}
+	}
+	
+	   /**
+	   * Write the cached timelines to a snapshot file, to be restored on the next start
+	   * @param file snapshot file, replaced atomically
+	   * @return count It return the number of currencies written
+	   * @throws IOException if the file cannot be written
+	   */
+	public int writeSnapshot(Path file) throws IOException {
+		
+		List<RateSnapshot.Entry> snapshot=new ArrayList<>();
+		synchronized (this) {
+			long now=clock.millis();
+			for (CacheEntry entry : entries.values()) {
+				if (entry.getExpireAt() > now) {
+					snapshot.add(new RateSnapshot.Entry(entry.getFromDate(), entry.getTimeline()));
+				}
+			}
+		}
+		long bytes=RateSnapshot.write(file, snapshot);
+		log.info("write exchange rate snapshot: " + snapshot.size() + " currencies, " + bytes + " bytes");
+		return snapshot.size();
+	}
+	
+	   /**
+	   * Put the timelines of a snapshot file into the cache. Restored currencies are not pinned
+	   * and expire after the usual time to live, currencies already cached are kept.
+	   * @param file snapshot file
+	   * @return currencies It return the currencies restored and the date each is covered from
+	   * @throws IOException if the file cannot be read, is of another version or is corrupted
+	   */
+	public Map<String, String> restoreSnapshot(Path file) throws IOException {
+		
+		List<RateSnapshot.Entry> snapshot=RateSnapshot.read(file);
+		Map<String, String> restored=new LinkedHashMap<>();
+		long now=clock.millis();
+		synchronized (this) {
+			for (RateSnapshot.Entry entry : snapshot) {
+				RateTimeline timeline=entry.getTimeline();
+				if (entries.containsKey(timeline.getCurrency())) {
+					continue;
+				}
+				Duration ttl=timeline.isStale() ? properties.getStaleTtl() : properties.getTtl(timeline.getCurrency());
+				put(new CacheEntry(timeline.getCurrency(), entry.getFromDate(), timeline, now + ttl.toMillis(), false));
+				restored.put(timeline.getCurrency(), entry.getFromDate());
+			}
+		}
+		return restored;
+	}
+	
+	   /**
+	   * Reload from the exchange rate table the cached currencies which miss some of the new rates,
+	   * e.g. rates imported from an export file. A reloaded entry keeps its pin and expiry.
+	   * @param event stored exchange rates
+	   */
+	@EventListener
+	public void onRatesStored(ExchangeRatesStoredEvent event) {
+		
+		Map<String, List<StoredExchangeRate>> rateMap=event.getRateList().stream()
+				.collect(Collectors.groupingBy(StoredExchangeRate::getCurrency));
+		
+		rateMap.forEach((currency, rateList)->{
+			CacheEntry entry;
+			synchronized (this) {
+				entry=entries.get(currency);
+			}
+			if (entry == null || !isMissingAny(entry, rateList)) {
+				return;
+			}
+			
+			List<ExchangeRate> stored=rateService.findStoredRates(Collections.singletonList(currency), LocalDate.parse(entry.getFromDate()));
+			stored.forEach(rate->rate.setStale(entry.getTimeline().isStale()));
+			RateTimeline timeline=RateTimeline.of(currency, stored);
+			synchronized (this) {
+				//an entry loaded meanwhile is kept, it is read after the new rates were stored
+				if (entries.get(currency) == entry) {
+					put(new CacheEntry(currency, entry.getFromDate(), timeline, entry.getExpireAt(), entry.isPinned()));
+				}
+			}
+			log.info("reload cached exchange rate for new rates: " + currency);
+		});
+	}
+	
+	//true if a rate within the date range of the entry is not in its timeline
+	private boolean isMissingAny(CacheEntry entry, List<StoredExchangeRate> rateList) {
+		
+		int fromEpochDay=EpochDays.parse(entry.getFromDate());
+		for (StoredExchangeRate rate : rateList) {
+			int epochDay=(int) rate.getEffectiveDate().toEpochDay();
+			if (epochDay >= fromEpochDay && entry.getTimeline().indexOfLatest(epochDay - 1, epochDay + 1) < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	   /**
+	   * Remove the cached rates of a currency
+	   * @param currency The currency to be removed
+	   */
+	public synchronized void invalidate(String currency) {
+		CacheEntry entry=entries.remove(currency);
+		if (entry != null) {
+			totalBytes-=entry.getBytes();
+		}
+	}
+	
+	public synchronized void clear() {
+		entries.clear();
+		totalBytes=0;
+	}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+	
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+	
+	//misses served by waiting for another caller's load
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+	
+	public double getHitRatio() {
+		long hits=hitCount.get();
+		long total=hits + missCount.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+	
+	@PostConstruct
+	public void registerMetrics() {
+		bindTo(meterRegistry);
+	}
+	
+	//not a MeterBinder bean: the registry would then depend on this cache and, through fiscal API, on itself
+	public void bindTo(MeterRegistry registry) {
+		
+		FunctionCounter.builder("purchaser.rate.cache.requests", hitCount, AtomicLong::get)
+				.description("Exchange rate cache lookups").tag("result", "hit").register(registry);
+		FunctionCounter.builder("purchaser.rate.cache.requests", missCount, AtomicLong::get)
+				.description("Exchange rate cache lookups").tag("result", "miss").register(registry);
+		FunctionCounter.builder("purchaser.rate.cache.coalesced", coalescedCount, AtomicLong::get)
+				.description("Misses served by another caller's load").register(registry);
+		FunctionCounter.builder("purchaser.rate.cache.evictions", evictionCount, AtomicLong::get)
+				.description("Expired or evicted currencies").register(registry);
+		Gauge.builder("purchaser.rate.cache.hit.ratio", this, ExchangeRateCache::getHitRatio)
+				.description("Hits over all lookups since start").register(registry);
+		Gauge.builder("purchaser.rate.cache.size", this, ExchangeRateCache::size)
+				.description("Cached currencies").register(registry);
+		Gauge.builder("purchaser.rate.cache.bytes", this, ExchangeRateCache::getTotalBytes)
+				.description("Estimated heap size of cached rates").baseUnit("bytes").register(registry);
+	}
+	
+	private synchronized CacheEntry lookup(String currency, String date) {
+		
+		CacheEntry entry=entries.get(currency);
+		if (entry == null) {
+			return null;
+		}
+		
+		if (entry.getExpireAt() <= clock.millis()) {
+			invalidate(currency);
+			evictionCount.incrementAndGet();
+			return null;
+		}
+		
+		//yyyy-MM-dd compares in date order
+		if (entry.getFromDate().compareTo(date) > 0) {
+			return null;
+		}
+		
+		return entry;
+	}
+	
+	private synchronized void put(CacheEntry entry) {
+		
+		//a currency stays pinned once refreshed, even when reloaded for an earlier date; stale rates never are
+		CacheEntry previous=entries.get(entry.getCurrency());
+		if (previous != null && previous.isPinned() && !entry.isPinned() && !entry.getTimeline().isStale()) {
+			entry=new CacheEntry(entry.getCurrency(), entry.getFromDate(), entry.getTimeline(), Long.MAX_VALUE, true);
+		}
+		
+		invalidate(entry.getCurrency());
+		entries.put(entry.getCurrency(), entry);
+		totalBytes+=entry.getBytes();
+		
+		//evict least recently used, but always keep the entry just loaded and pinned entries
+		Iterator<Map.Entry<String, CacheEntry>> iterator=entries.entrySet().iterator();
+		while ( (entries.size() > properties.getMaxEntries() || totalBytes > properties.getMaxBytes()) 
+				&& iterator.hasNext() ) {
+			CacheEntry eldest=iterator.next().getValue();
+			if (eldest == entry || eldest.isPinned()) {
+				continue;
+			}
+			iterator.remove();
+			totalBytes-=eldest.getBytes();
+			evictionCount.incrementAndGet();
+			log.info("evict exchange rate of " + eldest.getCurrency());
+		}
+	}
+	
+	@Getter
+	@AllArgsConstructor
+	private static class CacheEntry {
+		
+		private final String currency;
+		private final String fromDate;
+		private final RateTimeline timeline;
+		private final long expireAt;
+		private final boolean pinned;
+		
+		long getBytes() {
+			return ENTRY_OVERHEAD_BYTES + RATE_BYTES * timeline.size();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.wex.purchaser.config.RateCacheProperties;
+import com.wex.purchaser.config.RatePrefetchProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Prefetch the exchange rates of the configured currencies into the cache, 
+ * so request threads do not need to call fiscal API.
+ * The warm-up runs as an application runner, which Spring Boot completes before 
+ * the readiness state changes to ACCEPTING_TRAFFIC. A failed warm-up is retried in background
+ * and the readiness probe reports OUT_OF_SERVICE until it succeeds, see RateWarmUpHealthIndicator.
+ * The rates are then refreshed on the configured schedule; Treasury publishes quarterly with occasional amendments.
+ * When the rate snapshot of the last run covers the configured currencies, it is restored 
+ * instead and the warm-up fetches only the newer rates in the background.
+ * @author Ray Cheng
+ */
+@Slf4j
+@Component
+public class ExchangeRatePrefetcher implements ApplicationRunner {
+
+	@Autowired
+	private ExchangeRateCache rateCache;
+	
+	@Autowired
+	private RatePrefetchProperties properties;
+	
+	@Autowired
+	private RateCacheProperties cacheProperties;
+	
+	@Autowired
+	@Qualifier("applicationTaskExecutor")
+	private Executor taskExecutor;
+	
+	private volatile boolean warmedUp;
+	
+	@Override
+	public void run(ApplicationArguments args) {
+		
+		log.info("warm up exchange rate: " + properties.getCurrencies());
+		if (restoreSnapshot()) {
+			warmedUp=true;
+			log.info("warm up exchange rate done from snapshot");
+			taskExecutor.execute(this::prefetch);
+			return;
+		}
+		if (prefetch()) {
+			log.info("warm up exchange rate done");
+		}
+	}
+	
+	   /**
+	   * Restore the cached rates of the last run from the snapshot file.
+	   * A missing, outdated or corrupted file is logged only, the rates are then prefetched as usual.
+	   * @return return true if the snapshot covers all configured currencies from the prefetch date
+	   */
+	boolean restoreSnapshot() {
+		
+		Path file=snapshotFile();
+		if (file == null || !Files.exists(file)) {
+			return false;
+		}
+		try {
+			Map<String, String> restored=rateCache.restoreSnapshot(file);
+			log.info("restore exchange rate snapshot: " + restored.keySet());
+			
+			//yyyy-MM-dd compares in date order
+			String fromDate=fromDate();
+			return properties.isEnabled() && properties.getCurrencies().stream()
+					.allMatch(currency->restored.containsKey(currency) && restored.get(currency).compareTo(fromDate) <= 0);
+		} catch (Exception e) {
+			log.warn("restore exchange rate snapshot failed: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	@Scheduled(cron = "${purchaser.rate-prefetch.cron:0 0 6 * * *}", zone = "UTC")
+	public void refresh() {
+		
+		log.info("refresh exchange rate: " + properties.getCurrencies());
+		prefetch();
+	}
+	
+	@Scheduled(fixedDelayString = "${purchaser.rate-prefetch.retry-delay:PT1M}", initialDelayString = "${purchaser.rate-prefetch.retry-delay:PT1M}")
+	public void retryWarmUp() {
+		
+		if (isEnabled() && !warmedUp) {
+			log.info("retry warm up exchange rate: " + properties.getCurrencies());
+			prefetch();
+		}
+	}
+	
+	   /**
+	   * Load rates of all configured currencies in one fiscal API call.
+	   * Failure is logged only, the currencies are then loaded on request.
+	   * @return return true if the rates are loaded
+	   */
+	public boolean prefetch() {
+		
+		if (!properties.isEnabled() || properties.getCurrencies().isEmpty()) {
+			return false;
+		}
+		
+		try {
+			rateCache.refresh(properties.getCurrencies(), fromDate());
+		} catch (Exception e) {
+			log.error("prefetch exchange rate failed: " + e.getMessage());
+			return false;
+		}
+		warmedUp=true;
+		
+		Path file=snapshotFile();
+		if (file != null) {
+			try {
+				rateCache.writeSnapshot(file);
+			} catch (Exception e) {
+				log.warn("write exchange rate snapshot failed: " + e.getMessage());
+			}
+		}
+		return true;
+	}
+	
+	private String fromDate() {
+		return LocalDate.now(ZoneId.of("UTC")).minus(properties.getLookback()).toString();
+	}
+	
+	private Path snapshotFile() {
+		
+		String file=cacheProperties.getSnapshotFile();
+		return file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+	}
+	
+	//true once the rates of all configured currencies were loaded or restored from the snapshot
+	public boolean isWarmedUp() {
+		return warmedUp;
+	}
+	
+	public boolean isEnabled() {
+		return properties.isEnabled() && !properties.getCurrencies().isEmpty();
+	}
+}
@@ -0,0 +1,137 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming reader of the fiscaldata response.
+ * Rates are decoded one record at a time from the token stream and passed on,
+ * without building the response object tree or buffering the body.
+ * The repeated currency names of one response share a single String.
+ * @author Ray Cheng
+ */
+public final class ExchangeRateReader {
+	
+	private final JsonFactory factory;
+	
+	public ExchangeRateReader() {
+		this(new JsonFactory());
+	}
+	
+	public ExchangeRateReader(JsonFactory factory) {
+		this.factory=factory;
+	}
+	
+	   /**
+	   * This method is used to pass each rate of a response to the consumer as soon as it is decoded
+	   * @param in the response body
+	   * @param rateConsumer called once per rate, in response order
+	   * @return meta It returns the paging information, null when the response has none
+	   * @throws IOException if the body cannot be read or is not valid JSON
+	   */
+	public ApiMeta read(InputStream in, Consumer<ExchangeRate> rateConsumer) throws IOException {
+		
+		try (JsonParser parser=factory.createParser(in)) {
+			return read(parser, rateConsumer);
+		}
+	}
+	
+	private ApiMeta read(JsonParser parser, Consumer<ExchangeRate> rateConsumer) throws IOException {
+		
+		ApiMeta meta=null;
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new JsonParseException(parser, "Expected fiscal API response object");
+		}
+		
+		Map<String, String> currencies=new HashMap<>();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field=parser.getCurrentName();
+			JsonToken token=parser.nextToken();
+			if ("data".equals(field) && token == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					rateConsumer.accept(readRate(parser, currencies));
+				}
+			} else if ("meta".equals(field) && token == JsonToken.START_OBJECT) {
+				meta=readMeta(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return meta;
+	}
+	
+	private ExchangeRate readRate(JsonParser parser, Map<String, String> currencies) throws IOException {
+		
+		ExchangeRate rate=new ExchangeRate();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field=parser.getCurrentName();
+			JsonToken token=parser.nextToken();
+			if (token == JsonToken.VALUE_NULL) {
+				continue;
+			}
+			switch (field) {
+			case "country_currency_desc":
+				String currency=parser.getText();
+				rate.setCountryCurrencyDesc(currencies.computeIfAbsent(currency, c->c));
+				break;
+			case "exchange_rate":
+				rate.setExchangeRate(readDecimal(parser, token));
+				break;
+			case "effective_date":
+				rate.setEffectiveDate(parser.getText());
+				break;
+			case "record_date":
+				rate.setRecordDate(parser.getText());
+				break;
+			default:
+				parser.skipChildren();
+			}
+		}
+		return rate;
+	}
+	
+	private BigDecimal readDecimal(JsonParser parser, JsonToken token) throws IOException {
+		
+		if (token != JsonToken.VALUE_STRING) {
+			return parser.getDecimalValue();
+		}
+		//fiscal API sends numbers as strings
+		try {
+			return new BigDecimal(parser.getText().trim());
+		} catch (NumberFormatException e) {
+			throw new JsonParseException(parser, "Invalid exchange rate: " + parser.getText(), e);
+		}
+	}
+	
+	private ApiMeta readMeta(JsonParser parser) throws IOException {
+		
+		ApiMeta meta=new ApiMeta();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field=parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "count":
+				meta.setCount(parser.getValueAsInt());
+				break;
+			case "total-count":
+				meta.setTotalCount(parser.getValueAsInt());
+				break;
+			case "total-pages":
+				meta.setTotalPages(parser.getValueAsInt());
+				break;
+			default:
+				parser.skipChildren();
+			}
+		}
+		return meta;
+	}
+}
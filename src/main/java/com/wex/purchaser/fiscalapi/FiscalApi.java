@@ -1,27 +1,111 @@
 package com.wex.purchaser.fiscalapi;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import com.wex.purchaser.config.FiscalApiProperties;
 import com.wex.purchaser.exception.ServiceException;
 
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Fiscal API for obtain exchange rate from FiscalData
+ * Fiscal API for obtain exchange rate from FiscalData.
+ * Transient failures are retried with backoff, and calls fail fast while the circuit breaker is open.
  * @author    Ray Cheng
  */
 @Slf4j
 @Component
 public class FiscalApi {
 
+	@Autowired
+	@Qualifier("fiscalApiRestTemplate")
+	private RestTemplate restTemplate;
+	
+	@Autowired
+	@Qualifier("fiscalApiWebClient")
+	private WebClient webClient;
+	
+	@Autowired
+	private FiscalApiProperties properties;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	@Autowired
+	@Qualifier("fiscalApiCircuitBreaker")
+	private CircuitBreaker circuitBreaker;
+	
+	@Autowired
+	@Qualifier("fiscalApiRetry")
+	private Retry retry;
+	
+	@Autowired
+	@Qualifier("fiscalApiBulkhead")
+	private Bulkhead bulkhead;
+	
+	//waits between async retries without holding a thread, not a bean so the task executor is still auto-configured
+	private final ScheduledExecutorService retryScheduler=Executors.newSingleThreadScheduledExecutor(runnable->{
+		Thread thread=new Thread(runnable, "fiscal-api-retry");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	//decodes the response rate by rate instead of data binding the whole body
+	private static final ExchangeRateReader READER=new ExchangeRateReader();
+	
+	private static final String MODE_SYNC="sync";
+	private static final String MODE_ASYNC="async";
+
 	//https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange
 	//?fields=country_currency_desc,exchange_rate,record_date
 	//&filter=country_currency_desc:in:(Canada-Dollar)
 	//,record_date:gte:2020-01-01
-	final static String EXCHANGE_RATE_ENDPOINT="https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange?fields=country_currency_desc,exchange_rate,effective_date,record_date&filter=country_currency_desc:in:(%s),effective_date:gte:%s";
+	final static String EXCHANGE_RATE_QUERY="?fields=country_currency_desc,exchange_rate,effective_date,record_date&filter=country_currency_desc:in:(%s),effective_date:gte:%s";
+	final static String EXCHANGE_RATE_TO_DATE_FILTER=",effective_date:lte:%s";
+	//pages are in date order, so the rates stored before a failed page have no gap to the rates already stored
+	final static String EXCHANGE_RATE_SORT="&sort=effective_date,country_currency_desc";
+	//a range before the stored rates is fetched newest first
+	final static String EXCHANGE_RATE_SORT_DESC="&sort=-effective_date,country_currency_desc";
+	final static String EXCHANGE_RATE_PAGE="&page[number]=%d&page[size]=%d";
 
 	   /**
 	   * This method is call fiscal API with current and date
@@ -32,29 +116,367 @@ public class FiscalApi {
 	   */
 	public List<ExchangeRate> parseExchangeRate( String currency, String date) throws ServiceException {
 		 
-		log.info("currency: "+ currency+ " date: " + date);
+		List<ExchangeRate> rateList=fetchExchangeRate(Collections.singletonList(currency), date, null);
 		
-		RestTemplate template=new RestTemplate();
-		String url=String.format(EXCHANGE_RATE_ENDPOINT, currency, date);
-
-		ResponseEntity<ApiResponse> response=template.getForEntity(url, ApiResponse.class);		
+		if (rateList.size()==0) {
+			throw new ServiceException("Exchange Rate not found");
+		}
+		
+		return rateList;
+	}
+	
+	   /**
+	   * This method is call fiscal API for the rates effective within a date range
+	   * , an empty list is returned when there is no rate in the range
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date, inclusive. string and in yyyy-MM-dd format
+	   * @param toDate This is the latest date, inclusive. null for no upper bound
+	   * @return exchangeRateList It return the exchange rate list of all pages return from the fisal API
+	   */
+	public List<ExchangeRate> fetchExchangeRate( Collection<String> currencies, String fromDate, String toDate) {
+		
+		List<ExchangeRate> rateList=new ArrayList<>();
+		fetchExchangeRate(currencies, fromDate, toDate, rateList::addAll);
+		return rateList;
+	}
+	
+	   /**
+	   * This method is call fiscal API for the rates effective within a date range, page by page. 
+	   * The first page is read on the caller thread, the remaining pages are requested 
+	   * at most max. parallel pages at a time and passed to the consumer in page order, 
+	   * so only the pages in flight are held in memory. 
+	   * Pages are in effective date order, ascending without upper bound and descending otherwise.
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date, inclusive. string and in yyyy-MM-dd format
+	   * @param toDate This is the latest date, inclusive. null for no upper bound
+	   * @param pageConsumer called with the rates of each page on the caller thread
+	   * @return totalPages It returns the number of pages
+	   */
+	public int fetchExchangeRate( Collection<String> currencies, String fromDate, String toDate, Consumer<List<ExchangeRate>> pageConsumer) {
 		
-		System.out.println("response: " + response);
+		String url=exchangeRateUrl(currencies, fromDate, toDate);
 		
-		System.out.println("response.getBody().: " + response);
+		//the bulkhead is inside the retry, so a caller does not hold a permit while waiting to retry
+		ApiResponse first=Retry.decorateSupplier(retry, 
+				CircuitBreaker.decorateSupplier(circuitBreaker, 
+						Bulkhead.decorateSupplier(bulkhead, ()->execute(pageUrl(url, 1))))).get();
+		pageConsumer.accept(rateList(first));
 		
-		List<ExchangeRate> rateList=response.getBody().getData();
+		int totalPages=totalPages(first);
+		Deque<CompletableFuture<ApiResponse>> window=new ArrayDeque<>();
+		int next=2;
+		try {
+			while (next <= totalPages || !window.isEmpty()) {
+				while (next <= totalPages && window.size() < properties.getMaxParallelPages()) {
+					window.add(fetchPageAsync(pageUrl(url, next++), true));
+				}
+				pageConsumer.accept(rateList(window.poll().join()));
+			}
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		} finally {
+			window.forEach(page->page.cancel(false));
+		}
+		return totalPages;
+	}
+	
+	private ApiResponse execute(String url) {
 		
-		if (rateList.size()==0) {
-			throw new ServiceException("Exchange Rate not found");
+		Timer.Sample sample=Timer.start(meterRegistry);
+		try {
+			ApiResponse body=restTemplate.execute(url, HttpMethod.GET, null, response->{
+				CountingInputStream in=new CountingInputStream(response.getBody());
+				ApiResponse page=readPage(in);
+				recordResponse(in.getCount(), page);
+				return page;
+			});
+			recordRequest(sample, MODE_SYNC, 200, null);
+			
+			return body;
+		} catch (RestClientResponseException e) {
+			recordRequest(sample, MODE_SYNC, e.getRawStatusCode(), e);
+			throw e;
+		} catch (RuntimeException e) {
+			recordRequest(sample, MODE_SYNC, 0, e);
+			throw e;
 		}
+	}
+	
+	   /**
+	   * This method is call fiscal API for the rates effective within a date range without blocking the caller
+	   * , the future completes on the HTTP client thread when all pages arrive
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date, inclusive. string and in yyyy-MM-dd format
+	   * @param toDate This is the latest date, inclusive. null for no upper bound
+	   * @return exchangeRateList It return the exchange rate list of all pages return from the fisal API, empty list when there is no rate
+	   */
+	public CompletableFuture<List<ExchangeRate>> fetchExchangeRateAsync( Collection<String> currencies, String fromDate, String toDate) {
 		
-		return rateList;
+		//added by one page at a time, read after the future completes
+		List<ExchangeRate> rateList=new ArrayList<>();
+		return fetchExchangeRateAsync(currencies, fromDate, toDate, rateList::addAll).thenApply(totalPages->rateList);
 	}
 	
-	public static void main(String[] avg) throws ServiceException {
-		FiscalApi api=new FiscalApi();
+	   /**
+	   * This method is call fiscal API for the rates effective within a date range page by page, without blocking the caller. 
+	   * At most max. parallel pages are requested at a time, and each page is passed to the consumer 
+	   * as soon as it and the pages before it have arrived, so only the pages in flight are held in memory. 
+	   * Pages are in effective date order, ascending without upper bound and descending otherwise. 
+	   * The pages after a failed page are not passed on.
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date, inclusive. string and in yyyy-MM-dd format
+	   * @param toDate This is the latest date, inclusive. null for no upper bound
+	   * @param pageConsumer called with the rates of each page in page order, one page at a time, 
+	   * on the HTTP client thread, so it must hand blocking work to an executor
+	   * @return totalPages It returns the future of the number of pages, completed after the last page is passed on
+	   */
+	public CompletableFuture<Integer> fetchExchangeRateAsync( Collection<String> currencies, String fromDate, String toDate, Consumer<List<ExchangeRate>> pageConsumer) {
 		
-		api.parseExchangeRate("Canada-Dollar", "2023-01-01");
+		String url=exchangeRateUrl(currencies, fromDate, toDate);
+		
+		return fetchPageAsync(pageUrl(url, 1), false).thenCompose(first->{
+			pageConsumer.accept(rateList(first));
+			
+			int totalPages=totalPages(first);
+			PageWindow window=new PageWindow(url, totalPages);
+			return window.next(pageConsumer)
+					.whenComplete((v, e)->window.cancel())
+					.thenApply(v->totalPages);
+		});
+	}
+	
+	//the pages in flight of an async fetch, the oldest is passed on first and replaced by the next page
+	private class PageWindow {
+		
+		private final String url;
+		private final int totalPages;
+		//only touched by one page completion at a time
+		private final Deque<CompletableFuture<ApiResponse>> pages=new ArrayDeque<>();
+		private int next=2;
+		
+		PageWindow(String url, int totalPages) {
+			this.url=url;
+			this.totalPages=totalPages;
+			fill();
+		}
+		
+		private void fill() {
+			while (next <= totalPages && pages.size() < properties.getMaxParallelPages()) {
+				pages.add(fetchPageAsync(pageUrl(url, next++), false));
+			}
+		}
+		
+		CompletableFuture<Void> next(Consumer<List<ExchangeRate>> pageConsumer) {
+			
+			CompletableFuture<ApiResponse> page=pages.poll();
+			if (page == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return page.thenCompose(response->{
+				pageConsumer.accept(rateList(response));
+				fill();
+				return next(pageConsumer);
+			});
+		}
+		
+		void cancel() {
+			pages.forEach(page->page.cancel(false));
+		}
+	}
+	
+	   /**
+	   * Request one page without blocking the caller
+	   * @param url the page URL
+	   * @param bulkheaded true for the pages of a blocking fetch, each of which holds a bulkhead permit until it arrives. 
+	   * Pages of an async fetch hold no thread and are limited by the connection pool only.
+	   * @return response It returns the future of the page
+	   */
+	private CompletableFuture<ApiResponse> fetchPageAsync(String url, boolean bulkheaded) {
+		
+		Supplier<CompletionStage<ApiResponse>> call=()->executeAsync(url);
+		if (bulkheaded) {
+			//inside the retry as for the first page, the permit is taken on the caller thread or the retry scheduler
+			call=Bulkhead.decorateCompletionStage(bulkhead, call);
+		}
+		return Retry.decorateCompletionStage(retry, retryScheduler, 
+				CircuitBreaker.decorateCompletionStage(circuitBreaker, call))
+				.get().toCompletableFuture();
+	}
+	
+	private CompletableFuture<ApiResponse> executeAsync(String url) {
+		
+		Timer.Sample sample=Timer.start(meterRegistry);
+		return webClient.get().uri(url)
+				.retrieve()
+				.toEntityFlux(DataBuffer.class)
+				//the buffers of the body are joined, not copied into one array, and decoded as a stream
+				.flatMap(response->DataBufferUtils.join(response.getBody())
+						.map(body->new ResponseEntity<>(body, response.getStatusCode()))
+						.defaultIfEmpty(new ResponseEntity<>(response.getStatusCode())))
+				.toFuture()
+				.handle((response, e)->{
+					if (e != null) {
+						Throwable cause=e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+						recordRequest(sample, MODE_ASYNC, cause instanceof WebClientResponseException 
+								? ((WebClientResponseException) cause).getRawStatusCode() : 0, cause);
+						throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+					}
+					
+					if (response.getBody() == null) {
+						ApiResponse page=new ApiResponse(new ArrayList<>(), null);
+						recordResponse(0, page);
+						recordRequest(sample, MODE_ASYNC, response.getStatusCodeValue(), null);
+						return page;
+					}
+					
+					//closing the stream releases the buffers
+					ApiResponse page;
+					long bytes;
+					try (CountingInputStream in=new CountingInputStream(response.getBody().asInputStream(true))) {
+						page=readPage(in);
+						bytes=in.getCount();
+					} catch (IOException parseError) {
+						recordRequest(sample, MODE_ASYNC, response.getStatusCodeValue(), parseError);
+						throw new UncheckedIOException(parseError);
+					}
+					recordResponse(bytes, page);
+					recordRequest(sample, MODE_ASYNC, response.getStatusCodeValue(), null);
+					
+					return page;
+				});
+	}
+	
+	   /**
+	   * This method is used to decode one response page rate by rate with the streaming reader. 
+	   * The rates are collected into the page, which is stored as one batch.
+	   * @param in the response body
+	   * @return page It returns the rates and the paging information of the page
+	   * @throws IOException if the body cannot be read or is not valid JSON
+	   */
+	static ApiResponse readPage(InputStream in) throws IOException {
+		
+		List<ExchangeRate> rateList=new ArrayList<>();
+		ApiMeta meta=READER.read(in, rateList::add);
+		return new ApiResponse(rateList, meta);
+	}
+	
+	//a response without paging information is the only page
+	private int totalPages(ApiResponse response) {
+		
+		if (response == null || response.getMeta() == null) {
+			return 1;
+		}
+		return Math.max(1, response.getMeta().getTotalPages());
+	}
+	
+	private String pageUrl(String url, int page) {
+		return url + String.format(EXCHANGE_RATE_PAGE, page, properties.getPageSize());
+	}
+	
+	   /**
+	   * This method is used to decide whether a failed call to fiscal API may succeed when retried, 
+	   * i.e. server errors, throttling, timeouts and connection failures. 
+	   * Only these failures are counted by the circuit breaker.
+	   * @param error exception of the call
+	   * @return transient This returns true when the call can be retried
+	   */
+	public static boolean isTransient(Throwable error) {
+		
+		Throwable cause=error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause instanceof RestClientResponseException) {
+			int status=((RestClientResponseException) cause).getRawStatusCode();
+			return status >= 500 || status == 429;
+		}
+		if (cause instanceof WebClientResponseException) {
+			int status=((WebClientResponseException) cause).getRawStatusCode();
+			return status >= 500 || status == 429;
+		}
+		if (cause instanceof UncheckedIOException) {
+			cause=cause.getCause();
+		}
+		//RestTemplate reports a response it cannot parse as an IO error
+		if (cause instanceof ResourceAccessException && cause.getCause() instanceof JsonProcessingException) {
+			return false;
+		}
+		return cause instanceof ResourceAccessException
+				|| cause instanceof WebClientRequestException
+				|| cause instanceof TimeoutException
+				|| (cause instanceof IOException && !(cause instanceof JsonProcessingException));
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		retryScheduler.shutdownNow();
+	}
+	
+	private List<ExchangeRate> rateList(ApiResponse response) {
+		
+		if (response == null || response.getData() == null) {
+			return new ArrayList<>();
+		}
+		return response.getData();
+	}
+	
+	   /**
+	   * Record latency and result of one call to fiscal API
+	   * @param sample started when the call is sent
+	   * @param mode sync or async
+	   * @param status HTTP status, 0 when there is no response
+	   * @param error exception of the call, null on success
+	   */
+	private void recordRequest(Timer.Sample sample, String mode, int status, Throwable error) {
+		
+		String outcome;
+		if (error == null) {
+			outcome="SUCCESS";
+		} else if (status >= 400 && status < 500) {
+			outcome="CLIENT_ERROR";
+		} else if (status >= 500) {
+			outcome="SERVER_ERROR";
+		} else {
+			outcome="UNKNOWN";
+		}
+		
+		sample.stop(Timer.builder("purchaser.fiscalapi.requests")
+				.description("Calls to fiscal API")
+				.tag("mode", mode)
+				.tag("status", status == 0 ? "IO_ERROR" : String.valueOf(status))
+				.tag("outcome", outcome)
+				.tag("exception", error == null ? "none" : error.getClass().getSimpleName())
+				.register(meterRegistry));
+		
+		if (error != null) {
+			log.warn("fiscal API call failed: " + error.getMessage());
+		}
+	}
+	
+	private void recordResponse(long bytes, ApiResponse response) {
+		
+		DistributionSummary.builder("purchaser.fiscalapi.response.size")
+				.description("Size of fiscal API response body, decompressed")
+				.baseUnit("bytes")
+				.register(meterRegistry)
+				.record(bytes);
+		
+		DistributionSummary.builder("purchaser.fiscalapi.response.rates")
+				.description("Exchange rates in one fiscal API response")
+				.register(meterRegistry)
+				.record(rateList(response).size());
+		
+		log.debug("fiscal API response: " + bytes + " bytes");
+	}
+	
+	private String exchangeRateUrl( Collection<String> currencies, String fromDate, String toDate) {
+		
+		String currency=String.join(",", currencies);
+		log.info("currency: "+ currency+ " date: " + fromDate + (toDate == null ? "" : " to " + toDate));
+		
+		String url=properties.getBaseUrl() + String.format(EXCHANGE_RATE_QUERY, currency, fromDate);
+		if (toDate != null) {
+			url+=String.format(EXCHANGE_RATE_TO_DATE_FILTER, toDate) + EXCHANGE_RATE_SORT_DESC;
+		} else {
+			url+=EXCHANGE_RATE_SORT;
+		}
+		return url;
 	}
 }
@@ -0,0 +1,190 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Binary snapshot of cached rate timelines, read back at startup so conversions are served
+ * before any rate is loaded from the exchange rate table or fiscal API.
+ * <pre>
+ * header:  magic "WXRS", version, created at (epoch millis), entry count
+ * entry:   currency (length + UTF-8), from date (epoch day), stale flag, rate count,
+ *          epoch days (int each), rates (scale, length + unscaled two's complement bytes each)
+ * trailer: CRC32 of all bytes before it
+ * </pre>
+ * The file is replaced atomically and memory-mapped for reading. A file of another version
+ * or with a wrong checksum is rejected as a whole.
+ * @author Ray Cheng
+ */
+public final class RateSnapshot {
+	
+	static final int MAGIC=0x57585253;
+	static final int VERSION=1;
+	
+	private static final int HEADER_BYTES=4 + 4 + 8 + 4;
+	private static final int TRAILER_BYTES=4;
+	
+	private RateSnapshot() {
+	}
+	
+	/**
+	 * Cached timeline of a currency and the date it covers from
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static final class Entry {
+		
+		private final String fromDate;
+		private final RateTimeline timeline;
+	}
+	
+	   /**
+	   * Write the timelines to a new snapshot file, which then replaces the file atomically
+	   * @param file snapshot file
+	   * @param entries timelines to be written
+	   * @return bytes This returns the size of the file
+	   * @throws IOException if the file cannot be written
+	   */
+	public static long write(Path file, List<Entry> entries) throws IOException {
+		
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream(HEADER_BYTES + entries.size() * 1024);
+		DataOutputStream out=new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(System.currentTimeMillis());
+		out.writeInt(entries.size());
+		
+		for (Entry entry : entries) {
+			RateTimeline timeline=entry.getTimeline();
+			byte[] currency=timeline.getCurrency().getBytes(StandardCharsets.UTF_8);
+			out.writeShort(currency.length);
+			out.write(currency);
+			out.writeInt(EpochDays.parse(entry.getFromDate()));
+			out.writeBoolean(timeline.isStale());
+			out.writeInt(timeline.size());
+			for (int i=0; i<timeline.size(); i++) {
+				out.writeInt(timeline.getEpochDay(i));
+			}
+			for (int i=0; i<timeline.size(); i++) {
+				BigDecimal rate=timeline.getRate(i);
+				byte[] unscaled=rate.unscaledValue().toByteArray();
+				out.writeByte(rate.scale());
+				out.writeByte(unscaled.length);
+				out.write(unscaled);
+			}
+		}
+		
+		CRC32 crc=new CRC32();
+		crc.update(bytes.toByteArray(), 0, bytes.size());
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		
+		Path directory=file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp=Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel=FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer=ByteBuffer.wrap(bytes.toByteArray());
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		return bytes.size();
+	}
+	
+	   /**
+	   * Read the timelines of a snapshot file
+	   * @param file snapshot file
+	   * @return entries This returns the timelines in the order written
+	   * @throws IOException if the file cannot be read, is of another version or is corrupted
+	   */
+	public static List<Entry> read(Path file) throws IOException {
+		
+		try (FileChannel channel=FileChannel.open(file, StandardOpenOption.READ)) {
+			long size=channel.size();
+			if (size < HEADER_BYTES + TRAILER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException("Invalid rate snapshot size: " + size);
+			}
+			MappedByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a rate snapshot: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported rate snapshot version: " + buffer.getInt(4));
+			}
+			
+			ByteBuffer content=buffer.duplicate();
+			content.limit((int) size - TRAILER_BYTES);
+			CRC32 crc=new CRC32();
+			crc.update(content);
+			if ((int) crc.getValue() != buffer.getInt((int) size - TRAILER_BYTES)) {
+				throw new IOException("Rate snapshot checksum mismatch: " + file);
+			}
+			
+			try {
+				return readEntries(buffer, (int) size - TRAILER_BYTES);
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				throw new IOException("Invalid rate snapshot: " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	private static List<Entry> readEntries(ByteBuffer buffer, int limit) throws IOException {
+		
+		buffer.position(HEADER_BYTES - 4);
+		buffer.limit(limit);
+		int count=buffer.getInt();
+		
+		List<Entry> entries=new ArrayList<>(count);
+		for (int e=0; e<count; e++) {
+			byte[] currency=new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(currency);
+			int fromEpochDay=buffer.getInt();
+			boolean stale=buffer.get() != 0;
+			int size=buffer.getInt();
+			if (size < 0 || size > buffer.remaining() / 4) {
+				throw new IOException("Invalid rate count: " + size);
+			}
+			
+			int[] epochDays=new int[size];
+			buffer.asIntBuffer().get(epochDays);
+			buffer.position(buffer.position() + size * 4);
+			
+			BigDecimal[] rates=new BigDecimal[size];
+			for (int i=0; i<size; i++) {
+				int scale=buffer.get();
+				byte[] unscaled=new byte[buffer.get() & 0xFF];
+				buffer.get(unscaled);
+				rates[i]=new BigDecimal(new BigInteger(unscaled), scale);
+			}
+			
+			entries.add(new Entry(EpochDays.format(fromEpochDay)
+					, RateTimeline.of(new String(currency, StandardCharsets.UTF_8), epochDays, rates, stale)));
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,243 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable exchange rates of one currency sorted by effective date.
+ * Effective dates are kept as epoch days in a primitive array with the rates in a parallel array,
+ * so the rate for a transaction is located by binary search instead of sorting the rate list again.
+ * @author Ray Cheng
+ */
+public final class RateTimeline {
+
+	private final String currency;
+	private final int[] epochDays;
+	private final BigDecimal[] rates;
+	private final String[] effectiveDates;
+	private final boolean stale;
+	
+	private RateTimeline(String currency, int[] epochDays, BigDecimal[] rates, String[] effectiveDates, boolean stale) {
+		this.currency=currency;
+		this.epochDays=epochDays;
+		this.rates=rates;
+		this.effectiveDates=effectiveDates;
+		this.stale=stale;
+	}
+	
+	   /**
+	   * Build the timeline of a currency, sorting the rates once by effective date
+	   * @param currency The currency of the rates
+	   * @param rateList exchange rate list return from the fiscal API
+	   * @return timeline sorted by effective date
+	   */
+	public static RateTimeline of(String currency, List<ExchangeRate> rateList) {
+		
+		Builder builder=builder(currency, rateList.size());
+		for (ExchangeRate rate : rateList) {
+			builder.add(rate);
+		}
+		return builder.build();
+	}
+	
+	   /**
+	   * Wrap arrays already sorted by effective date, e.g. read from a snapshot file
+	   * @param currency The currency of the rates
+	   * @param epochDays effective dates as epoch days, ascending
+	   * @param rates the rate of each effective date
+	   * @param stale true when the rates are stored ones served while fiscal API was not available
+	   * @return timeline over the arrays, which are not copied
+	   */
+	static RateTimeline of(String currency, int[] epochDays, BigDecimal[] rates, boolean stale) {
+		
+		if (epochDays.length != rates.length) {
+			throw new IllegalArgumentException("Rate count does not match date count: " + currency);
+		}
+		String[] effectiveDates=new String[epochDays.length];
+		for (int i=0; i<epochDays.length; i++) {
+			if (i > 0 && epochDays[i - 1] > epochDays[i]) {
+				throw new IllegalArgumentException("Rates not in date order: " + currency);
+			}
+			effectiveDates[i]=EpochDays.format(epochDays[i]);
+		}
+		return new RateTimeline(currency, epochDays, rates, effectiveDates, stale);
+	}
+		
+	   /**
+	   * Start a timeline of a currency to be filled one rate at a time, e.g. while a response is parsed
+	   * @param currency The currency of the rates
+	   * @param expectedSize initial capacity
+	   * @return builder of the timeline
+	   */
+	public static Builder builder(String currency, int expectedSize) {
+		return new Builder(currency, expectedSize);
+	}
+		
+	/**
+	 * Collects rates into the primitive arrays of a timeline, 
+	 * rates added out of date order are sorted once when the timeline is built.
+	 */
+	public static final class Builder {
+		
+		private final String currency;
+		private int[] epochDays;
+		private BigDecimal[] rates;
+		private String[] effectiveDates;
+		private int size;
+		private boolean sorted=true;
+		private boolean stale;
+		
+		private Builder(String currency, int expectedSize) {
+			int capacity=Math.max(expectedSize, 8);
+			this.currency=currency;
+			this.epochDays=new int[capacity];
+			this.rates=new BigDecimal[capacity];
+			this.effectiveDates=new String[capacity];
+		}
+		
+		public Builder add(ExchangeRate rate) {
+			
+			stale|=rate.isStale();
+			return add(EpochDays.parse(rate.getEffectiveDate()), rate.getExchangeRate(), rate.getEffectiveDate());
+		}
+		
+		//a stored rate, without parsing the date again
+		public Builder add(LocalDate effectiveDate, BigDecimal rate) {
+			return add((int) effectiveDate.toEpochDay(), rate, effectiveDate.toString());
+		}
+		
+		//the rates are stored ones served while fiscal API was not available
+		public Builder markStale() {
+			
+			stale=true;
+			return this;
+		}
+		
+		public boolean isEmpty() {
+			return size == 0;
+		}
+		
+		private Builder add(int epochDay, BigDecimal rate, String effectiveDate) {
+			
+			if (size == epochDays.length) {
+				int capacity=size + (size >> 1);
+				epochDays=Arrays.copyOf(epochDays, capacity);
+				rates=Arrays.copyOf(rates, capacity);
+				effectiveDates=Arrays.copyOf(effectiveDates, capacity);
+			}
+			
+			sorted&=size == 0 || epochDays[size - 1] <= epochDay;
+			epochDays[size]=epochDay;
+			rates[size]=rate;
+			effectiveDates[size]=effectiveDate;
+			size++;
+			return this;
+		}
+		
+		public RateTimeline build() {
+			
+			if (sorted) {
+				return new RateTimeline(currency, Arrays.copyOf(epochDays, size), Arrays.copyOf(rates, size)
+						, Arrays.copyOf(effectiveDates, size), stale);
+			}
+			
+			//sort (epoch day, index) pairs packed in longs, which keeps rates of the same day in added order
+			long[] keys=new long[size];
+			for (int i=0; i<size; i++) {
+				keys[i]=((long) epochDays[i] << 32) | i;
+			}
+			Arrays.sort(keys);
+			
+			int[] sortedDays=new int[size];
+			BigDecimal[] sortedRates=new BigDecimal[size];
+			String[] sortedDates=new String[size];
+			for (int i=0; i<size; i++) {
+				int index=(int) keys[i];
+				sortedDays[i]=epochDays[index];
+				sortedRates[i]=rates[index];
+				sortedDates[i]=effectiveDates[index];
+			}
+			return new RateTimeline(currency, sortedDays, sortedRates, sortedDates, stale);
+		}
+	}
+	
+	   /**
+	   * Find the latest rate effective strictly between two dates
+	   * @param startEpochDay start of the range, exclusive
+	   * @param endEpochDay end of the range, exclusive
+	   * @return index of the rate, or -1 if no rate is effective within the range
+	   */
+	public int indexOfLatest(int startEpochDay, int endEpochDay) {
+		
+		//last index with epoch day < endEpochDay
+		int low=0;
+		int high=epochDays.length - 1;
+		int found=-1;
+		while (low <= high) {
+			int mid=(low + high) >>> 1;
+			if (epochDays[mid] < endEpochDay) {
+				found=mid;
+				low=mid + 1;
+			} else {
+				high=mid - 1;
+			}
+		}
+		
+		if (found < 0 || epochDays[found] <= startEpochDay) {
+			return -1;
+		}
+		return found;
+	}
+	
+	   /**
+	   * Find the rate for converting a transaction: 
+	   * the latest rate effective before the transaction date and within 6 months
+	   * @param transactionEpochDay epoch day of the transaction date
+	   * @return index of the rate, or -1 if there is no such rate
+	   */
+	public int indexForTransaction(int transactionEpochDay) {
+		
+		return indexOfLatest(EpochDays.minusMonths(transactionEpochDay, 6), transactionEpochDay);
+	}
+	
+	public String getCurrency() {
+		return currency;
+	}
+	
+	public int size() {
+		return epochDays.length;
+	}
+	
+	public boolean isEmpty() {
+		return epochDays.length == 0;
+	}
+	
+	//true when the rates are stored ones served while fiscal API was not available
+	public boolean isStale() {
+		return stale;
+	}
+	
+	public int getEpochDay(int index) {
+		return epochDays[index];
+	}
+	
+	public BigDecimal getRate(int index) {
+		return rates[index];
+	}
+	
+	public String getEffectiveDate(int index) {
+		return effectiveDates[index];
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(currency);
+		builder.append("[");
+		builder.append(size());
+		builder.append("]");
+		return builder.toString();
+	}
+}
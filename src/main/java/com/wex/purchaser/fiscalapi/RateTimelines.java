@@ -0,0 +1,65 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timelines of the currencies of one load, filled one rate at a time 
+ * from the fetched pages and the stored rates. Not thread safe.
+ * @author Ray Cheng
+ */
+public final class RateTimelines {
+	
+	private final Map<String, RateTimeline.Builder> builders=new LinkedHashMap<>();
+	
+	   /**
+	   * Start an empty timeline for each currency
+	   * @param currencies The currencies of the load, rates of other currencies are ignored
+	   * @param expectedSize initial capacity of each timeline
+	   */
+	public RateTimelines(Collection<String> currencies, int expectedSize) {
+		currencies.forEach(currency->builders.put(currency, RateTimeline.builder(currency, expectedSize)));
+	}
+	
+	public void add(ExchangeRate rate) {
+		
+		RateTimeline.Builder builder=builders.get(rate.getCountryCurrencyDesc());
+		if (builder != null) {
+			builder.add(rate);
+		}
+	}
+	
+	public void add(String currency, LocalDate effectiveDate, BigDecimal rate) {
+		
+		RateTimeline.Builder builder=builders.get(currency);
+		if (builder != null) {
+			builder.add(effectiveDate, rate);
+		}
+	}
+	
+	public void markStale(String currency) {
+		
+		RateTimeline.Builder builder=builders.get(currency);
+		if (builder != null) {
+			builder.markStale();
+		}
+	}
+	
+	public boolean isEmpty() {
+		return builders.values().stream().allMatch(RateTimeline.Builder::isEmpty);
+	}
+	
+	   /**
+	   * Build the timelines
+	   * @return timelines It returns the timeline of each currency in the order given, empty when there is no rate
+	   */
+	public Map<String, RateTimeline> build() {
+		
+		Map<String, RateTimeline> timelines=new LinkedHashMap<>();
+		builders.forEach((currency, builder)->timelines.put(currency, builder.build()));
+		return timelines;
+	}
+}
@@ -0,0 +1,30 @@
+package com.wex.purchaser.fiscalapi;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Health of the exchange rate warm-up, included in the readiness group,
+ * so a node does not receive traffic before the rates of the prefetched currencies are cached.
+ * @author Ray Cheng
+ */
+@Component("rateWarmUp")
+public class RateWarmUpHealthIndicator implements HealthIndicator {
+	
+	@Autowired
+	private ExchangeRatePrefetcher prefetcher;
+	
+	@Override
+	public Health health() {
+		
+		if (!prefetcher.isEnabled()) {
+			return Health.up().withDetail("prefetch", "disabled").build();
+		}
+		if (prefetcher.isWarmedUp()) {
+			return Health.up().build();
+		}
+		return Health.outOfService().withDetail("prefetch", "not warmed up").build();
+	}
+}
@@ -0,0 +1,18 @@
+package com.wex.purchaser.message;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreateTransactionBatchRequest {
+
+	private List<CreateTransactionRequest> transactionList;
+	
+}
@@ -0,0 +1,19 @@
+package com.wex.purchaser.message;
+
+import java.util.List;
+
+import com.wex.purchaser.dto.CreateTransactionResultDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class CreateTransactionBatchResponse extends AbstractResponse{
+
+	private List<CreateTransactionResultDTO> resultList;
+}
@@ -12,4 +12,6 @@ import lombok.Setter;
 public class CreateTransactionResponse extends AbstractResponse{
 	
 	private int result;
+	
+	private Long transactionId;
 }
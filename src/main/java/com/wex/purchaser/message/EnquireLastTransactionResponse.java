@@ -1,5 +1,8 @@
 package com.wex.purchaser.message;
 
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.wex.purchaser.dto.TransactionDTO;
 
 import lombok.AllArgsConstructor;
@@ -15,4 +18,12 @@ public class EnquireLastTransactionResponse extends AbstractResponse{
 
 	private TransactionDTO transaction;
 	
+	//the transaction in each currency, only when more than one currency is required
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private List<TransactionDTO> transactionList;
+	
+	public EnquireLastTransactionResponse(TransactionDTO transaction) {
+		this.transaction=transaction;
+	}
+	
 }
@@ -1,5 +1,7 @@
 package com.wex.purchaser.message;
 
+import java.math.BigDecimal;
+
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -12,5 +14,16 @@ import lombok.Setter;
 public class ListTransactionRequest {
 
 	private String currency;
+	
+	//transaction date range in yyyy-MM-dd, both inclusive
+	private String fromDate;
+	private String toDate;
+	
+	//amount range in USD, both inclusive
+	private BigDecimal minAmount;
+	private BigDecimal maxAmount;
+	
+	//description starts with
+	private String description;
 
 }
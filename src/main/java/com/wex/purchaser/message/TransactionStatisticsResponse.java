@@ -0,0 +1,20 @@
+package com.wex.purchaser.message;
+
+import java.util.List;
+
+
+import com.wex.purchaser.dto.TransactionStatisticsDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class TransactionStatisticsResponse extends AbstractResponse{
+
+	private List<TransactionStatisticsDTO> statisticsList;
+}
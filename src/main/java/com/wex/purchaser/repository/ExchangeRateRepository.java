@@ -0,0 +1,28 @@
+package com.wex.purchaser.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.wex.purchaser.entity.StoredExchangeRate;
+
+public interface ExchangeRateRepository extends JpaRepository<StoredExchangeRate,Long>{
+
+	public List<StoredExchangeRate> findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(Collection<String> currencies, LocalDate effectiveDate);
+	
+	@Query("select r.currency as currency, min(r.effectiveDate) as earliest, max(r.effectiveDate) as latest"
+			+ " from StoredExchangeRate r where r.currency in :currencies group by r.currency")
+	public List<StoredDateRange> findStoredDateRange(@Param("currencies") Collection<String> currencies);
+	
+	//earliest and latest effective date stored for a currency
+	public interface StoredDateRange {
+		
+		String getCurrency();
+		LocalDate getEarliest();
+		LocalDate getLatest();
+	}
+}
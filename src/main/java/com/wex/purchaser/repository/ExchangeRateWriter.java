@@ -0,0 +1,74 @@
+package com.wex.purchaser.repository;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.wex.purchaser.entity.StoredExchangeRate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Inserts exchange rates unless a rate of the same currency and effective date is already stored.
+ * A rate stored by a concurrent load between the check and the insert is rejected by the unique index,
+ * the batch is then rolled back and checked again.
+ * @author Ray Cheng
+ */
+@Slf4j
+@Repository
+public class ExchangeRateWriter {
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	//inserts nothing when the rate is already stored
+	static final String INSERT_SQL="insert into exchange_rates (exchange_rate_id, currency, effective_date, exchange_rate, record_date)"
+			+ " select nextval('exchange_rate_seq'), ?, ?, ?, ?"
+			+ " where not exists (select 1 from exchange_rates where currency = ? and effective_date = ?)";
+	
+	private static final int MAX_ATTEMPTS=3;
+	
+	   /**
+	   * Insert the rates not stored yet in one transaction
+	   * @param rates exchange rates to be stored
+	   * @return insertedList This returns the rates inserted, without the ones already stored
+	   */
+	public List<StoredExchangeRate> insertIfAbsent(List<StoredExchangeRate> rates) {
+		
+		List<Object[]> rows=new ArrayList<>(rates.size());
+		for (StoredExchangeRate rate : rates) {
+			Date effectiveDate=Date.valueOf(rate.getEffectiveDate());
+			rows.add(new Object[] {rate.getCurrency(), effectiveDate, rate.getExchangeRate()
+					, rate.getRecordDate() == null ? null : Date.valueOf(rate.getRecordDate()), rate.getCurrency(), effectiveDate});
+		}
+		
+		for (int attempt=1; ; attempt++) {
+			try {
+				int[] counts=new TransactionTemplate(transactionManager).execute(status->jdbcTemplate.batchUpdate(INSERT_SQL, rows));
+				List<StoredExchangeRate> insertedList=new ArrayList<>(rates.size());
+				for (int i=0; i<counts.length; i++) {
+					//drivers may not report the count of each statement in a batch
+					if (counts[i] != 0) {
+						insertedList.add(rates.get(i));
+					}
+				}
+				return insertedList;
+			} catch (DuplicateKeyException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				log.info("exchange rate stored by another load, insert again: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.wex.purchaser.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.wex.purchaser.entity.TransactionConversion;
+
+public interface TransactionConversionRepository extends JpaRepository<TransactionConversion,Long>{
+
+	public List<TransactionConversion> findByCurrencyAndTransactionIdIn(String currency, Collection<Long> transactionIds);
+	
+	//stored transactions without a conversion to the currency
+	@Query("select count(t) from Transaction t where not exists (select c.conversionId from TransactionConversion c"
+			+ " where c.currency = :currency and c.transactionId = t.transactionId)")
+	public long countNotConverted(@Param("currency") String currency);
+	
+	//stored conversions of a currency with their transactions, in transaction id order
+	@Query("select t.transactionId as transactionId, t.description as description, t.amount as amountInUSD"
+			+ ", c.currency as currency, c.amount as amount, c.exchangeRate as exchangeRate"
+			+ ", c.effectiveDate as effectiveDate, c.transactionDate as transactionDate"
+			+ " from TransactionConversion c, Transaction t"
+			+ " where c.currency = :currency and t.transactionId = c.transactionId"
+			+ " order by c.transactionId")
+	public List<ConvertedTransaction> findConverted(@Param("currency") String currency);
+	
+	public interface ConvertedTransaction {
+		
+		long getTransactionId();
+		String getDescription();
+		BigDecimal getAmountInUSD();
+		String getCurrency();
+		BigDecimal getAmount();
+		BigDecimal getExchangeRate();
+		LocalDate getEffectiveDate();
+		LocalDate getTransactionDate();
+	}
+}
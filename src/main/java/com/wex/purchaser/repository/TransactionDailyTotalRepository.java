@@ -0,0 +1,41 @@
+package com.wex.purchaser.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.wex.purchaser.entity.TransactionDailyTotal;
+
+public interface TransactionDailyTotalRepository extends JpaRepository<TransactionDailyTotal,LocalDate>{
+
+	//add transactions to an existing day, returns 0 when the day has no row yet
+	@Modifying
+	@Query("update TransactionDailyTotal t set t.transactionCount = t.transactionCount + :count, t.amount = t.amount + :amount"
+			+ " where t.transactionDate = :transactionDate")
+	public int increment(@Param("transactionDate") LocalDate transactionDate, @Param("count") long count, @Param("amount") BigDecimal amount);
+	
+	//first transactions of a day, fails when the day was inserted meanwhile instead of overwriting it
+	@Modifying
+	@Query(value="insert into transaction_daily_totals (transaction_date, transaction_count, amount) values (:transactionDate, :count, :amount)", nativeQuery=true)
+	public int insertDay(@Param("transactionDate") LocalDate transactionDate, @Param("count") long count, @Param("amount") BigDecimal amount);
+	
+	public List<TransactionDailyTotal> findByTransactionDateBetweenOrderByTransactionDate(LocalDate from, LocalDate to);
+	
+	@Query("select coalesce(sum(t.transactionCount), 0) from TransactionDailyTotal t")
+	public long sumTransactionCount();
+	
+	//recompute all days from the transactions table with one GROUP BY
+	@Modifying
+	@Query(value="insert into transaction_daily_totals (transaction_date, transaction_count, amount)"
+			+ " select cast(created_at as date), count(*), sum(amount) from transactions group by cast(created_at as date)", nativeQuery=true)
+	public int insertFromTransactions();
+	
+	@Modifying
+	@Query("delete from TransactionDailyTotal t")
+	public int deleteAllDays();
+}
@@ -1,10 +1,34 @@
 package com.wex.purchaser.repository;
 
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.wex.purchaser.entity.Transaction;
 
-public interface TransactionRepository extends JpaRepository<Transaction,Long>{
+public interface TransactionRepository extends JpaRepository<Transaction,Long>, JpaSpecificationExecutor<Transaction>{
 
-	public Transaction findFirstByOrderByCreatedAt();
+	//latest transaction, served by idx_transactions_created_at_desc
+	public Transaction findFirstByOrderByCreatedAtDescTransactionIdDesc();
+	
+	//first page of the keyset pagination
+	public List<Transaction> findByOrderByCreatedAtAscTransactionIdAsc(Pageable pageable);
+	
+	//next page after the last (createdAt, transactionId) of previous page
+	@Query("select t from Transaction t where t.createdAt > :createdAt"
+			+ " or (t.createdAt = :createdAt and t.transactionId > :transactionId)"
+			+ " order by t.createdAt asc, t.transactionId asc")
+	public List<Transaction> findPageAfter(@Param("createdAt") Timestamp createdAt, @Param("transactionId") long transactionId, Pageable pageable);
+	
+	//transactions created within [from, to)
+	public List<Transaction> findByCreatedAtGreaterThanEqualAndCreatedAtLessThan(Timestamp from, Timestamp to);
+	
+	//ids of all stored transactions in id order, which the stored conversions are checked against
+	@Query("select t.transactionId from Transaction t order by t.transactionId")
+	public List<Long> findAllTransactionIds();
 }
@@ -0,0 +1,55 @@
+package com.wex.purchaser.repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.wex.purchaser.entity.Transaction;
+
+/**
+ * Predicates for filtering purchase transactions in DB, each one served by an index of the transactions table
+ * @author Ray Cheng
+ */
+public final class TransactionSpecifications {
+
+	private static final char LIKE_ESCAPE='\\';
+
+	private TransactionSpecifications() {
+	}
+
+	//created at or after the time
+	public static Specification<Transaction> createdFrom(Timestamp from) {
+		return (root, query, cb)->cb.greaterThanOrEqualTo(root.get("createdAt"), from);
+	}
+
+	//created before the time
+	public static Specification<Transaction> createdBefore(Timestamp to) {
+		return (root, query, cb)->cb.lessThan(root.get("createdAt"), to);
+	}
+
+	public static Specification<Transaction> amountAtLeast(BigDecimal minAmount) {
+		return (root, query, cb)->cb.greaterThanOrEqualTo(root.get("amount"), minAmount);
+	}
+
+	public static Specification<Transaction> amountAtMost(BigDecimal maxAmount) {
+		return (root, query, cb)->cb.lessThanOrEqualTo(root.get("amount"), maxAmount);
+	}
+
+	//prefix match, which can use the description index unlike a contains match
+	public static Specification<Transaction> descriptionStartsWith(String prefix) {
+		return (root, query, cb)->cb.like(root.get("description"), escapeLike(prefix) + "%", LIKE_ESCAPE);
+	}
+
+	private static String escapeLike(String value) {
+
+		StringBuilder escaped=new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+				escaped.append(LIKE_ESCAPE);
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
+	}
+}
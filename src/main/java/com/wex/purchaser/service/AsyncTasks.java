@@ -0,0 +1,69 @@
+package com.wex.purchaser.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.wex.purchaser.exception.ServiceException;
+
+/**
+ * Helpers for running business logic as CompletableFuture,
+ * so ServiceException is carried through the future as it is.
+ * @author Ray Cheng
+ */
+public final class AsyncTasks {
+
+	private AsyncTasks() {
+	}
+
+	@FunctionalInterface
+	public interface ServiceSupplier<T> {
+		T get() throws ServiceException;
+	}
+
+	   /**
+	   * Run the task on the executor.
+	   * When the executor is full the future fails with ServiceException instead of throwing to the caller.
+	   * @param executor executor to run the task
+	   * @param task the task, may throw ServiceException
+	   * @return future It return the result of the task
+	   */
+	public static <T> CompletableFuture<T> supply(Executor executor, ServiceSupplier<T> task) {
+
+		CompletableFuture<T> future=new CompletableFuture<>();
+		try {
+			executor.execute(()->{
+				try {
+					future.complete(task.get());
+				} catch (ServiceException | RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new ServiceException("Server busy, please try again later"));
+		}
+		return future;
+	}
+
+	public static <T> CompletableFuture<T> failed(Throwable e) {
+
+		CompletableFuture<T> future=new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	   /**
+	   * Get the original exception of a failed future
+	   * @param e exception from the future, may be wrapped in CompletionException or ExecutionException
+	   * @return exception It return the exception thrown by the task
+	   */
+	public static Throwable unwrap(Throwable e) {
+
+		while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+			e=e.getCause();
+		}
+		return e;
+	}
+}
@@ -0,0 +1,315 @@
+package com.wex.purchaser.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.wex.purchaser.config.ConversionViewProperties;
+import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.entity.TransactionConversion;
+import com.wex.purchaser.fiscalapi.EpochDays;
+import com.wex.purchaser.fiscalapi.RateTimeline;
+import com.wex.purchaser.repository.TransactionConversionRepository;
+import com.wex.purchaser.repository.TransactionConversionRepository.ConvertedTransaction;
+import com.wex.purchaser.repository.TransactionRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Business Layer for the stored conversions of the most used currencies.
+ * A conversion does not change once its rate is stored, so each transaction is converted
+ * when it is created, and again only when a new rate within its 6 months window is stored.
+ * Conversions are computed from the local exchange rate table, fiscal API is never called here.
+ * @author    Ray Cheng
+ */
+@Slf4j
+@Service
+public class ConversionViewService {
+	
+	@Autowired
+	private TransactionConversionRepository repository;
+	
+	@Autowired
+	private TransactionRepository transactionRepository;
+	
+	@Autowired
+	private ExchangeRateService rateService;
+	
+	@Autowired
+	private ConversionViewProperties properties;
+	
+	@Autowired
+	@Qualifier("applicationTaskExecutor")
+	private Executor taskExecutor;
+	
+	private final ConcurrentMap<String, Object> currencyLocks=new ConcurrentHashMap<>();
+	
+	   /**
+	   * This method is used to list all purchase transactions from the stored conversions
+	   * @param currencies required currencies
+	   * @return transactionList This returns transaction list in the required currencies, each transaction followed by its other currencies,
+	   * or empty when a currency is not kept or its conversions are not complete
+	   */
+	public Optional<List<TransactionDTO>> listConverted(List<String> currencies) {
+		
+		if (!properties.isEnabled() || !properties.getCurrencies().containsAll(currencies)) {
+			return Optional.empty();
+		}
+		
+		//counts alone would not catch a missing conversion offset by one of a removed transaction
+		List<Long> transactionIds=transactionRepository.findAllTransactionIds();
+		
+		List<List<ConvertedTransaction>> convertedLists=new ArrayList<>(currencies.size());
+		for (String currency : currencies) {
+			List<ConvertedTransaction> converted=repository.findConverted(currency);
+			if (!isComplete(converted, transactionIds)) {
+				log.info("conversion of " + currency + " not complete: " + converted.size() + " of " + transactionIds.size());
+				return Optional.empty();
+			}
+			convertedLists.add(converted);
+		}
+		
+		//every list has one row per transaction in transaction id order
+		List<TransactionDTO> transactionList=new ArrayList<>(transactionIds.size() * currencies.size());
+		for (int i=0; i<transactionIds.size(); i++) {
+			for (List<ConvertedTransaction> converted : convertedLists) {
+				transactionList.add(toDTO(converted.get(i)));
+			}
+		}
+		return Optional.of(transactionList);
+	}
+	
+	//true if the conversions are of exactly the transactions, both in transaction id order
+	private boolean isComplete(List<ConvertedTransaction> converted, List<Long> transactionIds) {
+		
+		if (converted.size() != transactionIds.size()) {
+			return false;
+		}
+		for (int i=0; i<converted.size(); i++) {
+			if (converted.get(i).getTransactionId() != transactionIds.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	   /**
+	   * This method is used to convert new transactions to the kept currencies.
+	   * A transaction without stored rate is skipped and converted when its rate is stored.
+	   * @param transactions saved transactions
+	   */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public void onCreated(List<Transaction> transactions) {
+		
+		if (!properties.isEnabled()) {
+			return;
+		}
+		
+		for (String currency : properties.getCurrencies()) {
+			try {
+				convertInBatches(currency, transactions);
+			} catch (RuntimeException e) {
+				log.warn("convert new transactions to " + currency + " failed: " + e.getMessage());
+			}
+		}
+	}
+	
+	   /**
+	   * Convert again the transactions affected by new rates, in background.
+	   * A rate is used by the transactions within 6 months after its effective date.
+	   * @param event stored exchange rates
+	   */
+	@EventListener
+	public void onRatesStored(ExchangeRatesStoredEvent event) {
+		
+		if (!properties.isEnabled()) {
+			return;
+		}
+		
+		Map<String, List<StoredExchangeRate>> rateMap=event.getRateList().stream()
+				.filter(r->properties.getCurrencies().contains(r.getCurrency()))
+				.collect(Collectors.groupingBy(StoredExchangeRate::getCurrency));
+		
+		rateMap.forEach((currency, rateList)->{
+			LocalDate earliest=rateList.stream().map(StoredExchangeRate::getEffectiveDate).min(LocalDate::compareTo).get();
+			LocalDate latest=rateList.stream().map(StoredExchangeRate::getEffectiveDate).max(LocalDate::compareTo).get();
+			taskExecutor.execute(()->{
+				try {
+					refresh(currency, earliest, latest);
+				} catch (RuntimeException e) {
+					log.warn("convert transactions to " + currency + " for new rates failed: " + e.getMessage());
+				}
+			});
+		});
+	}
+	
+	   /**
+	   * Convert again the transactions which may use a rate effective within the dates
+	   * @param currency the currency of new rates
+	   * @param earliest earliest effective date of new rates
+	   * @param latest latest effective date of new rates
+	   */
+	void refresh(String currency, LocalDate earliest, LocalDate latest) {
+		
+		//a rate applies after its effective date and up to 6 months later
+		Timestamp from=startOfDay(earliest.plusDays(1));
+		Timestamp to=startOfDay(latest.plusMonths(6).plusDays(2));
+		
+		List<Transaction> transactions=transactionRepository.findByCreatedAtGreaterThanEqualAndCreatedAtLessThan(from, to);
+		log.info("convert " + transactions.size() + " transactions to " + currency + " for rates from " + earliest + " to " + latest);
+		
+		convertInBatches(currency, transactions);
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuildOnStartup() {
+		
+		if (properties.isEnabled()) {
+			taskExecutor.execute(()->{
+				try {
+					rebuild();
+				} catch (RuntimeException e) {
+					log.warn("rebuild conversion failed: " + e.getMessage());
+				}
+			});
+		}
+	}
+	
+	   /**
+	   * This method is used to convert all transactions to the kept currencies which are not complete,
+	   * e.g. a currency newly added to the view. Transactions are read page by page.
+	   */
+	public void rebuild() {
+		
+		for (String currency : properties.getCurrencies()) {
+			long notConverted=repository.countNotConverted(currency);
+			if (notConverted == 0) {
+				continue;
+			}
+			
+			log.info("rebuild conversion of " + currency + ": " + notConverted + " transactions not converted");
+			Pageable pageable=PageRequest.of(0, properties.getBatchSize());
+			List<Transaction> page=transactionRepository.findByOrderByCreatedAtAscTransactionIdAsc(pageable);
+			while (!page.isEmpty()) {
+				convert(currency, page);
+				Transaction last=page.get(page.size() - 1);
+				page=transactionRepository.findPageAfter(last.getCreatedAt(), last.getTransactionId(), pageable);
+			}
+		}
+	}
+	
+	private void convertInBatches(String currency, List<Transaction> transactions) {
+		
+		for (int from=0; from<transactions.size(); from+=properties.getBatchSize()) {
+			convert(currency, transactions.subList(from, Math.min(from + properties.getBatchSize(), transactions.size())));
+		}
+	}
+	
+	   /**
+	   * Convert the transactions with the stored rates and store the conversions which are new or changed.
+	   * Synchronized per currency so two callers do not insert the same conversion,
+	   * while conversions to other currencies go on.
+	   * @param currency the currency converted to
+	   * @param transactions the transactions
+	   */
+	void convert(String currency, List<Transaction> transactions) {
+		
+		if (transactions.isEmpty()) {
+			return;
+		}
+		
+		synchronized (currencyLocks.computeIfAbsent(currency, c->new Object())) {
+			convertLocked(currency, transactions);
+		}
+	}
+	
+	private void convertLocked(String currency, List<Transaction> transactions) {
+		
+		int earliestDay=Integer.MAX_VALUE;
+		for (Transaction transaction : transactions) {
+			earliestDay=Math.min(earliestDay, EpochDays.ofEpochMilli(transaction.getCreatedAt().getTime()));
+		}
+		LocalDate fromDate=LocalDate.ofEpochDay(EpochDays.minusMonths(earliestDay, 6));
+		RateTimeline timeline=RateTimeline.of(currency, rateService.findStoredRates(Collections.singletonList(currency), fromDate));
+		
+		List<Long> transactionIds=transactions.stream().map(Transaction::getTransactionId).collect(Collectors.toList());
+		Map<Long, TransactionConversion> storedMap=repository.findByCurrencyAndTransactionIdIn(currency, transactionIds).stream()
+				.collect(Collectors.toMap(TransactionConversion::getTransactionId, Function.identity(), (a,b)->a, LinkedHashMap::new));
+		
+		List<TransactionConversion> changedList=new ArrayList<>();
+		for (Transaction transaction : transactions) {
+			int transactionDay=EpochDays.ofEpochMilli(transaction.getCreatedAt().getTime());
+			int index=timeline.indexForTransaction(transactionDay);
+			if (index < 0) {
+				continue;
+			}
+			
+			BigDecimal rate=timeline.getRate(index);
+			LocalDate effectiveDate=LocalDate.ofEpochDay(timeline.getEpochDay(index));
+			
+			TransactionConversion conversion=storedMap.get(transaction.getTransactionId());
+			if (conversion != null && conversion.getEffectiveDate().equals(effectiveDate) && conversion.getExchangeRate().compareTo(rate) == 0) {
+				continue;
+			}
+			if (conversion == null) {
+				conversion=TransactionConversion.builder()
+						.transactionId(transaction.getTransactionId())
+						.currency(currency)
+						.build();
+			}
+			conversion.setTransactionDate(LocalDate.ofEpochDay(transactionDay));
+			conversion.setExchangeRate(rate);
+			conversion.setEffectiveDate(effectiveDate);
+			conversion.setAmount(transaction.getAmount().multiply(rate).setScale(2,RoundingMode.HALF_UP));
+			changedList.add(conversion);
+		}
+		
+		if (!changedList.isEmpty()) {
+			repository.saveAll(changedList);
+			log.debug("stored " + changedList.size() + " conversions to " + currency);
+		}
+	}
+	
+	private Timestamp startOfDay(LocalDate date) {
+		
+		return Timestamp.from(date.atStartOfDay().toInstant(ZoneOffset.UTC));
+	}
+	
+	private TransactionDTO toDTO(ConvertedTransaction converted) {
+		
+		return TransactionDTO.builder()
+				.transactionId(converted.getTransactionId())
+				.description(converted.getDescription())
+				.amountInUSD(converted.getAmountInUSD())
+				.currency(converted.getCurrency())
+				.exchangeRate(converted.getExchangeRate())
+				.exchangeRateEfferctiveDate(converted.getEffectiveDate().toString())
+				.amount(converted.getAmount())
+				.transactionDate(converted.getTransactionDate().toString()).build();
+	}
+}
@@ -0,0 +1,327 @@
+package com.wex.purchaser.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.fiscalapi.ExchangeRate;
+import com.wex.purchaser.fiscalapi.FiscalApi;
+import com.wex.purchaser.fiscalapi.RateTimeline;
+import com.wex.purchaser.fiscalapi.RateTimelines;
+import com.wex.purchaser.repository.ExchangeRateRepository;
+import com.wex.purchaser.repository.ExchangeRateRepository.StoredDateRange;
+import com.wex.purchaser.repository.ExchangeRateWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Business Layer for exchange rates kept in the local table.
+ * The table is filled incrementally from fiscal API, so conversions survive fiscal API outages.
+ * @author    Ray Cheng
+ */
+@Slf4j
+@Service
+public class ExchangeRateService {
+
+	@Autowired
+	private ExchangeRateRepository repository;
+	
+	@Autowired
+	private ExchangeRateWriter writer;
+	
+	@Autowired
+	private FiscalApi fiscalApi;
+	
+	@Autowired
+	@Qualifier("applicationTaskExecutor")
+	private Executor taskExecutor;
+	
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	
+	//earliest date already fetched per currency, so missing history is not asked again
+	private final Map<String, LocalDate> fetchedFrom=new ConcurrentHashMap<>();
+	
+	   /**
+	   * This method is used to load the exchange rate timelines of the local table. 
+	   * Only the dates newer than the latest stored rate, and the dates before 
+	   * the earliest stored rate when required, are fetched from fiscal API. 
+	   * Each fetched page is stored and added to the timelines as it arrives, 
+	   * the other dates are read from the table. 
+	   * If fiscal API is not available the stored rates are returned.
+	   * @param currencies The currencies for the exchange rate
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return timelines It return the timeline of each currency with the rates effective on or after the date
+	   */
+	public Map<String, RateTimeline> loadTimelines(List<String> currencies, String date) throws ServiceException {
+		
+		LocalDate fromDate=LocalDate.parse(date);
+		
+		Map<String, StoredDateRange> storedRanges=findStoredRanges(currencies);
+		List<RateFetch> fetchList=planFetches(currencies, fromDate, storedRanges);
+		RateTimelines timelines=new RateTimelines(currencies, 0);
+		for (RateFetch fetch : fetchList) {
+			try {
+				//each page is stored when it arrives, rates before a failed page are kept
+				fiscalApi.fetchExchangeRate(fetch.currencies, fetch.from.toString(), fetch.to == null ? null : fetch.to.toString()
+						, page->storePage(fetch, page, timelines));
+			} catch (RuntimeException e) {
+				fetch.error=e;
+			}
+			store(fetch, storedRanges);
+		}
+		
+		return readStored(timelines, currencies, fromDate, fetchList);
+	}
+	
+	   /**
+	   * This method is the non-blocking version of loadTimelines. 
+	   * Table access runs on the task executor, and the missing date ranges are fetched from fiscal API 
+	   * in parallel without holding any thread while waiting for the response. 
+	   * Each page is stored as it arrives, one page at a time.
+	   * @param currencies The currencies for the exchange rate
+	   * @param date This is the earliest date. string and in yyyy-MM-dd format
+	   * @return timelines It return the timeline of each currency with the rates effective on or after the date
+	   */
+	public CompletableFuture<Map<String, RateTimeline>> loadTimelinesAsync(List<String> currencies, String date) {
+		
+		LocalDate fromDate=LocalDate.parse(date);
+		
+		return AsyncTasks.supply(taskExecutor, ()->findStoredRanges(currencies))
+				.thenCompose(storedRanges->{
+					List<RateFetch> fetchList=planFetches(currencies, fromDate, storedRanges);
+					RateTimelines timelines=new RateTimelines(currencies, 0);
+					PageStore pageStore=new PageStore(timelines);
+					CompletableFuture<?>[] fetches=fetchList.stream()
+							.map(fetch->fiscalApi.fetchExchangeRateAsync(fetch.currencies, fetch.from.toString(), fetch.to == null ? null : fetch.to.toString()
+									, page->pageStore.submit(fetch, page))
+									.handle((totalPages, e)->{
+										if (e != null) {
+											fetch.error=AsyncTasks.unwrap(e);
+										}
+										return fetch;
+									}))
+							.toArray(CompletableFuture<?>[]::new);
+					
+					return CompletableFuture.allOf(fetches)
+							.thenCompose(v->pageStore.stored())
+							.thenCompose(v->AsyncTasks.supply(taskExecutor, ()->{
+								for (RateFetch fetch : fetchList) {
+									store(fetch, storedRanges);
+								}
+								return readStored(timelines, currencies, fromDate, fetchList);
+							}));
+				});
+	}
+	
+	private Map<String, StoredDateRange> findStoredRanges(List<String> currencies) {
+		
+		return repository.findStoredDateRange(currencies).stream()
+				.collect(Collectors.toMap(StoredDateRange::getCurrency, Function.identity()));
+	}
+	
+	   /**
+	   * Add the stored rates outside the fetched date ranges to the timelines after fetching, 
+	   * the rates within them are added page by page. 
+	   * Rates of a currency whose fetch failed are marked stale.
+	   * @param timelines the timelines with the fetched rates
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date
+	   * @param fetchList the fetched date ranges
+	   * @return timelines It return the timeline of each currency
+	   */
+	private Map<String, RateTimeline> readStored(RateTimelines timelines, List<String> currencies, LocalDate fromDate, List<RateFetch> fetchList) throws ServiceException {
+		
+		for (StoredExchangeRate rate : repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(currencies, fromDate)) {
+			if (fetchList.stream().noneMatch(fetch->fetch.covers(rate))) {
+				timelines.add(rate.getCurrency(), rate.getEffectiveDate(), rate.getExchangeRate());
+			}
+		}
+		
+		if (timelines.isEmpty()) {
+			throw new ServiceException("Exchange Rate not found");
+		}
+		
+		fetchList.stream()
+				.filter(fetch->fetch.error != null)
+				.flatMap(fetch->fetch.currencies.stream())
+				.forEach(timelines::markStale);
+		
+		return timelines.build();
+	}
+	
+	   /**
+	   * This method is used to read the exchange rates from the local table only, without calling fiscal API
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date
+	   * @return exchangeRateList It return the stored exchange rates effective on or after the date, may be empty
+	   */
+	public List<ExchangeRate> findStoredRates(List<String> currencies, LocalDate fromDate) {
+		
+		return repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(currencies, fromDate).stream()
+				.map(this::toDTO).collect(Collectors.toList());
+	}
+	
+	   /**
+	   * Find the missing date ranges of the currencies. 
+	   * Currencies missing the same date range are fetched in one call.
+	   * @param currencies The currencies for the exchange rate
+	   * @param fromDate This is the earliest date required
+	   * @param storedRanges the stored date range of each currency
+	   * @return return the date ranges to be fetched from fiscal API
+	   */
+	private List<RateFetch> planFetches(List<String> currencies, LocalDate fromDate, Map<String, StoredDateRange> storedRanges) {
+		
+		//date range (from, to) -> currencies missing it
+		Map<List<LocalDate>, List<String>> fetchList=new LinkedHashMap<>();
+		for (String currency : currencies) {
+			StoredDateRange range=storedRanges.get(currency);
+			if (range == null) {
+				fetchList.computeIfAbsent(dateRange(fromDate, null), k->new ArrayList<>()).add(currency);
+				continue;
+			}
+			
+			fetchList.computeIfAbsent(dateRange(range.getLatest().plusDays(1), null), k->new ArrayList<>()).add(currency);
+			
+			LocalDate fetched=fetchedFrom.getOrDefault(currency, range.getEarliest());
+			if (fromDate.isBefore(fetched)) {
+				fetchList.computeIfAbsent(dateRange(fromDate, range.getEarliest().minusDays(1)), k->new ArrayList<>()).add(currency);
+			}
+		}
+		
+		return fetchList.entrySet().stream()
+				.map(fetch->new RateFetch(fetch.getKey().get(0), fetch.getKey().get(1), fetch.getValue()))
+				.collect(Collectors.toList());
+	}
+	
+	   /**
+	   * Complete one fetched date range, whose pages are already stored. 
+	   * A failed fetch is ignored when all its currencies have stored rates.
+	   * @param fetch the fetched date range
+	   * @param storedRanges the stored date range of each currency
+	   */
+	private void store(RateFetch fetch, Map<String, StoredDateRange> storedRanges) throws ServiceException {
+		
+		if (fetch.error != null) {
+			if (fetch.currencies.stream().anyMatch(c->!storedRanges.containsKey(c))) {
+				log.error("fetch exchange rate failed: " + fetch.error.getMessage());
+				throw new ServiceException("Exchange rate service not available");
+			}
+			log.warn("fetch exchange rate failed, use stored rates: " + fetch.error.getMessage());
+			return;
+		}
+		
+		if (fetch.to != null || !storedRanges.keySet().containsAll(fetch.currencies)) {
+			fetch.currencies.forEach(c->fetchedFrom.merge(c, fetch.from, (a,b)->a.isBefore(b) ? a : b));
+		}
+	}
+	
+	private void storePage(RateFetch fetch, List<ExchangeRate> page, RateTimelines timelines) {
+		
+		if (page.isEmpty()) {
+			return;
+		}
+		//another load may have stored the same dates meanwhile
+		List<StoredExchangeRate> storedList=writer.insertIfAbsent(page.stream().map(this::toEntity).collect(Collectors.toList()));
+		log.info("stored exchange rate: " + storedList.size() + " of " + page.size() + " of " + fetch.currencies);
+		page.forEach(timelines::add);
+		if (!storedList.isEmpty()) {
+			eventPublisher.publishEvent(new ExchangeRatesStoredEvent(storedList));
+		}
+	}
+	
+	private List<LocalDate> dateRange(LocalDate from, LocalDate to) {
+		List<LocalDate> range=new ArrayList<>(2);
+		range.add(from);
+		range.add(to);
+		return range;
+	}
+	
+	private StoredExchangeRate toEntity(ExchangeRate rate) {
+		
+		return StoredExchangeRate.builder()
+				.currency(rate.getCountryCurrencyDesc())
+				.exchangeRate(rate.getExchangeRate())
+				.effectiveDate(LocalDate.parse(rate.getEffectiveDate()))
+				.recordDate(rate.getRecordDate() == null ? null : LocalDate.parse(rate.getRecordDate()))
+				.build();
+	}
+	
+	private ExchangeRate toDTO(StoredExchangeRate rate) {
+		
+		return ExchangeRate.builder()
+				.countryCurrencyDesc(rate.getCurrency())
+				.exchangeRate(rate.getExchangeRate())
+				.effectiveDate(rate.getEffectiveDate().toString())
+				.recordDate(rate.getRecordDate() == null ? null : rate.getRecordDate().toString())
+				.build();
+	}
+	
+	//a date range to be fetched and its result
+	private static class RateFetch {
+		
+		private final LocalDate from;
+		private final LocalDate to;
+		private final List<String> currencies;
+		//set by the HTTP client thread or the page store
+		private volatile Throwable error;
+		//a page was not stored, so the later pages are not stored either to keep the stored dates without gap
+		private boolean storeFailed;
+		
+		RateFetch(LocalDate from, LocalDate to, List<String> currencies) {
+			this.from=from;
+			this.to=to;
+			this.currencies=currencies;
+		}
+		
+		//the stored rate is within the fetched date range, so it is added from the fetched page
+		boolean covers(StoredExchangeRate rate) {
+			return currencies.contains(rate.getCurrency()) && !rate.getEffectiveDate().isBefore(from) 
+					&& (to == null || !rate.getEffectiveDate().isAfter(to));
+		}
+	}
+	
+	//stores the pages of one async load on the task executor, one page at a time in arrival order
+	private class PageStore {
+		
+		private final RateTimelines timelines;
+		private CompletableFuture<Void> stored=CompletableFuture.completedFuture(null);
+		
+		PageStore(RateTimelines timelines) {
+			this.timelines=timelines;
+		}
+		
+		synchronized void submit(RateFetch fetch, List<ExchangeRate> page) {
+			stored=stored.thenRunAsync(()->{
+				if (fetch.storeFailed) {
+					return;
+				}
+				try {
+					storePage(fetch, page, timelines);
+				} catch (RuntimeException e) {
+					log.error("store exchange rate failed: " + e.getMessage());
+					fetch.storeFailed=true;
+					fetch.error=e;
+				}
+			}, taskExecutor);
+		}
+		
+		synchronized CompletableFuture<Void> stored() {
+			return stored;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.wex.purchaser.service;
+
+import java.util.List;
+
+import com.wex.purchaser.entity.StoredExchangeRate;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published after exchange rates fetched from fiscal API or imported from an export file are stored in the local table
+ * @author Ray Cheng
+ */
+@Getter
+@AllArgsConstructor
+public class ExchangeRatesStoredEvent {
+
+	private final List<StoredExchangeRate> rateList;
+}
@@ -0,0 +1,59 @@
+package com.wex.purchaser.service;
+
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.wex.purchaser.config.RateImportProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Import the exchange rates of a local export file at startup, when purchaser.rate-import.file is set.
+ * It runs before the other application runners, so the rate prefetch finds the imported rates 
+ * and only asks fiscal API for newer ones. 
+ * With purchaser.rate-import.exit a failed import does not stop the startup, 
+ * it is reported as exit code 1 when PurchaserApplication exits after starting.
+ * @author Ray Cheng
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "purchaser.rate-import", name = "file")
+public class RateImportRunner implements ApplicationRunner, ExitCodeGenerator {
+	
+	@Autowired
+	private RateImportService importService;
+	
+	@Autowired
+	private RateImportProperties properties;
+	
+	private volatile int exitCode=0;
+	
+	@Override
+	public void run(ApplicationArguments args) throws Exception {
+		
+		try {
+			//the service logs the counts and rows per second
+			importService.importFile(Paths.get(properties.getFile()));
+		} catch (Exception e) {
+			log.error("import exchange rate failed: " + e.getMessage());
+			if (!properties.isExit()) {
+				throw e;
+			}
+			exitCode=1;
+		}
+	}
+		
+	@Override
+	public int getExitCode() {
+		return exitCode;
+	}
+}
@@ -0,0 +1,279 @@
+package com.wex.purchaser.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import com.wex.purchaser.config.RateImportProperties;
+import com.wex.purchaser.dto.RateImportResultDTO;
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.fiscalapi.ExchangeRate;
+import com.wex.purchaser.fiscalapi.ExchangeRateReader;
+import com.wex.purchaser.repository.ExchangeRateWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Business Layer for importing the rates_of_exchange dataset from a local export file,
+ * so a node can be seeded without calling fiscal API.
+ * The file is read as a stream and the rates are inserted in JDBC batches,
+ * rates already stored for the same currency and effective date are skipped.
+ * @author    Ray Cheng
+ */
+@Slf4j
+@Service
+public class RateImportService {
+	
+	@Autowired
+	private ExchangeRateWriter writer;
+	
+	@Autowired
+	private RateImportProperties properties;
+	
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	
+	private static final ExchangeRateReader READER=new ExchangeRateReader();
+	
+	private static final String CURRENCY_COLUMN="currency";
+	private static final String RATE_COLUMN="exchange_rate";
+	private static final String EFFECTIVE_DATE_COLUMN="effective_date";
+	private static final String RECORD_DATE_COLUMN="record_date";
+	
+	//column names of the API (country_currency_desc) and of the website download (Country - Currency Description)
+	private static final Map<String, String> CSV_COLUMNS=new HashMap<>();
+	static {
+		CSV_COLUMNS.put("country_currency_desc", CURRENCY_COLUMN);
+		CSV_COLUMNS.put("country_currency_description", CURRENCY_COLUMN);
+		CSV_COLUMNS.put("exchange_rate", RATE_COLUMN);
+		CSV_COLUMNS.put("effective_date", EFFECTIVE_DATE_COLUMN);
+		CSV_COLUMNS.put("record_date", RECORD_DATE_COLUMN);
+	}
+	
+	   /**
+	   * This method is used to import the rates of a CSV or JSON export file into the local table.
+	   * JSON files are in the fiscal API response format, any other file is read as CSV with a header row.
+	   * @param path the export file
+	   * @return result This returns the number of rates read, inserted, skipped and rejected, and the throughput
+	   */
+	public RateImportResultDTO importFile(Path path) throws ServiceException {
+		
+		if (!Files.isReadable(path)) {
+			throw new ServiceException("Import file not found: " + path);
+		}
+		
+		long start=System.nanoTime();
+		RateBatch batch=new RateBatch();
+		try {
+			if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")) {
+				try (InputStream in=Files.newInputStream(path)) {
+					READER.read(in, batch);
+				}
+			} else {
+				try (BufferedReader reader=Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+					readCsv(reader, batch);
+				}
+			}
+			batch.flush();
+		} catch (IOException e) {
+			throw new ServiceException("Import file cannot be read: " + e.getMessage());
+		} finally {
+			//rates inserted before a failure are served as well
+			if (!batch.insertedList.isEmpty()) {
+				eventPublisher.publishEvent(new ExchangeRatesStoredEvent(batch.insertedList));
+			}
+		}
+		
+		long millis=Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		RateImportResultDTO result=RateImportResultDTO.builder()
+				.file(path.toString())
+				.rowCount(batch.rowCount)
+				.insertedCount(batch.insertedList.size())
+				.skippedCount(batch.rowCount - batch.rejectedCount - batch.insertedList.size())
+				.rejectedCount(batch.rejectedCount)
+				.millis(millis)
+				.rowsPerSecond(batch.rowCount * 1000.0 / millis)
+				.build();
+		log.info(String.format("import exchange rate: %s, %d rows, %d inserted, %d skipped, %d rejected in %d ms (%.0f rows/s)"
+				, result.getFile(), result.getRowCount(), result.getInsertedCount(), result.getSkippedCount()
+				, result.getRejectedCount(), result.getMillis(), result.getRowsPerSecond()));
+		return result;
+	}
+	
+	private void readCsv(BufferedReader reader, Consumer<ExchangeRate> rateConsumer) throws IOException, ServiceException {
+		
+		List<String> header=readCsvRecord(reader);
+		if (header == null) {
+			return;
+		}
+		//byte order mark written by spreadsheet tools
+		if (header.get(0).startsWith("\uFEFF")) {
+			header.set(0, header.get(0).substring(1));
+		}
+		
+		//position of each known column in the header
+		Map<String, Integer> columns=new HashMap<>();
+		for (int i=0; i<header.size(); i++) {
+			String column=CSV_COLUMNS.get(header.get(i).toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", ""));
+			if (column != null) {
+				columns.putIfAbsent(column, i);
+			}
+		}
+		for (String column : new String[] {CURRENCY_COLUMN, RATE_COLUMN, EFFECTIVE_DATE_COLUMN}) {
+			if (!columns.containsKey(column)) {
+				throw new ServiceException("Import file has no " + column + " column");
+			}
+		}
+		
+		List<String> values;
+		while ((values=readCsvRecord(reader)) != null) {
+			if (values.size() == 1 && values.get(0).isEmpty()) {
+				continue;
+			}
+			rateConsumer.accept(ExchangeRate.builder()
+					.countryCurrencyDesc(value(values, columns.get(CURRENCY_COLUMN)))
+					.exchangeRate(decimal(value(values, columns.get(RATE_COLUMN))))
+					.effectiveDate(value(values, columns.get(EFFECTIVE_DATE_COLUMN)))
+					.recordDate(value(values, columns.get(RECORD_DATE_COLUMN)))
+					.build());
+		}
+	}
+	
+	   /**
+	   * Read one CSV record, values may be quoted and quotes in a quoted value are doubled. 
+	   * A quoted value may span lines, its line breaks are kept as \n.
+	   * @param reader the file, positioned at the start of a record
+	   * @return values of the record, null at the end of the file
+	   * @throws ServiceException if the file ends within a quoted value
+	   */
+	static List<String> readCsvRecord(BufferedReader reader) throws IOException, ServiceException {
+		
+		String line=reader.readLine();
+		if (line == null) {
+			return null;
+		}
+		
+		List<String> values=new ArrayList<>();
+		StringBuilder value=new StringBuilder();
+		boolean quoted=false;
+		while (true) {
+			for (int i=0; i<line.length(); i++) {
+				char c=line.charAt(i);
+				if (quoted) {
+					if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						value.append('"');
+						i++;
+					} else if (c == '"') {
+						quoted=false;
+					} else {
+						value.append(c);
+					}
+				} else if (c == '"') {
+					quoted=true;
+				} else if (c == ',') {
+					values.add(value.toString().trim());
+					value.setLength(0);
+				} else {
+					value.append(c);
+				}
+			}
+			if (!quoted) {
+				break;
+			}
+			//the quoted value continues on the next line
+			line=reader.readLine();
+			if (line == null) {
+				throw new ServiceException("Import file ends within a quoted value");
+			}
+			value.append('\n');
+		}
+		values.add(value.toString().trim());
+		return values;
+	}
+	
+	private String value(List<String> values, Integer index) {
+		
+		if (index == null || index >= values.size() || values.get(index).isEmpty() || "null".equals(values.get(index))) {
+			return null;
+		}
+		return values.get(index);
+	}
+	
+	private BigDecimal decimal(String value) {
+		
+		try {
+			return value == null ? null : new BigDecimal(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private LocalDate date(String value) {
+		
+		try {
+			return value == null ? null : LocalDate.parse(value);
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+	
+	//collects rates into batches, each batch is inserted in its own transaction
+	private class RateBatch implements Consumer<ExchangeRate> {
+		
+		private final List<StoredExchangeRate> rows=new ArrayList<>(properties.getBatchSize());
+		//published once the file is read, so the cache and the conversion view serve the new rates
+		private final List<StoredExchangeRate> insertedList=new ArrayList<>();
+		private long rowCount;
+		private long rejectedCount;
+		
+		@Override
+		public void accept(ExchangeRate rate) {
+			
+			rowCount++;
+			LocalDate effectiveDate=date(rate.getEffectiveDate());
+			if (rate.getCountryCurrencyDesc() == null || rate.getExchangeRate() == null || effectiveDate == null) {
+				rejectedCount++;
+				log.warn("import exchange rate rejected: row " + rowCount);
+				return;
+			}
+			
+			rows.add(StoredExchangeRate.builder()
+					.currency(rate.getCountryCurrencyDesc())
+					.exchangeRate(rate.getExchangeRate())
+					.effectiveDate(effectiveDate)
+					.recordDate(date(rate.getRecordDate()))
+					.build());
+			if (rows.size() >= properties.getBatchSize()) {
+				flush();
+			}
+		}
+		
+		void flush() {
+			
+			if (rows.isEmpty()) {
+				return;
+			}
+			//rates already stored are skipped, so an import can be run again
+			insertedList.addAll(writer.insertIfAbsent(rows));
+			rows.clear();
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package com.wex.purchaser.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import com.wex.purchaser.entity.Transaction;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of the transactions accepted in write-behind mode and not yet stored into DB.
+ * The journal is a sequence of segment files, the file name followed by the segment number. 
+ * A new segment is started once the current one reaches the segment size. 
+ * The records of each segment are counted until they are released as stored: 
+ * a released segment is then deleted, or emptied when it is the current one, 
+ * so the journal stays small under sustained load.
+ * <pre>
+ * record: length, transaction id, created at (epoch millis), amount (scale, length + unscaled bytes), 
+ *         description (modified UTF-8), CRC32 of the bytes after the length
+ * </pre>
+ * A record cut short or not matching its checksum ends its segment, as left by a crash during an append.
+ * @author Ray Cheng
+ */
+@Slf4j
+public final class TransactionJournal implements Closeable {
+	
+	private final Path file;
+	
+	private final long segmentSize;
+	
+	//records not yet released per segment, segments left by an earlier run are not counted
+	private final Map<Long, Integer> pendingCounts=new TreeMap<>();
+	
+	//segments left by an earlier run, read by recover and deleted by clear
+	private final List<Path> recoveredSegments=new ArrayList<>();
+	
+	private long segment;
+	
+	//opened by the first append
+	private FileChannel channel;
+	
+	public TransactionJournal(Path file, long segmentSize) throws IOException {
+		
+		Path directory=file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		this.file=file;
+		this.segmentSize=segmentSize;
+		
+		//the single file of earlier versions comes first
+		TreeMap<Long, Path> segments=new TreeMap<>();
+		if (Files.exists(file)) {
+			segments.put(0L, file);
+		}
+		Pattern name=Pattern.compile(Pattern.quote(file.getFileName().toString()) + "\\.(\\d+)");
+		try (DirectoryStream<Path> files=Files.newDirectoryStream(directory)) {
+			for (Path path : files) {
+				Matcher matcher=name.matcher(path.getFileName().toString());
+				if (matcher.matches()) {
+					segments.put(Long.parseLong(matcher.group(1)), path);
+				}
+			}
+		}
+		recoveredSegments.addAll(segments.values());
+		segment=segments.isEmpty() ? 0 : segments.lastKey();
+	}
+	
+	   /**
+	   * Append the transaction at the end of the current segment, without forcing it to disk
+	   * @param transaction transaction with its id assigned
+	   * @return segment This returns the segment of the record, to be released once the transaction is stored
+	   */
+	public synchronized long append(Transaction transaction) throws IOException {
+		
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream(96);
+		DataOutputStream out=new DataOutputStream(bytes);
+		out.writeInt(0);
+		out.writeLong(transaction.getTransactionId());
+		out.writeLong(transaction.getCreatedAt().getTime());
+		byte[] unscaled=transaction.getAmount().unscaledValue().toByteArray();
+		out.writeByte(transaction.getAmount().scale());
+		out.writeByte(unscaled.length);
+		out.write(unscaled);
+		out.writeUTF(transaction.getDescription());
+		
+		CRC32 crc=new CRC32();
+		crc.update(bytes.toByteArray(), 4, bytes.size() - 4);
+		out.writeInt((int) crc.getValue());
+		
+		if (channel == null || channel.size() >= segmentSize) {
+			rotate();
+		}
+		
+		ByteBuffer buffer=ByteBuffer.wrap(bytes.toByteArray());
+		buffer.putInt(0, buffer.remaining() - 4);
+		long start=channel.position();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			//a partial record would hide the records appended after it
+			try {
+				channel.truncate(start);
+			} catch (IOException truncateError) {
+				closeSegment();
+			}
+			throw e;
+		}
+		pendingCounts.merge(segment, 1, Integer::sum);
+		return segment;
+	}
+	
+	//the records of the current segment are forced before the next segment is started
+	private void rotate() throws IOException {
+		
+		if (channel != null) {
+			channel.force(false);
+			closeSegment();
+		}
+		segment++;
+		channel=FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+	}
+	
+	private void closeSegment() throws IOException {
+		
+		FileChannel closed=channel;
+		channel=null;
+		closed.close();
+		if (pendingCounts.getOrDefault(segment, 0) == 0) {
+			Files.deleteIfExists(segmentFile(segment));
+		}
+	}
+	
+	private Path segmentFile(long segment) {
+		return file.resolveSibling(file.getFileName() + "." + segment);
+	}
+	
+	   /**
+	   * Force the appended transactions to disk. 
+	   * Transactions of an earlier segment were forced when the next segment was started.
+	   */
+	public void force() throws IOException {
+		
+		FileChannel current;
+		synchronized (this) {
+			current=channel;
+		}
+		if (current == null) {
+			return;
+		}
+		try {
+			current.force(false);
+		} catch (ClosedChannelException e) {
+			synchronized (this) {
+				if (channel == current) {
+					throw e;
+				}
+			}
+		}
+	}
+	
+	   /**
+	   * Release stored transactions. A segment whose transactions are all released is deleted, 
+	   * or emptied when appends still go to it.
+	   * @param segment segment returned by append
+	   * @param count transactions of the segment stored
+	   */
+	public synchronized void release(long segment, int count) throws IOException {
+		
+		int pending=pendingCounts.merge(segment, -count, Integer::sum);
+		if (pending > 0) {
+			return;
+		}
+		pendingCounts.remove(segment);
+		if (segment == this.segment && channel != null) {
+			channel.truncate(0);
+			channel.position(0);
+		} else {
+			Files.deleteIfExists(segmentFile(segment));
+		}
+	}
+	
+	   /**
+	   * Read the transactions left by an earlier run in append order, up to the first incomplete 
+	   * or corrupted record of each segment. Such a record is cut off.
+	   * @return transactions This returns the journaled transactions
+	   */
+	public synchronized List<Transaction> recover() throws IOException {
+		
+		List<Transaction> transactions=new ArrayList<>();
+		for (Path path : recoveredSegments) {
+			recover(path, transactions);
+		}
+		return transactions;
+	}
+	
+	private void recover(Path path, List<Transaction> transactions) throws IOException {
+		
+		long length=0;
+		long size=Files.size(path);
+		try (DataInputStream in=new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			while (length + 4 < size) {
+				int recordSize=in.readInt();
+				if (recordSize < 4 || recordSize > size - length - 4) {
+					break;
+				}
+				byte[] record=new byte[recordSize];
+				in.readFully(record);
+				
+				CRC32 crc=new CRC32();
+				crc.update(record, 0, record.length - 4);
+				if ((int) crc.getValue() != ByteBuffer.wrap(record).getInt(record.length - 4)) {
+					break;
+				}
+				transactions.add(read(record));
+				length+=4 + recordSize;
+			}
+		}
+		
+		if (length < size) {
+			log.warn("transaction journal " + path.getFileName() + " ends with an incomplete record at " + length + ", cut off");
+			try (FileChannel segmentChannel=FileChannel.open(path, StandardOpenOption.WRITE)) {
+				segmentChannel.truncate(length);
+				segmentChannel.force(true);
+			}
+		}
+	}
+	
+	private Transaction read(byte[] record) throws IOException {
+		
+		DataInputStream in=new DataInputStream(new ByteArrayInputStream(record));
+		long transactionId=in.readLong();
+		long createdAt=in.readLong();
+		int scale=in.readByte();
+		byte[] unscaled=new byte[in.readUnsignedByte()];
+		in.readFully(unscaled);
+		return Transaction.builder()
+				.transactionId(transactionId)
+				.createdAt(new Timestamp(createdAt))
+				.amount(new BigDecimal(new BigInteger(unscaled), scale))
+				.description(in.readUTF())
+				.build();
+	}
+	
+	   /**
+	   * Delete the segments left by an earlier run once their transactions are stored
+	   */
+	public synchronized void clear() throws IOException {
+		
+		for (Path path : recoveredSegments) {
+			Files.deleteIfExists(path);
+		}
+		recoveredSegments.clear();
+	}
+	
+	   /**
+	   * Size of all segments on disk
+	   * @return size This returns the bytes of the journal
+	   */
+	public synchronized long size() throws IOException {
+		
+		Set<Path> paths=new LinkedHashSet<>(recoveredSegments);
+		pendingCounts.keySet().forEach(pending->paths.add(segmentFile(pending)));
+		if (channel != null) {
+			paths.add(segmentFile(segment));
+		}
+		
+		long size=0;
+		for (Path path : paths) {
+			size+=Files.exists(path) ? Files.size(path) : 0;
+		}
+		return size;
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		
+		if (channel != null) {
+			channel.close();
+			channel=null;
+		}
+	}
+}
@@ -2,26 +2,59 @@ package com.wex.purchaser.service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.wex.purchaser.dto.CreateTransactionResultDTO;
 import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.dto.TransactionPageDTO;
+import com.wex.purchaser.dto.TransactionStatisticsDTO;
 import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.entity.TransactionDailyTotal;
 import com.wex.purchaser.exception.ServiceException;
-import com.wex.purchaser.fiscalapi.ExchangeRate;
-import com.wex.purchaser.fiscalapi.FiscalApi;
+import com.wex.purchaser.fiscalapi.EpochDays;
+import com.wex.purchaser.fiscalapi.ExchangeRateCache;
+import com.wex.purchaser.fiscalapi.RateTimeline;
 import com.wex.purchaser.message.CreateTransactionRequest;
+import com.wex.purchaser.message.ListTransactionRequest;
 import com.wex.purchaser.repository.TransactionRepository;
+import com.wex.purchaser.repository.TransactionSpecifications;
+import com.wex.purchaser.service.AsyncTasks.ServiceSupplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,18 +70,156 @@ public class TransactionService {
 	private TransactionRepository repository;
 	
 	@Autowired
-	private FiscalApi fiscalApi;
+	private ExchangeRateCache rateCache;
+	
+	@Autowired
+	private ConversionViewService conversionView;
+	
+	@Autowired
+	private TransactionStatisticsService statistics;
+	
+	@Autowired
+	private TransactionWriteBehind writeBehind;
+	
+	@Autowired
+	@Qualifier("applicationTaskExecutor")
+	private Executor taskExecutor;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	private static final String OUTCOME_SUCCESS="SUCCESS";
+	private static final String OUTCOME_REJECTED="REJECTED";
+	private static final String OUTCOME_ERROR="ERROR";
 
-	private SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+	private static final int DEFAULT_PAGE_SIZE=100;
+	private static final int MAX_PAGE_SIZE=1000;
+	
+	private static final int MAX_BATCH_SIZE=10000;
+	
+	private static final int MAX_CURRENCIES=20;
+	
+	private static final Sort CREATED_SORT=Sort.by("createdAt", "transactionId");
+	
+	private static final String PERIOD_DAY="DAY";
+	private static final String PERIOD_MONTH="MONTH";
+	
+	//order of the latest transaction query, created_at then transaction_id
+	private static final Comparator<Transaction> CREATED_ORDER=Comparator.comparing(Transaction::getCreatedAt).thenComparingLong(Transaction::getTransactionId);
+	
+	//latest transaction, replaced by each newer transaction created here and read again from DB after LATEST_TTL_MILLIS, 
+	//as other instances sharing the DB create transactions too
+	private final AtomicReference<Transaction> latestTransaction=new AtomicReference<>();
+	
+	private volatile long latestReadAt;
+	
+	private static final long LATEST_TTL_MILLIS=1000;
+	
+	private Clock clock=Clock.systemUTC();
 	
 	   /**
 	   * This method is used to create purchase transaction 
-	   * and store into DB
+	   * and store into DB. In write-behind mode the transaction is journaled and 
+	   * returned with its id at once, and stored by the writer shortly after.
 	   * @param CreateTransactionRequest This field contain description and amount for the new transaction
 	   * @return Transaction This returns saved transaction
 	   */
 	public Transaction createTransaction(CreateTransactionRequest request) throws ServiceException {
 		
+		return timed("purchaser.transaction.create", ()->{
+			validate(request);
+			
+			if (writeBehind.isEnabled()) {
+				//daily totals and conversions follow once stored, see onStored
+				Transaction transaction=writeBehind.submit(toEntity(request));
+				offerLatest(transaction);
+				return transaction;
+			}
+			
+			Transaction transaction=repository.save(toEntity(request));
+			offerLatest(transaction);
+			addToTotals(Collections.singletonList(transaction));
+			addToConversionView(Collections.singletonList(transaction));
+			
+			return transaction;
+		});
+	}
+	
+	   /**
+	   * Add the transactions stored by the write-behind writer to the daily totals and conversions
+	   * @param event stored transactions
+	   */
+	@EventListener
+	public void onStored(TransactionsStoredEvent event) {
+		
+		addToTotals(event.getTransactions());
+		addToConversionView(event.getTransactions());
+	}
+	
+	   /**
+	   * This method is used to create purchase transactions in bulk.
+	   * Each transaction is validated on its own; valid transactions are stored 
+	   * together with JDBC batching and invalid ones are reported back with the error.
+	   * @param requestList This field contain description and amount for each new transaction
+	   * @return resultList This returns the id or the error of each transaction, in request order
+	   */
+	@Transactional
+	public List<CreateTransactionResultDTO> createTransactions(List<CreateTransactionRequest> requestList) throws ServiceException {
+		
+		return timed("purchaser.transaction.create.batch", ()->{
+			if (requestList == null || requestList.isEmpty()) {
+				throw new ServiceException("Transaction list must not be empty");
+			}
+			
+			if (requestList.size() > MAX_BATCH_SIZE) {
+				throw new ServiceException("Too many transactions in one request ( max. " + MAX_BATCH_SIZE + " )");
+			}
+			
+			List<CreateTransactionResultDTO> resultList=new ArrayList<>(requestList.size());
+			List<Transaction> transactions=new ArrayList<>(requestList.size());
+			List<CreateTransactionResultDTO> savedResultList=new ArrayList<>(requestList.size());
+			
+			for (int i=0; i<requestList.size(); i++) {
+				CreateTransactionResultDTO result=CreateTransactionResultDTO.builder().index(i).build();
+				resultList.add(result);
+				try {
+					validate(requestList.get(i));
+					transactions.add(toEntity(requestList.get(i)));
+					savedResultList.add(result);
+				} catch (ServiceException e) {
+					result.setErrorMessage(e.getMessage());
+				}
+			}
+			
+			List<Transaction> savedList=repository.saveAll(transactions);
+			repository.flush();
+			//the conversion view is written in its own DB transaction once the batch is committed
+			afterCommit(()->{
+				savedList.stream().max(CREATED_ORDER).ifPresent(this::offerLatest);
+				addToTotals(savedList);
+				addToConversionView(savedList);
+			});
+			
+			for (int i=0; i<savedList.size(); i++) {
+				savedResultList.get(i).setTransactionId(savedList.get(i).getTransactionId());
+			}
+			
+			log.info("create transactions: " + savedList.size() + " saved, " + (requestList.size() - savedList.size()) + " rejected");
+			
+			return resultList;
+		});
+	}
+	
+	   /**
+	   * Function for validate the create transaction request
+	   * @param request create transaction request
+	   */
+	private void validate(CreateTransactionRequest request) throws ServiceException {
+		
+		if (request == null ) {
+			throw new ServiceException("Transaction must not be null");
+		}
+		
 		if (request.getDescription() == null ) {
 			throw new ServiceException("Description must not be null");
 		}
@@ -68,15 +239,79 @@ public class TransactionService {
 		if (request.getDescription().length() > 50 ) {
 			throw new ServiceException("Description is too longht ( max. 50 )");
 		}
+	}
+	
+	   /**
+	   * Function for get the latest transaction, read from DB when not known or read more than LATEST_TTL_MILLIS ago
+	   * @return transaction This returns the latest transaction, or null when there is no transaction
+	   */
+	private Transaction findLatestTransaction() {
+		
+		long now=clock.millis();
+		Transaction latest=latestTransaction.get();
+		if (latest != null && now - latestReadAt < LATEST_TTL_MILLIS) {
+			return latest;
+		}
+		
+		//a transaction created here and not yet stored in write-behind mode stays the latest
+		Transaction stored=repository.findFirstByOrderByCreatedAtDescTransactionIdDesc();
+		latestReadAt=now;
+		return stored == null ? latest : offerLatest(stored);
+	}
+	
+	   /**
+	   * Function for keep the transaction as the latest one if it is newer
+	   * @param transaction saved transaction
+	   * @return transaction This returns the latest transaction after the update
+	   */
+	private Transaction offerLatest(Transaction transaction) {
+		
+		return latestTransaction.accumulateAndGet(transaction, 
+				(current, offered)->current == null || CREATED_ORDER.compare(offered, current) > 0 ? offered : current);
+	}
+	
+	//transactions saved in a DB transaction become the latest and are counted only once committed
+	private void afterCommit(Runnable task) {
+		
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			task.run();
+			return;
+		}
+		
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				task.run();
+			}
+		});
+	}
+	
+	private void addToTotals(List<Transaction> transactions) {
 		
-		Transaction transaction=Transaction.builder()
+		try {
+			statistics.onCreated(transactions);
+		} catch (RuntimeException e) {
+			log.warn("add transactions to daily totals failed: " + e.getMessage());
+			statistics.markStale();
+		}
+	}
+	
+	private void addToConversionView(List<Transaction> transactions) {
+		
+		try {
+			conversionView.onCreated(transactions);
+		} catch (RuntimeException e) {
+			log.warn("add transactions to conversion view failed: " + e.getMessage());
+		}
+	}
+	
+	private Transaction toEntity(CreateTransactionRequest request) {
+		
+		return Transaction.builder()
 				.description(request.getDescription())
 				.amount(request.getAmount())
 				.createdAt(new Timestamp(System.currentTimeMillis()))
 				.build();
-		
-		return repository.save(transaction);
-		
 	}
 	
 	   /**
@@ -86,126 +321,533 @@ public class TransactionService {
 	   */
 	public TransactionDTO enquireLastTransaction(String currency) throws ServiceException {
 		
-		if (currency == null ) {
-			throw new ServiceException("Currency must not be null");
+		return enquireLastTransactions(currency).get(0);
+	}
+	
+	   /**
+	   * This method is used to retrieve last purchase transaction in one or more currencies. 
+	   * @param currency This is the currency user require, multiple currencies are separated by comma
+	   * @return transactionList This returns the transaction converted to each required currency, in request order
+	   */
+	public List<TransactionDTO> enquireLastTransactions(String currency) throws ServiceException {
+		
+		return timed("purchaser.transaction.enquire", ()->{
+			List<String> currencies=parseCurrencies(currency);
+			
+			Transaction transaction=findLatestTransaction();
+			
+			if (transaction == null ) {
+				throw new ServiceException("No transaction record found");
+			}
+			
+			Map<String, RateTimeline> timelines=getTimelines(currencies, transaction.getCreatedAt());
+			
+			return convert(Collections.singletonList(transaction), currencies, timelines);
+		});
+	}
+	
+	   /**
+	   * This method is used to list all purchase transactions in DB. 
+	   * When more than one currency is required, each transaction is converted to every currency 
+	   * from one read of the table and one exchange rate query.
+	   * Currencies of the conversion view are read from the stored conversions when they are complete.
+	   * @param currency This is the currency user require, multiple currencies are separated by comma
+	   * @return transactionList This returns transaction list with the amount in required currency
+	   */
+	public List<TransactionDTO> listTransaction(String currency) throws ServiceException {
+		
+		return timed("purchaser.transaction.list", ()->{
+			List<String> currencies=parseCurrencies(currency);
+			
+			//most used currencies are stored converted
+			Optional<List<TransactionDTO>> convertedList=conversionView.listConverted(currencies);
+			if (convertedList.isPresent()) {
+				return convertedList.get();
+			}
+			
+			List<Transaction> transactions=repository.findAll();
+			
+			if (transactions.isEmpty()) {
+				return new ArrayList<>();
+			}
+			
+			Timestamp earliestTimestamp=transactions.stream().map(Transaction::getCreatedAt).min(Comparator.naturalOrder()).get();
+			Map<String, RateTimeline> timelines=getTimelines(currencies, earliestTimestamp);
+			
+			return convert(transactions, currencies, timelines);
+		});
+	}
+	
+	   /**
+	   * This method is used to list purchase transactions filtered by date range, amount range and description prefix.
+	   * Filters are applied in DB and exchange rates are fetched for the filtered transactions only,
+	   * from 6 months before the earliest of them. Without any filter it is the same as listing all transactions.
+	   * @param request This contain the currency user require and the optional filters
+	   * @return transactionList This returns matched transactions ordered by created time with the amount in required currency
+	   */
+	public List<TransactionDTO> listTransactionFiltered(ListTransactionRequest request) throws ServiceException {
+		
+		if (request == null ) {
+			throw new ServiceException("Request must not be null");
 		}
 		
-		Transaction transaction=repository.findFirstByOrderByCreatedAt();
+		if (!hasFilter(request)) {
+			return listTransaction(request.getCurrency());
+		}
 		
-		if (transaction == null ) {
-			throw new ServiceException("No transaction record found");
+		return timed("purchaser.transaction.list.filtered", ()->{
+			List<String> currencies=parseCurrencies(request.getCurrency());
+			Specification<Transaction> filter=toSpecification(request);
+			
+			List<Transaction> transactions=repository.findAll(filter, CREATED_SORT);
+			
+			if (transactions.isEmpty()) {
+				return new ArrayList<>();
+			}
+			
+			//ordered by created time, so first one is the earliest
+			Map<String, RateTimeline> timelines=getTimelines(currencies, transactions.get(0).getCreatedAt());
+			
+			return convert(transactions, currencies, timelines);
+		});
+	}
+	
+	private boolean hasFilter(ListTransactionRequest request) {
+		
+		return request.getFromDate() != null || request.getToDate() != null
+				|| request.getMinAmount() != null || request.getMaxAmount() != null
+				|| (request.getDescription() != null && !request.getDescription().isEmpty());
+	}
+	
+	   /**
+	   * Function for validate the filters and build the DB predicates
+	   * @param request list transaction request
+	   * @return return the predicates of all given filters
+	   */
+	private Specification<Transaction> toSpecification(ListTransactionRequest request) throws ServiceException {
+		
+		LocalDate fromDate=parseDate(request.getFromDate(), "fromDate");
+		LocalDate toDate=parseDate(request.getToDate(), "toDate");
+		
+		if (fromDate != null && toDate != null && fromDate.isAfter(toDate)) {
+			throw new ServiceException("fromDate should not be after toDate");
 		}
 		
-		ZonedDateTime zonedDateTime = transaction.getCreatedAt().toInstant().atZone(ZoneId.of("UTC"));
-		Timestamp sixMonthBefore = Timestamp.from(zonedDateTime.minus(6, ChronoUnit.MONTHS).toInstant());
-		String sixMonthBeforeDate=df.format( new Date(sixMonthBefore.getTime()));
+		if (request.getMinAmount() != null && request.getMaxAmount() != null 
+				&& request.getMinAmount().compareTo(request.getMaxAmount()) > 0) {
+			throw new ServiceException("minAmount should not be greater than maxAmount");
+		}
 		
-		List<ExchangeRate> rateList=fiscalApi.parseExchangeRate(currency, sixMonthBeforeDate);
+		if (request.getDescription() != null && request.getDescription().length() > 50 ) {
+			throw new ServiceException("Description is too longht ( max. 50 )");
+		}
 		
-		if (rateList == null || rateList.size()== 0 ) {
-			throw new ServiceException("Exchange rate not found");
+		Specification<Transaction> filter=Specification.where(null);
+		if (fromDate != null) {
+			filter=filter.and(TransactionSpecifications.createdFrom(startOfDay(fromDate)));
+		}
+		if (toDate != null) {
+			filter=filter.and(TransactionSpecifications.createdBefore(startOfDay(toDate.plusDays(1))));
+		}
+		if (request.getMinAmount() != null) {
+			filter=filter.and(TransactionSpecifications.amountAtLeast(request.getMinAmount()));
+		}
+		if (request.getMaxAmount() != null) {
+			filter=filter.and(TransactionSpecifications.amountAtMost(request.getMaxAmount()));
+		}
+		if (request.getDescription() != null && !request.getDescription().isEmpty()) {
+			filter=filter.and(TransactionSpecifications.descriptionStartsWith(request.getDescription()));
+		}
+		return filter;
+	}
+	
+	private LocalDate parseDate(String date, String name) throws ServiceException {
+		
+		if (date == null || date.isEmpty()) {
+			return null;
 		}
 		
 		try {
-			return mapToDTO(transaction,rateList);
-		}catch( NoSuchElementException e) {
-			throw new ServiceException("Exchange rate not found");
+			return LocalDate.parse(date);
+		} catch (DateTimeParseException e) {
+			throw new ServiceException("Invalid " + name + ", expected yyyy-MM-dd");
 		}
 	}
 	
+	//transaction dates are in UTC
+	private Timestamp startOfDay(LocalDate date) {
+		
+		return Timestamp.from(date.atStartOfDay().toInstant(ZoneOffset.UTC));
+	}
+	
 	   /**
-	   * This method is used to list all purchase transactions in DB. 
-	   * @param currency This is the currency user require
+	   * This method is used to sum up purchase transactions by day or month in the required currencies.
+	   * Totals are read from the daily totals table, each day is converted with the exchange rate of that day
+	   * (latest within 6 months before), so the cost depends on the number of days and not of transactions.
+	   * @param currency This is the currency user require, multiple currencies are separated by comma
+	   * @param period DAY or MONTH, default DAY
+	   * @param fromDate first day in yyyy-MM-dd, null for no limit
+	   * @param toDate last day in yyyy-MM-dd, null for no limit
+	   * @return statisticsList This returns count, amounts and average of each period, each period followed by its other currencies
+	   */
+	public List<TransactionStatisticsDTO> getStatistics(String currency, String period, String fromDate, String toDate) throws ServiceException {
+		
+		return timed("purchaser.transaction.statistics", ()->{
+			List<String> currencies=parseCurrencies(currency);
+			
+			String periodType=period == null || period.isEmpty() ? PERIOD_DAY : period.toUpperCase();
+			if (!PERIOD_DAY.equals(periodType) && !PERIOD_MONTH.equals(periodType)) {
+				throw new ServiceException("Period should be " + PERIOD_DAY + " or " + PERIOD_MONTH);
+			}
+			
+			LocalDate from=parseDate(fromDate, "fromDate");
+			LocalDate to=parseDate(toDate, "toDate");
+			if (from != null && to != null && from.isAfter(to)) {
+				throw new ServiceException("fromDate should not be after toDate");
+			}
+			
+			List<TransactionDailyTotal> totals=statistics.findDailyTotals(from, to);
+			if (totals.isEmpty()) {
+				return new ArrayList<>();
+			}
+			
+			//totals are in date order, so first one is the earliest
+			Map<String, RateTimeline> timelines=getTimelines(currencies, startOfDay(totals.get(0).getTransactionDate()));
+			
+			//sum of each period and currency, in period then request order
+			Map<String, TransactionStatisticsDTO> statisticsMap=new LinkedHashMap<>();
+			for (TransactionDailyTotal total : totals) {
+				String periodKey=PERIOD_DAY.equals(periodType) ? total.getTransactionDate().toString() : total.getTransactionDate().toString().substring(0, 7);
+				int day=(int) total.getTransactionDate().toEpochDay();
+				
+				for (String requiredCurrency : currencies) {
+					RateTimeline timeline=timelines.get(requiredCurrency);
+					int index=timeline.indexForTransaction(day);
+					if (index < 0) {
+						throw new ServiceException("Exchange rate not found");
+					}
+					
+					TransactionStatisticsDTO sum=statisticsMap.computeIfAbsent(periodKey + "|" + requiredCurrency, k->TransactionStatisticsDTO.builder()
+							.period(periodKey)
+							.currency(requiredCurrency)
+							.amountInUSD(BigDecimal.ZERO)
+							.amount(BigDecimal.ZERO)
+							.build());
+					sum.setTransactionCount(sum.getTransactionCount() + total.getTransactionCount());
+					sum.setAmountInUSD(sum.getAmountInUSD().add(total.getAmount()));
+					sum.setAmount(sum.getAmount().add(total.getAmount().multiply(timeline.getRate(index)).setScale(2,RoundingMode.HALF_UP)));
+				}
+			}
+			
+			List<TransactionStatisticsDTO> statisticsList=new ArrayList<>(statisticsMap.values());
+			for (TransactionStatisticsDTO sum : statisticsList) {
+				sum.setAverageAmount(sum.getAmount().divide(BigDecimal.valueOf(sum.getTransactionCount()), 2, RoundingMode.HALF_UP));
+			}
+			return statisticsList;
+		});
+	}
+	
+	   /**
+	   * This method is the non-blocking version of enquireLastTransactions. 
+	   * The transaction is read on the task executor and no thread is held while exchange rates are fetched.
+	   * @param currency This is the currency user require, multiple currencies are separated by comma
+	   * @return transactionList This returns the transaction converted to each required currency, in request order
+	   */
+	public CompletableFuture<List<TransactionDTO>> enquireLastTransactionsAsync(String currency) {
+		
+		return timedAsync("purchaser.transaction.enquire", ()->{
+			List<String> currencies;
+			try {
+				currencies=parseCurrencies(currency);
+			} catch (ServiceException e) {
+				return AsyncTasks.failed(e);
+			}
+			
+			return AsyncTasks.supply(taskExecutor, ()->{
+				Transaction transaction=findLatestTransaction();
+				if (transaction == null ) {
+					throw new ServiceException("No transaction record found");
+				}
+				return Collections.singletonList(transaction);
+			}).thenCompose(transactions->convertAsync(transactions, currencies, transactions.get(0).getCreatedAt()));
+		});
+	}
+	
+	   /**
+	   * This method is the non-blocking version of listTransaction. 
+	   * The table is read on the task executor and no thread is held while exchange rates are fetched.
+	   * @param currency This is the currency user require, multiple currencies are separated by comma
 	   * @return transactionList This returns transaction list with the amount in required currency
 	   */
-	public List<TransactionDTO> listTransaction(String currency) throws ServiceException {
+	public CompletableFuture<List<TransactionDTO>> listTransactionAsync(String currency) {
+		
+		return timedAsync("purchaser.transaction.list", ()->{
+			List<String> currencies;
+			try {
+				currencies=parseCurrencies(currency);
+			} catch (ServiceException e) {
+				return AsyncTasks.failed(e);
+			}
+			
+			return AsyncTasks.supply(taskExecutor, ()->conversionView.listConverted(currencies)).thenCompose(convertedList->{
+				if (convertedList.isPresent()) {
+					return CompletableFuture.completedFuture(convertedList.get());
+				}
+				return AsyncTasks.supply(taskExecutor, ()->repository.findAll()).thenCompose(transactions->{
+					if (transactions.isEmpty()) {
+						return CompletableFuture.completedFuture(new ArrayList<>());
+					}
+					Timestamp earliestTimestamp=transactions.stream().map(Transaction::getCreatedAt).min(Comparator.naturalOrder()).get();
+					return convertAsync(transactions, currencies, earliestTimestamp);
+				});
+			});
+		});
+	}
+	
+	   /**
+	   * Function for get the exchange rate timelines without blocking, then convert the transactions on the task executor
+	   * @param transactions Transaction Entities from DB
+	   * @param currencies required currencies
+	   * @param earliestTimestamp created time of the earliest transaction
+	   * @return return transaction list, each transaction followed by its other currencies
+	   */
+	private CompletableFuture<List<TransactionDTO>> convertAsync(List<Transaction> transactions, List<String> currencies, Timestamp earliestTimestamp) {
+		
+		return rateCache.getTimelinesAsync(currencies, sixMonthBeforeDate(earliestTimestamp))
+				.thenCompose(timelines->AsyncTasks.supply(taskExecutor, ()->{
+					checkTimelines(currencies, timelines);
+					return convert(transactions, currencies, timelines);
+				}));
+	}
+	
+	   /**
+	   * This method is used to list one page of purchase transactions ordered by created time.
+	   * Pages are located by keyset on (createdAt, transactionId) so the cost does not grow with the page number.
+	   * @param currency This is the currency user require, multiple currencies are separated by comma
+	   * @param cursor This is the nextCursor of previous page, null for the first page
+	   * @param size This is the page size, default 100 and max. 1000
+	   * @return page This returns transaction list with the amount in required currency and cursor of next page
+	   */
+	public TransactionPageDTO listTransactionPage(String currency, String cursor, Integer size) throws ServiceException {
+		
+		return timed("purchaser.transaction.list.page", ()->{
+			List<String> currencies=parseCurrencies(currency);
+			
+			int pageSize=size == null ? DEFAULT_PAGE_SIZE : size;
+			if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+				throw new ServiceException("Page size should between 1 and " + MAX_PAGE_SIZE);
+			}
+			
+			Pageable pageable=PageRequest.of(0, pageSize);
+			List<Transaction> transactions;
+			if (cursor == null || cursor.isEmpty()) {
+				transactions=repository.findByOrderByCreatedAtAscTransactionIdAsc(pageable);
+			} else {
+				Transaction last=decodeCursor(cursor);
+				transactions=repository.findPageAfter(last.getCreatedAt(), last.getTransactionId(), pageable);
+			}
+			
+			if (transactions.isEmpty()) {
+				return new TransactionPageDTO(new ArrayList<>(), null);
+			}
+			
+			//page is ordered by created time, so first one is the earliest
+			Map<String, RateTimeline> timelines=getTimelines(currencies, transactions.get(0).getCreatedAt());
+			
+			List<TransactionDTO> transactionList=convert(transactions, currencies, timelines);
+			
+			String nextCursor=transactions.size() < pageSize ? null : encodeCursor(transactions.get(transactions.size() - 1));
+			
+			return new TransactionPageDTO(transactionList, nextCursor);
+		});
+	}
+	
+	   /**
+	   * Function for split the required currencies
+	   * @param currency currencies separated by comma
+	   * @return return distinct currencies in request order
+	   */
+	private List<String> parseCurrencies(String currency) throws ServiceException {
 		
 		if (currency == null ) {
 			throw new ServiceException("Currency must not be null");
 		}
 		
-		List<Transaction> transactions=repository.findAll();
-
-		Timestamp earliestTimestamp=transactions.stream().map(Transaction::getCreatedAt).min(Comparator.naturalOrder()).get();
-		ZonedDateTime zonedDateTime = earliestTimestamp.toInstant().atZone(ZoneId.of("UTC"));
-		Timestamp sixMonthBefore = Timestamp.from(zonedDateTime.minus(6, ChronoUnit.MONTHS).toInstant());
-		String sixMonthBeforeDate=df.format( new Date(sixMonthBefore.getTime()));
+		List<String> currencies=Arrays.stream(currency.split(","))
+				.map(String::trim)
+				.filter(c->!c.isEmpty())
+				.distinct()
+				.collect(Collectors.toList());
 		
-		List<ExchangeRate> rateList=fiscalApi.parseExchangeRate(currency, sixMonthBeforeDate);
+		if (currencies.isEmpty()) {
+			throw new ServiceException("Currency must not be null");
+		}
 		
-		if (rateList == null || rateList.size()== 0 ) {
-			throw new ServiceException("Exchange rate not found");
+		if (currencies.size() > MAX_CURRENCIES) {
+			throw new ServiceException("Too many currencies in one request ( max. " + MAX_CURRENCIES + " )");
 		}
 		
+		return currencies;
+	}
+	
+	   /**
+	   * Function for get exchange rate timelines of all required currencies 
+	   * covering 6 months before the earliest transaction
+	   * @param currencies required currencies
+	   * @param earliestTimestamp created time of the earliest transaction
+	   * @return return timeline of each currency
+	   */
+	private Map<String, RateTimeline> getTimelines(List<String> currencies, Timestamp earliestTimestamp) throws ServiceException {
+		
+		Map<String, RateTimeline> timelines=rateCache.getTimelines(currencies, sixMonthBeforeDate(earliestTimestamp));
+		
+		checkTimelines(currencies, timelines);
+		
+		return timelines;
+	}
+	
+	private String sixMonthBeforeDate(Timestamp earliestTimestamp) {
+		
+		return EpochDays.format(EpochDays.minusMonths(EpochDays.ofEpochMilli(earliestTimestamp.getTime()), 6));
+	}
+	
+	private void checkTimelines(List<String> currencies, Map<String, RateTimeline> timelines) throws ServiceException {
+		
+		for (String currency : currencies) {
+			RateTimeline timeline=timelines == null ? null : timelines.get(currency);
+			if (timeline == null || timeline.isEmpty() ) {
+				throw new ServiceException("Exchange rate not found");
+			}
+		}
+	}
+	
+	   /**
+	   * Function for convert each transaction to every required currency
+	   * @param transactions Transaction Entities from DB
+	   * @param currencies required currencies
+	   * @param timelines exchange rate timeline of each currency
+	   * @return return transaction list, each transaction followed by its other currencies
+	   */
+	private List<TransactionDTO> convert(List<Transaction> transactions, List<String> currencies, Map<String, RateTimeline> timelines) throws ServiceException {
+		
+		List<TransactionDTO> transactionList=new ArrayList<>(transactions.size() * currencies.size());
+		//transactions converted in one request, each currency counted once
+		meterRegistry.summary("purchaser.transaction.convert.size").record(transactions.size() * currencies.size());
 		try {
-			return transactions.stream().map(t->mapToDTO(t,rateList)).collect(Collectors.toList());
+			for (Transaction transaction : transactions) {
+				for (String currency : currencies) {
+					transactionList.add(mapToDTO(transaction, timelines.get(currency)));
+				}
+			}
 		}catch( NoSuchElementException e) {
 			throw new ServiceException("Exchange rate not found");
 		}
+		return transactionList;
 	}
 	
 	   /**
 	   * This is the mapping function for transaction from Entity to DTO.
-	   * It parse the exchange rate which before transaction date and within 6 months for converting new amount in 
+	   * It looks up the latest exchange rate which before transaction date and within 6 months for converting new amount in 
 	   * user required currency.
+	   * Dates are handled as epoch days so nothing is allocated besides the DTO and its date text.
 	   * @param transaction Transaction Entity from DB
-	   * @param rateList exchange rate list for related currency
+	   * @param timeline exchange rate timeline for related currency
 	   * @return transaction This returns transaction with the amount in required currency
 	   */
-	private TransactionDTO mapToDTO( Transaction transaction, List<ExchangeRate> rateList){
+	TransactionDTO mapToDTO( Transaction transaction, RateTimeline timeline){
 		if ( transaction==null) {
 			return null;
 		}
 		
 		//get related exchange rate
 		
-		ZonedDateTime zonedDateTime = transaction.getCreatedAt().toInstant().atZone(ZoneId.of("UTC"));
-		Timestamp newTimestamp = Timestamp.from(zonedDateTime.minus(6, ChronoUnit.MONTHS).toInstant());
-
-		String acceptableStartDate=df.format( new Date(newTimestamp.getTime()));
-		String acceptableEndDate=df.format( new Date(transaction.getCreatedAt().getTime()));
+		int transactionDay=EpochDays.ofEpochMilli(transaction.getCreatedAt().getTime());
 		
-		ExchangeRate rate=rateList.stream().sorted((r1,r2)->-r1.getEffectiveDate().compareTo(r2.getEffectiveDate())).filter(r-> checkExchangeDate(r.getEffectiveDate(), acceptableStartDate, acceptableEndDate )).findFirst().get();
+		int index=timeline.indexForTransaction(transactionDay);
+		if (index < 0) {
+			throw new NoSuchElementException("No exchange rate for " + EpochDays.format(transactionDay));
+		}
+		BigDecimal rate=timeline.getRate(index);
 		
 		return TransactionDTO.builder()
 				.transactionId( transaction.getTransactionId())
 				.description( transaction.getDescription())
 				.amountInUSD( transaction.getAmount())
-				.currency(rate.getCountryCurrencyDesc())
-				.exchangeRate( rate.getExchangeRate())
-				.exchangeRateEfferctiveDate( rate.getEffectiveDate())
-				.amount( transaction.getAmount().multiply(rate.getExchangeRate()).setScale(2,RoundingMode.HALF_UP))
-				.transactionDate(df.format(new Date(transaction.getCreatedAt().getTime()))).build();
+				.currency(timeline.getCurrency())
+				.exchangeRate( rate)
+				.exchangeRateEfferctiveDate( timeline.getEffectiveDate(index))
+				.amount( transaction.getAmount().multiply(rate).setScale(2,RoundingMode.HALF_UP))
+				.transactionDate(EpochDays.format(transactionDay))
+				.staleRate(timeline.isStale()).build();
 		
 	}
 	
 	   /**
-	   * Function for check if date between startDate and endDate
-	   * @param date
-	   * @param startDate start of the range
-	   * @param endDate end of the range
-	   * @return return true if date is within the range
+	   * Function for time a business operation, tagged with its outcome
+	   * @param name name of the timer
+	   * @param task the operation
+	   * @return return result of the operation
 	   */
-	private boolean checkExchangeDate(String date, String startDate, String endDate) {
-		int dateInt=exchangeDateToInt(date);
-		int startDateInt=exchangeDateToInt(startDate);
-		int endDateInt=exchangeDateToInt(endDate);
-		if ( dateInt > startDateInt && dateInt < endDateInt ) {
-			return true;
+	private <T> T timed(String name, ServiceSupplier<T> task) throws ServiceException {
+		
+		Timer.Sample sample=Timer.start(meterRegistry);
+		String outcome=OUTCOME_ERROR;
+		try {
+			T result=task.get();
+			outcome=OUTCOME_SUCCESS;
+			return result;
+		} catch (ServiceException e) {
+			outcome=OUTCOME_REJECTED;
+			throw e;
+		} finally {
+			sample.stop(meterRegistry.timer(name, "outcome", outcome));
 		}
+	}
+	
+	   /**
+	   * Function for time an async business operation until its future completes
+	   * @param name name of the timer
+	   * @param task the operation
+	   * @return return future result of the operation
+	   */
+	private <T> CompletableFuture<T> timedAsync(String name, Supplier<CompletableFuture<T>> task) {
 		
-		return false;
+		Timer.Sample sample=Timer.start(meterRegistry);
+		return task.get().whenComplete((result, e)->{
+			String outcome=e == null ? OUTCOME_SUCCESS 
+					: AsyncTasks.unwrap(e) instanceof ServiceException ? OUTCOME_REJECTED : OUTCOME_ERROR;
+			sample.stop(meterRegistry.timer(name, "outcome", outcome));
+		});
 	}
 	
 	   /**
-	   * Function for convert date from string to integer 
-	   * @param date in string with yyyy-MM-dd format
-	   * @return return yyyyMMdd in integer  
+	   * Function for encode the position of a transaction as page cursor
+	   * @param transaction last transaction of the page
+	   * @return return the cursor in url safe base64
 	   */
-	private int exchangeDateToInt( String date){
+	private String encodeCursor(Transaction transaction) {
 		
-		return Integer.valueOf( date.replaceAll("-", ""));
+		String position=transaction.getCreatedAt().toInstant() + "|" + transaction.getTransactionId();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
 	}
 	
+	   /**
+	   * Function for decode the page cursor
+	   * @param cursor cursor created by encodeCursor
+	   * @return return transaction with createdAt and transactionId of the position
+	   */
+	private Transaction decodeCursor(String cursor) throws ServiceException {
+		
+		try {
+			String position=new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			int separator=position.indexOf('|');
+			return Transaction.builder()
+					.createdAt(Timestamp.from(Instant.parse(position.substring(0, separator))))
+					.transactionId(Long.parseLong(position.substring(separator + 1)))
+					.build();
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+			throw new ServiceException("Invalid cursor");
+		}
+	}
 
 }
@@ -0,0 +1,177 @@
+package com.wex.purchaser.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.entity.TransactionDailyTotal;
+import com.wex.purchaser.fiscalapi.EpochDays;
+import com.wex.purchaser.repository.TransactionDailyTotalRepository;
+import com.wex.purchaser.repository.TransactionRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Business Layer for the daily totals of purchase transactions.
+ * Each created transaction is added to the total of its day, so statistics read one row per day
+ * however many transactions there are. When an update fails, or overlaps a recompute which may
+ * already have counted its transactions, the totals are recomputed from the transactions table before the next read.
+ * @author    Ray Cheng
+ */
+@Slf4j
+@Service
+public class TransactionStatisticsService {
+	
+	@Autowired
+	private TransactionDailyTotalRepository repository;
+	
+	@Autowired
+	private TransactionRepository transactionRepository;
+	
+	//set when the totals may miss or double count transactions
+	private final AtomicBoolean stale=new AtomicBoolean(false);
+	
+	//rebuilds not yet committed or rolled back
+	private final AtomicInteger rebuilding=new AtomicInteger();
+	
+	//when the last rebuild completed, its GROUP BY may have counted any transaction created before
+	private volatile long rebuiltAt;
+	
+	   /**
+	   * This method is used to add committed transactions to the daily totals
+	   * @param transactions saved transactions
+	   */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public void onCreated(List<Transaction> transactions) {
+		
+		boolean rebuildRunning=rebuilding.get() > 0;
+		long createdFrom=Long.MAX_VALUE;
+		Map<LocalDate, TransactionDailyTotal> dayMap=new TreeMap<>();
+		for (Transaction transaction : transactions) {
+			createdFrom=Math.min(createdFrom, transaction.getCreatedAt().getTime());
+			LocalDate day=LocalDate.ofEpochDay(EpochDays.ofEpochMilli(transaction.getCreatedAt().getTime()));
+			TransactionDailyTotal total=dayMap.computeIfAbsent(day, d->TransactionDailyTotal.builder()
+					.transactionDate(d)
+					.amount(BigDecimal.ZERO)
+					.build());
+			total.setTransactionCount(total.getTransactionCount() + 1);
+			total.setAmount(total.getAmount().add(transaction.getAmount()));
+		}
+		
+		for (TransactionDailyTotal total : dayMap.values()) {
+			if (repository.increment(total.getTransactionDate(), total.getTransactionCount(), total.getAmount()) == 0) {
+				repository.insertDay(total.getTransactionDate(), total.getTransactionCount(), total.getAmount());
+			}
+		}
+		
+		//a rebuild from the created time of the transactions until this increment is committed 
+		//may have counted them already or have deleted the increment
+		long from=createdFrom;
+		afterCompletion(committed->{
+			if (rebuildRunning || rebuilding.get() > 0 || rebuiltAt >= from) {
+				log.info("daily totals updated while rebuilt, marked stale");
+				stale.set(true);
+			}
+		});
+	}
+	
+	   /**
+	   * This method is used to mark the daily totals to be recomputed, when new transactions could not be added,
+	   * e.g. another instance inserted the same new day at the same time
+	   */
+	public void markStale() {
+		
+		stale.set(true);
+	}
+	
+	   /**
+	   * This method is used to get the daily totals within the dates
+	   * @param fromDate first day, null for no limit
+	   * @param toDate last day, null for no limit
+	   * @return totalList This returns the totals of the days having transactions, in date order
+	   */
+	@Transactional
+	public List<TransactionDailyTotal> findDailyTotals(LocalDate fromDate, LocalDate toDate) {
+		
+		//set again if the rebuild fails or an increment overlaps it
+		if (stale.getAndSet(false)) {
+			rebuild();
+		}
+		
+		return repository.findByTransactionDateBetweenOrderByTransactionDate(
+				fromDate == null ? LocalDate.of(1970, 1, 1) : fromDate,
+				toDate == null ? LocalDate.of(9999, 12, 31) : toDate);
+	}
+	
+	   /**
+	   * Recompute the daily totals at startup when they do not cover all transactions
+	   */
+	@EventListener(ApplicationReadyEvent.class)
+	public void checkOnStartup() {
+		
+		long transactionCount=transactionRepository.count();
+		long totalCount=repository.sumTransactionCount();
+		if (totalCount != transactionCount) {
+			log.info("daily totals cover " + totalCount + " of " + transactionCount + " transactions");
+			stale.set(true);
+		}
+	}
+	
+	   /**
+	   * This method is used to recompute all daily totals from the transactions table with one GROUP BY.
+	   * The totals are marked stale again unless the rebuild is committed.
+	   */
+	@Transactional
+	public synchronized void rebuild() {
+		
+		rebuilding.incrementAndGet();
+		boolean rebuilt=false;
+		try {
+			repository.deleteAllDays();
+			int days=repository.insertFromTransactions();
+			log.info("rebuild daily totals: " + days + " days");
+			rebuilt=true;
+		} finally {
+			boolean succeeded=rebuilt;
+			afterCompletion(committed->{
+				rebuiltAt=System.currentTimeMillis();
+				rebuilding.decrementAndGet();
+				if (!succeeded || !committed) {
+					log.warn("rebuild daily totals not committed, marked stale");
+					stale.set(true);
+				}
+			});
+		}
+	}
+	
+	//runs the task once the current DB transaction completes, with true if committed
+	private void afterCompletion(Consumer<Boolean> task) {
+		
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			task.accept(true);
+			return;
+		}
+		
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				task.accept(status == STATUS_COMMITTED);
+			}
+		});
+	}
+}
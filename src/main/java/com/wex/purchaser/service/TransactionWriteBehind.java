@@ -0,0 +1,443 @@
+package com.wex.purchaser.service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TypeMismatchDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.wex.purchaser.config.WriteBehindProperties;
+import com.wex.purchaser.config.WriteBehindProperties.FsyncPolicy;
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.exception.ServiceException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind store of new transactions. An accepted transaction gets its id at once, 
+ * is appended to the journal and queued; a writer thread inserts the queued transactions 
+ * into DB in JDBC batches. Transactions left in the journal by a stop or crash are stored at startup.
+ * The queue is bounded: when it is full, new transactions wait up to the offer timeout and are then rejected. 
+ * A transaction the DB refuses is written to the dead-letter journal and logged, the others are stored.
+ * @author Ray Cheng
+ */
+@Slf4j
+@Service
+public class TransactionWriteBehind {
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	private WriteBehindProperties properties;
+	
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	//inserts nothing when the transaction is already stored, so the journal can be replayed
+	static final String INSERT_SQL="insert into transactions (transaction_id, amount, created_at, description)"
+			+ " select ?, ?, ?, ?"
+			+ " where not exists (select 1 from transactions where transaction_id = ?)";
+	
+	private final LinkedBlockingQueue<Pending> queue=new LinkedBlockingQueue<>();
+	
+	//room left for accepted transactions, given back once they are stored
+	private Semaphore capacity;
+	
+	private TransactionJournal journal;
+	
+	//transactions the DB refuses, kept for the operator
+	private TransactionJournal deadLetters;
+	
+	//the id generator of Transaction, so ids come from the same pooled blocks as those of the bulk saves
+	private SessionFactoryImplementor sessionFactory;
+	private IdentifierGenerator idGenerator;
+	
+	private Thread writer;
+	
+	private volatile boolean running;
+	
+	private final AtomicLong storedCount=new AtomicLong();
+	private final AtomicLong rejectedCount=new AtomicLong();
+	private final AtomicLong deadLetterCount=new AtomicLong();
+	
+	@PostConstruct
+	public void start() throws IOException {
+		
+		if (!properties.isEnabled()) {
+			return;
+		}
+		
+		sessionFactory=entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		idGenerator=sessionFactory.getMetamodel().entityPersister(Transaction.class).getIdentifierGenerator();
+		
+		capacity=new Semaphore(properties.getQueueCapacity());
+		if (properties.getJournalFile() == null || properties.getJournalFile().trim().isEmpty()) {
+			log.warn("write-behind without journal, transactions not yet stored are lost when the application stops");
+		} else {
+			long segmentSize=properties.getJournalSegmentSize().toBytes();
+			journal=new TransactionJournal(Paths.get(properties.getJournalFile().trim()), segmentSize);
+			deadLetters=new TransactionJournal(Paths.get(properties.getJournalFile().trim() + ".dead-letter"), segmentSize);
+			replay();
+		}
+		
+		Gauge.builder("purchaser.transaction.write-behind.pending", this, TransactionWriteBehind::getPendingCount)
+				.description("Transactions accepted but not yet stored").register(meterRegistry);
+		FunctionCounter.builder("purchaser.transaction.write-behind.stored", storedCount, AtomicLong::get)
+				.description("Transactions stored by the writer").register(meterRegistry);
+		FunctionCounter.builder("purchaser.transaction.write-behind.rejected", rejectedCount, AtomicLong::get)
+				.description("Transactions rejected because the queue was full").register(meterRegistry);
+		FunctionCounter.builder("purchaser.transaction.write-behind.dead-letter", deadLetterCount, AtomicLong::get)
+				.description("Transactions refused by DB and written to the dead-letter journal").register(meterRegistry);
+		
+		running=true;
+		writer=new Thread(this::writeLoop, "transaction-writer");
+		writer.start();
+	}
+	
+	   /**
+	   * Store the transactions left in the journal, then delete its segments. 
+	   * A DB failure that may pass when tried again stops the startup and leaves the journal as it is. 
+	   * No event is published: daily totals and conversions are checked against the table once the application is ready.
+	   */
+	private void replay() throws IOException {
+		
+		List<Transaction> transactions=journal.recover();
+		if (transactions.isEmpty()) {
+			return;
+		}
+		
+		for (int from=0; from<transactions.size(); from+=properties.getBatchSize()) {
+			List<Transaction> batch=transactions.subList(from, Math.min(from + properties.getBatchSize(), transactions.size()));
+			int stored=insertOrDeadLetter(batch).size();
+			log.info("replay transaction journal: " + batch.size() + " transactions, " + stored + " stored");
+		}
+		journal.clear();
+	}
+	
+	public boolean isEnabled() {
+		return properties.isEnabled();
+	}
+	
+	   /**
+	   * Accept a transaction to be stored by the writer. The id is assigned and, 
+	   * with fsync policy ALWAYS, the transaction is on disk before this method returns, 
+	   * or stored into DB when the journal cannot be forced.
+	   * @param transaction validated transaction without id
+	   * @return transaction This returns the transaction with its id
+	   */
+	public Transaction submit(Transaction transaction) throws ServiceException {
+		
+		if (!running) {
+			throw new ServiceException("Transaction writer is not running");
+		}
+		
+		try {
+			if (!capacity.tryAcquire(properties.getOfferTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+				rejectedCount.incrementAndGet();
+				throw new ServiceException("Too many transactions waiting to be stored, please try again later");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException("Create transaction interrupted");
+		}
+		
+		Pending pending;
+		try {
+			transaction.setTransactionId(allocateId(transaction));
+			pending=new Pending(transaction, journal == null ? 0 : journal.append(transaction));
+		} catch (IOException | RuntimeException e) {
+			capacity.release();
+			log.error("journal transaction failed: " + e.getMessage());
+			throw new ServiceException("Create transaction failed, please try again later");
+		}
+		
+		if (journal != null && properties.getFsync() == FsyncPolicy.ALWAYS) {
+			try {
+				journal.force();
+			} catch (IOException e) {
+				//not known to be on disk, so it is stored before the request returns instead of queued
+				log.error("force transaction journal failed, store at once: " + e.getMessage());
+				storeNow(pending);
+				return transaction;
+			}
+		}
+		queue.add(pending);
+		return transaction;
+	}
+	
+	   /**
+	   * Take the next id from the generator of Transaction. Its pooled optimizer calls 
+	   * the transaction sequence once per block, for the writer and for hibernate saves alike.
+	   * @param transaction the transaction to get the id
+	   * @return id This returns a transaction id not used by any other transaction
+	   */
+	private long allocateId(Transaction transaction) {
+		
+		//the session only takes a connection when a new block is reserved
+		try (StatelessSession session=sessionFactory.openStatelessSession()) {
+			return ((Number) idGenerator.generate((SharedSessionContractImplementor) session, transaction)).longValue();
+		}
+	}
+	
+	private void storeNow(Pending pending) throws ServiceException {
+		
+		List<Pending> batch=Collections.singletonList(pending);
+		try {
+			insert(Collections.singletonList(pending.transaction));
+		} catch (RuntimeException e) {
+			//the journal record is dropped with its segment
+			log.error("store transaction failed: " + e.getMessage());
+			released(batch, Collections.emptyList());
+			throw new ServiceException("Create transaction failed, please try again later");
+		}
+		released(batch, Collections.singletonList(pending.transaction));
+	}
+	
+	private void writeLoop() {
+		
+		List<Pending> batch=new ArrayList<>(properties.getBatchSize());
+		while (running || !queue.isEmpty()) {
+			try {
+				Pending first=queue.poll(properties.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, properties.getBatchSize() - 1);
+				if (!store(batch)) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				//stop timed out, the transactions not stored stay in the journal
+				return;
+			}
+			batch.clear();
+		}
+	}
+	
+	   /**
+	   * Insert one batch, trying again after failures that may pass until it is stored or the application stops. 
+	   * Transactions the DB refuses are dead-lettered.
+	   * @param batch transactions taken from the queue
+	   * @return return false if the batch is not stored and the writer has to stop, leaving the journal as it is
+	   */
+	private boolean store(List<Pending> batch) throws InterruptedException {
+		
+		List<Transaction> transactions=new ArrayList<>(batch.size());
+		batch.forEach(pending->transactions.add(pending.transaction));
+		
+		List<Transaction> storedList;
+		while (true) {
+			try {
+				if (journal != null && properties.getFsync() == FsyncPolicy.BATCH) {
+					journal.force();
+				}
+				storedList=insertOrDeadLetter(transactions);
+				break;
+			} catch (IOException | RuntimeException e) {
+				log.error("store " + batch.size() + " transactions failed: " + e.getMessage());
+				if (!running) {
+					//left in the journal, stored at the next start
+					return false;
+				}
+				Thread.sleep(properties.getRetryDelay().toMillis());
+			}
+		}
+		
+		released(batch, storedList);
+		return true;
+	}
+	
+	   /**
+	   * Insert the transactions. When the DB refuses the batch for its data, each transaction 
+	   * is inserted on its own, and those refused are dead-lettered so the others are stored.
+	   * @param batch transactions to be inserted
+	   * @return storedList This returns the transactions stored, i.e. not dead-lettered
+	   * @throws RuntimeException if the DB fails for another reason, the batch may be inserted again
+	   */
+	private List<Transaction> insertOrDeadLetter(List<Transaction> batch) {
+		
+		try {
+			insert(batch);
+			return batch;
+		} catch (RuntimeException e) {
+			if (!isRefused(e)) {
+				throw e;
+			}
+			log.warn("batch of " + batch.size() + " transactions refused, insert one by one: " + e.getMessage());
+		}
+		
+		//already inserted ones are skipped, so the batch can be tried again after a later failure
+		List<Transaction> storedList=new ArrayList<>(batch.size());
+		for (Transaction transaction : batch) {
+			try {
+				insert(Collections.singletonList(transaction));
+				storedList.add(transaction);
+			} catch (RuntimeException e) {
+				if (!isRefused(e)) {
+					throw e;
+				}
+				deadLetter(transaction, e);
+			}
+		}
+		return storedList;
+	}
+	
+	   /**
+	   * This method is used to decide whether the DB refuses the data of a transaction, 
+	   * e.g. a constraint or a value too long, so inserting it again cannot succeed. 
+	   * Other failures, such as lost connections, timeouts and lock conflicts, are tried again.
+	   * @param error exception of the insert
+	   * @return refused This returns true when the transaction can never be stored
+	   */
+	static boolean isRefused(Throwable error) {
+		return error instanceof DataIntegrityViolationException || error instanceof TypeMismatchDataAccessException;
+	}
+	
+	private void deadLetter(Transaction transaction, RuntimeException error) {
+		
+		deadLetterCount.incrementAndGet();
+		log.error("transaction refused by DB, dead-lettered: " + transaction + ", " + error.getMessage());
+		if (deadLetters == null) {
+			return;
+		}
+		try {
+			deadLetters.append(transaction);
+			deadLetters.force();
+		} catch (IOException e) {
+			log.error("dead-letter transaction " + transaction.getTransactionId() + " failed: " + e.getMessage());
+		}
+	}
+	
+	private int insert(List<Transaction> batch) {
+		
+		List<Object[]> rows=new ArrayList<>(batch.size());
+		for (Transaction transaction : batch) {
+			rows.add(new Object[] {transaction.getTransactionId(), transaction.getAmount(), transaction.getCreatedAt()
+					, transaction.getDescription(), transaction.getTransactionId()});
+		}
+		int[] counts=new TransactionTemplate(transactionManager).execute(status->jdbcTemplate.batchUpdate(INSERT_SQL, rows));
+		int inserted=0;
+		for (int count : counts) {
+			//drivers may not report the count of each statement in a batch
+			inserted+=count < 0 ? 1 : count;
+		}
+		return inserted;
+	}
+	
+	   /**
+	   * Give back the room and the journal records of transactions done with, stored or not
+	   * @param batch transactions taken from the queue
+	   * @param storedList transactions of the batch stored into DB
+	   */
+	private void released(List<Pending> batch, List<Transaction> storedList) {
+		
+		storedCount.addAndGet(storedList.size());
+		capacity.release(batch.size());
+		if (!storedList.isEmpty()) {
+			try {
+				eventPublisher.publishEvent(new TransactionsStoredEvent(new ArrayList<>(storedList)));
+			} catch (RuntimeException e) {
+				log.warn("publish stored transactions failed: " + e.getMessage());
+			}
+		}
+		
+		if (journal == null) {
+			return;
+		}
+		Map<Long, Integer> segmentCounts=new TreeMap<>();
+		batch.forEach(pending->segmentCounts.merge(pending.segment, 1, Integer::sum));
+		try {
+			for (Map.Entry<Long, Integer> segmentCount : segmentCounts.entrySet()) {
+				journal.release(segmentCount.getKey(), segmentCount.getValue());
+			}
+		} catch (IOException e) {
+			log.warn("release transaction journal failed: " + e.getMessage());
+		}
+	}
+	
+	public int getPendingCount() {
+		return capacity == null ? 0 : properties.getQueueCapacity() - capacity.availablePermits();
+	}
+	
+	public long getStoredCount() {
+		return storedCount.get();
+	}
+	
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	public long getDeadLetterCount() {
+		return deadLetterCount.get();
+	}
+	
+	   /**
+	   * Stop accepting transactions and store the queued ones before the application stops
+	   */
+	@PreDestroy
+	public void shutdown() throws InterruptedException, IOException {
+		
+		if (writer == null) {
+			return;
+		}
+		running=false;
+		writer.join(TimeUnit.SECONDS.toMillis(30));
+		if (writer.isAlive()) {
+			log.warn("transaction writer not done, " + queue.size() + " transactions left in the journal");
+			writer.interrupt();
+		}
+		if (journal != null) {
+			journal.close();
+			deadLetters.close();
+		}
+	}
+	
+	//a transaction in the queue and the journal segment of its record
+	private static final class Pending {
+		
+		private final Transaction transaction;
+		private final long segment;
+		
+		Pending(Transaction transaction, long segment) {
+			this.transaction=transaction;
+			this.segment=segment;
+		}
+	}
+}
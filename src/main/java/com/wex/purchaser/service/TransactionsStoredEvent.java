@@ -0,0 +1,19 @@
+package com.wex.purchaser.service;
+
+import java.util.List;
+
+import com.wex.purchaser.entity.Transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published after a batch of transactions accepted in write-behind mode is stored into DB
+ * @author Ray Cheng
+ */
+@Getter
+@AllArgsConstructor
+public class TransactionsStoredEvent {
+	
+	private final List<Transaction> transactions;
+}
@@ -0,0 +1,34 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Move transaction_seq past the transactions already stored. Databases created before the 
+ * sequence was introduced hold ids from 1 upward taken from hibernate_sequence, 
+ * while transaction_seq is created starting with 1.
+ * Runs on H2 and PostgreSQL.
+ * @author Ray Cheng
+ */
+public class V3__reseed_transaction_seq extends BaseJavaMigration {
+	
+	//allocationSize of Transaction, each sequence value is the last id of a block this size
+	static final int ID_BLOCK_SIZE=50;
+	
+	@Override
+	public void migrate(Context context) throws Exception {
+		
+		JdbcTemplate jdbcTemplate=new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+		Long maxId=jdbcTemplate.queryForObject("select max(transaction_id) from transactions", Long.class);
+		if (maxId == null) {
+			return;
+		}
+		
+		//the first block after the restart starts above the largest id, and the sequence never moves back
+		long nextValue=jdbcTemplate.queryForObject("select nextval('transaction_seq')", Long.class);
+		long restart=Math.max(nextValue, maxId + ID_BLOCK_SIZE);
+		jdbcTemplate.execute("alter sequence transaction_seq restart with " + restart);
+	}
+}
@@ -0,0 +1,74 @@
+package db.migration;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Convert created_at of transactions stored before the migrations from the local time of the 
+ * application to UTC, which hibernate reads and writes since hibernate.jdbc.time_zone=UTC.
+ * Only databases baselined by Flyway hold such rows. The time zone they were written in is the 
+ * placeholder legacy-time-zone, by default the time zone of the JVM running the migration.
+ * Daily totals are computed again and stored conversions are removed, the conversion view 
+ * converts the transactions again once the application is ready.
+ * Runs on H2 and PostgreSQL.
+ * @author Ray Cheng
+ */
+public class V4__convert_legacy_timestamps_to_utc extends BaseJavaMigration {
+	
+	static final String TIME_ZONE_PLACEHOLDER="legacy-time-zone";
+	
+	private static final int BATCH_SIZE=1000;
+	
+	@Override
+	public void migrate(Context context) throws Exception {
+		
+		JdbcTemplate jdbcTemplate=new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+		//Flyway creates the history table and its columns with quoted lower case names
+		String historyTable="\"" + context.getConfiguration().getTable() + "\"";
+		Integer baselined=jdbcTemplate.queryForObject("select count(*) from " + historyTable + " where \"type\" = 'BASELINE'", Integer.class);
+		if (baselined == null || baselined == 0) {
+			return;
+		}
+		
+		ZoneId zone=legacyZone(context);
+		if (zone.getRules().isFixedOffset() && zone.getRules().getOffset(Instant.EPOCH).equals(ZoneOffset.UTC)) {
+			return;
+		}
+		
+		//wall clock time of the legacy zone to the same instant in UTC
+		List<Object[]> rows=new ArrayList<>(BATCH_SIZE);
+		jdbcTemplate.query("select transaction_id, created_at from transactions", rs->{
+			LocalDateTime local=rs.getObject(2, LocalDateTime.class);
+			rows.add(new Object[] {Timestamp.valueOf(local.atZone(zone).withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime()), rs.getLong(1)});
+			if (rows.size() == BATCH_SIZE) {
+				jdbcTemplate.batchUpdate("update transactions set created_at = ? where transaction_id = ?", rows);
+				rows.clear();
+			}
+		});
+		if (!rows.isEmpty()) {
+			jdbcTemplate.batchUpdate("update transactions set created_at = ? where transaction_id = ?", rows);
+		}
+		
+		jdbcTemplate.update("delete from transaction_daily_totals");
+		jdbcTemplate.update("insert into transaction_daily_totals (transaction_date, transaction_count, amount)"
+				+ " select cast(created_at as date), count(*), sum(amount) from transactions group by cast(created_at as date)");
+		jdbcTemplate.update("delete from transaction_conversions");
+	}
+	
+	private ZoneId legacyZone(Context context) {
+		
+		String zone=context.getConfiguration().getPlaceholders().get(TIME_ZONE_PLACEHOLDER);
+		return zone == null || zone.trim().isEmpty() ? TimeZone.getDefault().toZoneId() : ZoneId.of(zone.trim());
+	}
+}
@@ -0,0 +1,45 @@
+-- Schema of purchaser, runs on H2 and PostgreSQL.
+-- IF NOT EXISTS lets databases created by hibernate ddl-auto be baselined without changes.
+
+create sequence if not exists transaction_seq start with 1 increment by 50;
+create sequence if not exists exchange_rate_seq start with 1 increment by 50;
+create sequence if not exists transaction_conversion_seq start with 1 increment by 50;
+
+create table if not exists transactions (
+	transaction_id bigint not null,
+	amount decimal(19,2) not null,
+	created_at timestamp not null,
+	description varchar(50) not null,
+	primary key (transaction_id)
+);
+
+-- latest transaction and date range filter
+create index if not exists idx_transactions_created_at_desc on transactions (created_at desc, transaction_id desc);
+-- amount range and description prefix filters
+create index if not exists idx_transactions_amount on transactions (amount);
+create index if not exists idx_transactions_description on transactions (description);
+
+create table if not exists exchange_rates (
+	exchange_rate_id bigint not null,
+	currency varchar(100) not null,
+	effective_date date not null,
+	exchange_rate decimal(19,6) not null,
+	record_date date,
+	primary key (exchange_rate_id)
+);
+
+create index if not exists idx_exchange_rates_currency_date on exchange_rates (currency, effective_date);
+
+create table if not exists transaction_conversions (
+	conversion_id bigint not null,
+	amount decimal(19,2) not null,
+	currency varchar(100) not null,
+	effective_date date not null,
+	exchange_rate decimal(19,6) not null,
+	transaction_date date not null,
+	transaction_id bigint not null,
+	primary key (conversion_id)
+);
+
+create unique index if not exists uk_transaction_conversions_currency_transaction on transaction_conversions (currency, transaction_id);
+create index if not exists idx_transaction_conversions_currency_date on transaction_conversions (currency, transaction_date);
@@ -0,0 +1,13 @@
+-- Daily count and USD amount of transactions for statistics, kept up to date on create.
+
+create table if not exists transaction_daily_totals (
+	transaction_date date not null,
+	transaction_count bigint not null,
+	amount decimal(19,2) not null,
+	primary key (transaction_date)
+);
+
+delete from transaction_daily_totals;
+
+insert into transaction_daily_totals (transaction_date, transaction_count, amount)
+select cast(created_at as date), count(*), sum(amount) from transactions group by cast(created_at as date);
@@ -0,0 +1,9 @@
+-- One rate per currency and effective date, so concurrent loads of the same dates cannot store duplicates.
+
+-- keep the first stored rate of each currency and effective date
+delete from exchange_rates where exists (select 1 from exchange_rates kept
+	where kept.currency = exchange_rates.currency and kept.effective_date = exchange_rates.effective_date
+	and kept.exchange_rate_id < exchange_rates.exchange_rate_id);
+
+drop index if exists idx_exchange_rates_currency_date;
+create unique index if not exists uk_exchange_rates_currency_date on exchange_rates (currency, effective_date);
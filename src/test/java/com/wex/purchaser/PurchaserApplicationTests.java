@@ -3,7 +3,7 @@ package com.wex.purchaser;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"purchaser.rate-prefetch.enabled=false", "purchaser.rate-cache.snapshot-file="})
 class PurchaserApplicationTests {
 
 	@Test
@@ -0,0 +1,54 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EpochDaysTest {
+
+	@DisplayName("EpochDays-Same result as LocalDate")
+	@Test
+	public void sameAsLocalDate() {
+
+		int from=(int) LocalDate.of(1600, 1, 1).toEpochDay();
+		int to=(int) LocalDate.of(2500, 12, 31).toEpochDay();
+		for (int epochDay=from; epochDay<=to; epochDay++) {
+			LocalDate date=LocalDate.ofEpochDay(epochDay);
+			assertEquals(date.toString(), EpochDays.format(epochDay));
+			assertEquals(epochDay, EpochDays.parse(date.toString()));
+			assertEquals(date.minusMonths(6).toEpochDay(), EpochDays.minusMonths(epochDay, 6));
+			assertEquals(date.minusMonths(13).toEpochDay(), EpochDays.minusMonths(epochDay, 13));
+		}
+	}
+
+	@DisplayName("EpochDays-Month end is adjusted to shorter month")
+	@Test
+	public void minusMonths_monthEnd() {
+
+		int epochDay=(int) LocalDate.parse("2024-08-31").toEpochDay();
+		assertEquals("2024-02-29", EpochDays.format(EpochDays.minusMonths(epochDay, 6)));
+	}
+
+	@DisplayName("EpochDays-Date of epoch millis in UTC")
+	@Test
+	public void ofEpochMilli() {
+
+		assertEquals(0, EpochDays.ofEpochMilli(0));
+		assertEquals(0, EpochDays.ofEpochMilli(86_399_999L));
+		assertEquals(-1, EpochDays.ofEpochMilli(-1));
+		assertEquals(LocalDate.parse("2024-03-15").toEpochDay(), EpochDays.ofEpochMilli(1710547199000L));
+	}
+
+	@DisplayName("EpochDays-Invalid date")
+	@Test
+	public void parse_invalid() {
+
+		assertThrows(DateTimeParseException.class, () -> EpochDays.parse("2023-02-29"));
+		assertThrows(DateTimeParseException.class, () -> EpochDays.parse("2023-1a-01"));
+		assertThrows(DateTimeParseException.class, () -> EpochDays.parse("2023/01/01"));
+	}
+}
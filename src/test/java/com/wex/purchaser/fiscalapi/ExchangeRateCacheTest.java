@@ -0,0 +1,402 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.wex.purchaser.config.RateCacheProperties;
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.service.ExchangeRateService;
+import com.wex.purchaser.service.ExchangeRatesStoredEvent;
+
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateCacheTest {
+
+	private static final List<String> HKD=Collections.singletonList("Hong Kong-Dollar");
+	
+	@InjectMocks
+	private ExchangeRateCache cache;
+	
+	@Mock
+	private ExchangeRateService rateService;
+	
+	@Spy
+	private RateCacheProperties properties=new RateCacheProperties();
+	
+	@DisplayName("RateCache-Second request within covered range is a hit")
+	@Test
+	public void getTimeline_hit() throws ServiceException {
+		
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		RateTimeline cached=cache.getTimeline("Hong Kong-Dollar", "2023-12-01");
+		
+		assertEquals(1, cached.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		
+		MeterRegistry registry=new SimpleMeterRegistry();
+		cache.bindTo(registry);
+		assertEquals(0.5, registry.get("purchaser.rate.cache.hit.ratio").gauge().value());
+		assertEquals(1, registry.get("purchaser.rate.cache.requests").tag("result", "hit").functionCounter().count());
+		verify(rateService, times(1)).loadTimelines(anyList(), anyString());
+	}
+	
+	@DisplayName("RateCache-Earlier date than covered range is a miss")
+	@Test
+	public void getTimeline_earlierDateMiss() throws ServiceException {
+		
+		when(rateService.loadTimelines(eq(HKD), anyString())).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		cache.getTimeline("Hong Kong-Dollar", "2023-06-28");
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+	
+	@DisplayName("RateCache-Expired entry is fetched again")
+	@Test
+	public void getTimeline_expired() throws ServiceException {
+		
+		properties.getCurrencyTtl().put("Hong Kong-Dollar", Duration.ofMinutes(1));
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-04-28T00:00:00Z"), ZoneId.of("UTC")));
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-04-28T00:02:00Z"), ZoneId.of("UTC")));
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.getEvictionCount());
+	}
+	
+	@DisplayName("RateCache-Least recently used currency is evicted")
+	@Test
+	public void getTimeline_evictLeastRecentlyUsed() throws ServiceException {
+		
+		properties.setMaxEntries(2);
+		when(rateService.loadTimelines(anyList(), eq("2023-10-28"))).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		cache.getTimeline("Canada-Dollar", "2023-10-28");
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		cache.getTimeline("Japan-Yen", "2023-10-28");
+		
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		
+		//Hong Kong-Dollar was used more recently than Canada-Dollar
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		assertEquals(2, cache.getHitCount());
+	}
+	
+	@DisplayName("RateCache-Entries are evicted when over size limit")
+	@Test
+	public void getTimeline_evictOverSize() throws ServiceException {
+		
+		properties.setMaxBytes(ExchangeRateCache.ENTRY_OVERHEAD_BYTES + ExchangeRateCache.RATE_BYTES);
+		when(rateService.loadTimelines(anyList(), eq("2023-10-28"))).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		cache.getTimeline("Canada-Dollar", "2023-10-28");
+		
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(ExchangeRateCache.ENTRY_OVERHEAD_BYTES + ExchangeRateCache.RATE_BYTES, cache.getTotalBytes());
+	}
+	
+	@DisplayName("RateCache-Missed currencies are fetched in one call")
+	@Test
+	public void getTimelines_multiCurrency() throws ServiceException {
+		
+		when(rateService.loadTimelines(anyList(), eq("2023-10-28"))).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		Map<String, RateTimeline> timelines=cache.getTimelines(Arrays.asList("Canada-Dollar", "Hong Kong-Dollar", "Japan-Yen"), "2023-10-28");
+		
+		assertEquals(Arrays.asList("Canada-Dollar", "Hong Kong-Dollar", "Japan-Yen"), new ArrayList<>(timelines.keySet()));
+		assertEquals("Japan-Yen", timelines.get("Japan-Yen").getCurrency());
+		assertEquals(1, cache.getHitCount());
+		verify(rateService).loadTimelines(Arrays.asList("Canada-Dollar", "Japan-Yen"), "2023-10-28");
+	}
+	
+	@DisplayName("RateCache-Refreshed currency does not expire and is not evicted")
+	@Test
+	public void refresh_pinned() throws ServiceException {
+		
+		properties.setMaxEntries(1);
+		properties.setTtl(Duration.ofMinutes(1));
+		when(rateService.loadTimelines(anyList(), eq("2023-10-28"))).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-04-28T00:00:00Z"), ZoneId.of("UTC")));
+		cache.refresh(HKD, "2023-10-28");
+		cache.getTimeline("Canada-Dollar", "2023-10-28");
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-05-28T00:00:00Z"), ZoneId.of("UTC")));
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		verify(rateService, times(2)).loadTimelines(anyList(), anyString());
+	}
+	
+	@DisplayName("RateCache-Stale refresh over a pinned currency expires after the stale time to live")
+	@Test
+	public void refresh_staleOverPinned() throws ServiceException {
+		
+		properties.setStaleTtl(Duration.ofMinutes(1));
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> timelines(i.getArgument(0), false)).thenAnswer(i -> timelines(i.getArgument(0), true));
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-04-28T00:00:00Z"), ZoneId.of("UTC")));
+		cache.refresh(HKD, "2023-10-28");
+		cache.refresh(HKD, "2023-10-28");
+		assertTrue(cache.getTimeline("Hong Kong-Dollar", "2023-10-28").isStale());
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-04-28T00:02:00Z"), ZoneId.of("UTC")));
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		assertEquals(1, cache.getEvictionCount());
+		verify(rateService, times(3)).loadTimelines(HKD, "2023-10-28");
+	}
+	
+	@DisplayName("RateCache-Imported rates reload the cached currency and keep it pinned")
+	@Test
+	public void onRatesStored_imported() throws ServiceException {
+		
+		properties.setTtl(Duration.ofMinutes(1));
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> timelines(i.getArgument(0), false));
+		List<ExchangeRate> stored=rates(HKD);
+		stored.add(0, ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.821"))
+				.effectiveDate("2023-12-31")
+				.build());
+		when(rateService.findStoredRates(HKD, LocalDate.parse("2023-10-28"))).thenReturn(stored);
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-04-28T00:00:00Z"), ZoneId.of("UTC")));
+		cache.refresh(HKD, "2023-10-28");
+		
+		//already cached, then one new within the cached range and one of a currency not cached
+		cache.onRatesStored(new ExchangeRatesStoredEvent(Collections.singletonList(entity("Hong Kong-Dollar", "2024-03-31"))));
+		cache.onRatesStored(new ExchangeRatesStoredEvent(Arrays.asList(entity("Hong Kong-Dollar", "2023-12-31"), entity("Japan-Yen", "2023-12-31"))));
+		
+		ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.parse("2024-05-28T00:00:00Z"), ZoneId.of("UTC")));
+		RateTimeline timeline=cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		assertEquals(2, timeline.size());
+		assertEquals("2023-12-31", timeline.getEffectiveDate(0));
+		assertEquals(1, cache.size());
+		verify(rateService, times(1)).findStoredRates(anyList(), any());
+		verify(rateService, times(1)).loadTimelines(anyList(), anyString());
+	}
+	
+	@DisplayName("RateCache-Concurrent misses share one load")
+	@Test
+	public void getTimeline_coalesced() throws Exception {
+		
+		int threads=8;
+		CountDownLatch start=new CountDownLatch(1);
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> {
+			Thread.sleep(300);
+			return timelines(i.getArgument(0), false);
+		});
+		
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<RateTimeline>> futures=new ArrayList<>();
+			for (int i=0; i<threads; i++) {
+				futures.add(executor.submit(()->{
+					start.await();
+					return cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+				}));
+			}
+			start.countDown();
+			for (Future<RateTimeline> future : futures) {
+				assertEquals(1, future.get(10, TimeUnit.SECONDS).size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		verify(rateService, times(1)).loadTimelines(anyList(), anyString());
+		assertEquals(threads - 1, cache.getCoalescedCount() + cache.getHitCount());
+	}
+	
+	@DisplayName("RateCache-Failed load is reported to all waiting callers")
+	@Test
+	public void getTimeline_coalescedFailure() throws Exception {
+		
+		int threads=4;
+		CountDownLatch start=new CountDownLatch(1);
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> {
+			Thread.sleep(300);
+			throw new ServiceException("Exchange Rate not found");
+		});
+		
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<RateTimeline>> futures=new ArrayList<>();
+			for (int i=0; i<threads; i++) {
+				futures.add(executor.submit(()->{
+					start.await();
+					return cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+				}));
+			}
+			start.countDown();
+			for (Future<RateTimeline> future : futures) {
+				ExecutionException exception=assertThrows(ExecutionException.class, ()->future.get(10, TimeUnit.SECONDS));
+				assertTrue(exception.getCause() instanceof ServiceException);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		verify(rateService, times(1)).loadTimelines(anyList(), anyString());
+	}
+	
+	@DisplayName("RateCache-Async misses share one load without blocking")
+	@Test
+	public void getTimelinesAsync_coalesced() throws Exception {
+		
+		CompletableFuture<Map<String, RateTimeline>> pending=new CompletableFuture<>();
+		when(rateService.loadTimelinesAsync(HKD, "2023-10-28")).thenReturn(pending);
+		
+		CompletableFuture<Map<String, RateTimeline>> first=cache.getTimelinesAsync(HKD, "2023-10-28");
+		CompletableFuture<Map<String, RateTimeline>> second=cache.getTimelinesAsync(HKD, "2023-10-28");
+		assertFalse(first.isDone());
+		assertFalse(second.isDone());
+		
+		pending.complete(timelines(HKD, false));
+		
+		assertEquals(1, first.get(10, TimeUnit.SECONDS).get("Hong Kong-Dollar").size());
+		assertEquals(1, second.get(10, TimeUnit.SECONDS).get("Hong Kong-Dollar").size());
+		assertEquals(1, cache.getCoalescedCount());
+		
+		//loaded rates are cached for later requests
+		assertTrue(cache.getTimelinesAsync(HKD, "2023-10-28").isDone());
+		assertEquals(1, cache.getHitCount());
+		verify(rateService, times(1)).loadTimelinesAsync(anyList(), anyString());
+	}
+	
+	@DisplayName("RateCache-Async failed load is reported to all waiting callers")
+	@Test
+	public void getTimelinesAsync_failure() {
+		
+		CompletableFuture<Map<String, RateTimeline>> pending=new CompletableFuture<>();
+		when(rateService.loadTimelinesAsync(HKD, "2023-10-28")).thenReturn(pending);
+		
+		CompletableFuture<Map<String, RateTimeline>> first=cache.getTimelinesAsync(HKD, "2023-10-28");
+		CompletableFuture<Map<String, RateTimeline>> second=cache.getTimelinesAsync(HKD, "2023-10-28");
+		
+		pending.completeExceptionally(new ServiceException("Exchange rate service not available"));
+		
+		for (CompletableFuture<Map<String, RateTimeline>> future : Arrays.asList(first, second)) {
+			ExecutionException exception=assertThrows(ExecutionException.class, ()->future.get(10, TimeUnit.SECONDS));
+			assertTrue(exception.getCause() instanceof ServiceException);
+		}
+		assertEquals(0, cache.size());
+	}
+	
+	@DisplayName("RateCache-Snapshot is restored into another cache without loading")
+	@Test
+	public void restoreSnapshot(@TempDir Path dir) throws Exception {
+		
+		when(rateService.loadTimelines(anyList(), eq("2023-10-28"))).thenAnswer(i -> timelines(i.getArgument(0), false));
+		cache.refresh(Arrays.asList("Hong Kong-Dollar", "Canada-Dollar"), "2023-10-28");
+		assertEquals(2, cache.writeSnapshot(dir.resolve("rates.snapshot")));
+		
+		ExchangeRateCache restoredCache=new ExchangeRateCache();
+		ReflectionTestUtils.setField(restoredCache, "rateService", rateService);
+		ReflectionTestUtils.setField(restoredCache, "properties", properties);
+		Map<String, String> restored=restoredCache.restoreSnapshot(dir.resolve("rates.snapshot"));
+		
+		assertEquals("2023-10-28", restored.get("Hong Kong-Dollar"));
+		assertEquals(2, restoredCache.size());
+		RateTimeline timeline=restoredCache.getTimeline("Hong Kong-Dollar", "2023-12-01");
+		assertEquals(new BigDecimal("7.831"), timeline.getRate(0));
+		assertEquals("2024-03-31", timeline.getEffectiveDate(0));
+		assertEquals(1, restoredCache.getHitCount());
+		verify(rateService, times(1)).loadTimelines(anyList(), anyString());
+	}
+	
+	@DisplayName("RateCache-Disabled cache always call fiscal API")
+	@Test
+	public void getTimeline_disabled() throws ServiceException {
+		
+		properties.setEnabled(false);
+		when(rateService.loadTimelines(HKD, "2023-10-28")).thenAnswer(i -> timelines(i.getArgument(0), false));
+		
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		cache.getTimeline("Hong Kong-Dollar", "2023-10-28");
+		
+		verify(rateService, times(2)).loadTimelines(HKD, "2023-10-28");
+	}
+	
+	private StoredExchangeRate entity(String currency, String effectiveDate) {
+		return StoredExchangeRate.builder()
+				.currency(currency)
+				.exchangeRate(new BigDecimal("7.821"))
+				.effectiveDate(LocalDate.parse(effectiveDate))
+				.build();
+	}
+	
+	private List<ExchangeRate> rates(Collection<String> currencies) {
+		List<ExchangeRate> rates=new ArrayList<>();
+		for (String currency : currencies) {
+			rates.add(ExchangeRate.builder()
+					.countryCurrencyDesc(currency)
+					.exchangeRate(new BigDecimal("7.831"))
+					.effectiveDate("2024-03-31")
+					.build());
+		}
+		return rates;
+	}
+	
+	private Map<String, RateTimeline> timelines(Collection<String> currencies, boolean stale) {
+		RateTimelines timelines=new RateTimelines(currencies, 1);
+		rates(currencies).forEach(timelines::add);
+		if (stale) {
+			currencies.forEach(timelines::markStale);
+		}
+		return timelines.build();
+	}
+}
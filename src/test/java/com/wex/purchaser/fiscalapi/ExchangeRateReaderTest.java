@@ -0,0 +1,78 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+public class ExchangeRateReaderTest {
+	
+	private static final String RESPONSE="{\"data\":["
+			+ "{\"record_date\":\"2024-03-31\",\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.35\",\"effective_date\":\"2024-03-31\"},"
+			+ "{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":1.362,\"effective_date\":\"2023-12-31\",\"record_date\":null,\"extra\":{\"a\":[1,2]}}],"
+			+ "\"meta\":{\"count\":2,\"labels\":{\"exchange_rate\":\"Exchange Rate\"},\"total-count\":5,\"total-pages\":3},"
+			+ "\"links\":{\"self\":\"&page%5Bnumber%5D=1\",\"next\":\"&page%5Bnumber%5D=2\"}}";
+	
+	private final ExchangeRateReader reader=new ExchangeRateReader();
+	
+	@DisplayName("ExchangeRateReader-Rates and paging are read, unknown fields skipped")
+	@Test
+	public void read_page() throws IOException {
+		
+		List<ExchangeRate> rateList=new ArrayList<>();
+		ApiMeta meta=reader.read(stream(RESPONSE), rateList::add);
+		
+		assertEquals(2, rateList.size());
+		ExchangeRate first=rateList.get(0);
+		assertEquals("Canada-Dollar", first.getCountryCurrencyDesc());
+		assertEquals(new BigDecimal("1.35"), first.getExchangeRate());
+		assertEquals("2024-03-31", first.getEffectiveDate());
+		assertEquals("2024-03-31", first.getRecordDate());
+		
+		ExchangeRate second=rateList.get(1);
+		assertEquals(new BigDecimal("1.362"), second.getExchangeRate());
+		assertNull(second.getRecordDate());
+		//one String per currency name
+		assertSame(first.getCountryCurrencyDesc(), second.getCountryCurrencyDesc());
+		
+		assertEquals(2, meta.getCount());
+		assertEquals(5, meta.getTotalCount());
+		assertEquals(3, meta.getTotalPages());
+	}
+	
+	@DisplayName("ExchangeRateReader-Rates are passed on one at a time")
+	@Test
+	public void read_streamed() throws IOException {
+		
+		List<String> dates=new ArrayList<>();
+		ApiMeta meta=reader.read(stream("{\"data\":[{\"effective_date\":\"2024-03-31\"},{\"effective_date\":\"2023-12-31\"}]}")
+				, rate->dates.add(rate.getEffectiveDate()));
+		
+		assertEquals(2, dates.size());
+		assertEquals("2023-12-31", dates.get(1));
+		assertNull(meta);
+	}
+	
+	@DisplayName("ExchangeRateReader-Invalid responses are reported as parse errors")
+	@Test
+	public void read_invalid() {
+		
+		assertThrows(JsonProcessingException.class, ()->reader.read(stream("[]"), rate->{}));
+		assertThrows(JsonProcessingException.class, ()->reader.read(stream("{\"data\":[{\"exchange_rate\":\"n/a\"}]}"), rate->{}));
+		assertThrows(JsonProcessingException.class, ()->reader.read(stream("{\"data\":[{\"exchange_rate\":\"1.3\""), rate->{}));
+	}
+	
+	private InputStream stream(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+}
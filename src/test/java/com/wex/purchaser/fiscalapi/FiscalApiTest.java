@@ -0,0 +1,434 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import reactor.netty.resources.ConnectionProvider;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.wex.purchaser.config.FiscalApiConfig;
+import com.wex.purchaser.config.FiscalApiProperties;
+import com.wex.purchaser.exception.ServiceException;
+
+/**
+ * Calls FiscalApi against a local stub server in place of fiscaldata
+ */
+public class FiscalApiTest {
+
+	private static final String RESPONSE="{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.35\""
+			+ ",\"record_date\":\"2024-03-31\",\"effective_date\":\"2024-03-31\"}]}";
+	
+	private HttpServer server;
+	
+	private ExecutorService serverExecutor;
+	
+	private CloseableHttpClient httpClient;
+	
+	private ConnectionProvider connectionProvider;
+	
+	private FiscalApi api;
+	
+	private final MeterRegistry meterRegistry=new SimpleMeterRegistry();
+	
+	private FiscalApiProperties properties;
+	
+	private final Set<Integer> clientPorts=ConcurrentHashMap.newKeySet();
+	
+	private final AtomicInteger requestCount=new AtomicInteger();
+	
+	private volatile int status=200;
+	
+	//statuses of the next responses, before falling back to status
+	private final Queue<Integer> nextStatus=new ConcurrentLinkedQueue<>();
+	
+	//blocks the responses while set
+	private volatile CountDownLatch release;
+	
+	private FiscalApiConfig config;
+	
+	//pages of the stub response, one rate per page
+	private volatile int totalPages=1;
+	
+	private final AtomicInteger inFlight=new AtomicInteger();
+	
+	private final AtomicInteger maxInFlight=new AtomicInteger();
+	
+	private final Set<String> queries=ConcurrentHashMap.newKeySet();
+	
+	@BeforeEach
+	public void setup() throws IOException {
+		
+		server=HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/rates_of_exchange", this::handle);
+		serverExecutor=Executors.newFixedThreadPool(16);
+		server.setExecutor(serverExecutor);
+		server.start();
+		
+		properties=new FiscalApiProperties();
+		properties.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/rates_of_exchange");
+		properties.setMaxConnections(4);
+		properties.setRetryBackoff(Duration.ofMillis(10));
+		
+		config=new FiscalApiConfig();
+		httpClient=config.fiscalApiHttpClient(properties);
+		
+		api=new FiscalApi();
+		ReflectionTestUtils.setField(api, "restTemplate", config.fiscalApiRestTemplate(httpClient));
+		ReflectionTestUtils.setField(api, "properties", properties);
+		ReflectionTestUtils.setField(api, "meterRegistry", meterRegistry);
+		
+		connectionProvider=config.fiscalApiConnectionProvider(properties);
+		ReflectionTestUtils.setField(api, "webClient", config.fiscalApiWebClient(connectionProvider, properties));
+		resilience();
+	}
+	
+	//build circuit breaker, retry and bulkhead from the current properties
+	private void resilience() {
+		
+		ReflectionTestUtils.setField(api, "circuitBreaker", config.fiscalApiCircuitBreaker(properties, meterRegistry));
+		ReflectionTestUtils.setField(api, "retry", config.fiscalApiRetry(properties, meterRegistry));
+		ReflectionTestUtils.setField(api, "bulkhead", config.fiscalApiBulkhead(properties, meterRegistry));
+	}
+	
+	@AfterEach
+	public void tearDown() throws IOException {
+		httpClient.close();
+		connectionProvider.dispose();
+		api.shutdown();
+		if (release != null) {
+			release.countDown();
+		}
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+	
+	@DisplayName("FiscalApi-Parse exchange rate from response")
+	@Test
+	public void parseExchangeRate_success() throws ServiceException {
+		
+		List<ExchangeRate> rateList=api.parseExchangeRate("Canada-Dollar", "2023-10-28");
+		
+		assertEquals(1, rateList.size());
+		assertEquals("Canada-Dollar", rateList.get(0).getCountryCurrencyDesc());
+		assertEquals("2024-03-31", rateList.get(0).getEffectiveDate());
+		
+		assertEquals(1, meterRegistry.get("purchaser.fiscalapi.requests").tag("mode", "sync").tag("status", "200").timer().count());
+		assertEquals(RESPONSE.length(), meterRegistry.get("purchaser.fiscalapi.response.size").summary().totalAmount());
+		assertEquals(1, meterRegistry.get("purchaser.fiscalapi.response.rates").summary().totalAmount());
+	}
+	
+	@DisplayName("FiscalApi-Error status is recorded for every attempt")
+	@Test
+	public void fetchExchangeRate_errorStatus() {
+		
+		status=503;
+		
+		assertThrows(HttpServerErrorException.class, ()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+		
+		assertEquals(properties.getRetryMaxAttempts(), meterRegistry.get("purchaser.fiscalapi.requests").tag("status", "503").tag("outcome", "SERVER_ERROR").timer().count());
+	}
+	
+	@DisplayName("FiscalApi-Transient errors are retried")
+	@Test
+	public void fetchExchangeRate_retry() {
+		
+		nextStatus.add(503);
+		nextStatus.add(429);
+		
+		assertEquals(1, api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null).size());
+		
+		assertEquals(3, requestCount.get());
+	}
+	
+	@DisplayName("FiscalApi-Client errors are not retried")
+	@Test
+	public void fetchExchangeRate_clientErrorNotRetried() {
+		
+		status=400;
+		
+		assertThrows(HttpClientErrorException.class, ()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+		
+		assertEquals(1, requestCount.get());
+	}
+	
+	@DisplayName("FiscalApi-Calls fail fast while the circuit is open")
+	@Test
+	public void fetchExchangeRate_circuitOpen() {
+		
+		properties.setRetryMaxAttempts(1);
+		properties.setCircuitBreakerWindow(4);
+		properties.setCircuitBreakerMinimumCalls(4);
+		resilience();
+		status=503;
+		
+		for (int i=0; i<4; i++) {
+			assertThrows(HttpServerErrorException.class, ()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+		}
+		assertThrows(CallNotPermittedException.class, ()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+		
+		ExecutionException e=assertThrows(ExecutionException.class, 
+				()->api.fetchExchangeRateAsync(Collections.singletonList("Canada-Dollar"), "2023-10-28", null).get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof CallNotPermittedException);
+		
+		assertEquals(4, requestCount.get());
+	}
+	
+	@DisplayName("FiscalApi-Async transient errors are retried")
+	@Test
+	public void fetchExchangeRateAsync_retry() throws Exception {
+		
+		nextStatus.add(502);
+		
+		assertEquals(1, api.fetchExchangeRateAsync(Collections.singletonList("Canada-Dollar"), "2023-10-28", null).get(10, TimeUnit.SECONDS).size());
+		assertEquals(2, requestCount.get());
+		
+		status=404;
+		ExecutionException e=assertThrows(ExecutionException.class, 
+				()->api.fetchExchangeRateAsync(Collections.singletonList("Canada-Dollar"), "2023-10-28", null).get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof WebClientResponseException);
+		assertEquals(3, requestCount.get());
+	}
+	
+	@DisplayName("FiscalApi-Blocking calls above the limit are rejected")
+	@Test
+	public void fetchExchangeRate_bulkheadFull() throws Exception {
+		
+		properties.setMaxConcurrentCalls(1);
+		resilience();
+		release=new CountDownLatch(1);
+		
+		ExecutorService executor=Executors.newSingleThreadExecutor();
+		try {
+			Future<List<ExchangeRate>> running=executor.submit(()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+			while (requestCount.get() == 0) {
+				Thread.sleep(5);
+			}
+			
+			assertThrows(BulkheadFullException.class, ()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+			
+			release.countDown();
+			assertEquals(1, running.get(10, TimeUnit.SECONDS).size());
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, requestCount.get());
+	}
+	
+	@DisplayName("FiscalApi-Follow-up pages of a blocking call hold bulkhead permits")
+	@Test
+	public void fetchExchangeRate_pagesBulkhead() throws Exception {
+		
+		totalPages=5;
+		properties.setMaxParallelPages(2);
+		properties.setMaxConcurrentCalls(2);
+		resilience();
+		Bulkhead bulkhead=(Bulkhead) ReflectionTestUtils.getField(api, "bulkhead");
+		
+		ExecutorService executor=Executors.newSingleThreadExecutor();
+		try {
+			List<String> dates=new ArrayList<>();
+			Future<Integer> running=executor.submit(()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null
+					, page->{
+						//hold the follow-up pages once the first one has arrived
+						if (dates.isEmpty()) {
+							release=new CountDownLatch(1);
+						}
+						page.forEach(rate->dates.add(rate.getEffectiveDate()));
+					}));
+			while (inFlight.get() < 2) {
+				Thread.sleep(5);
+			}
+			
+			assertEquals(0, bulkhead.getMetrics().getAvailableConcurrentCalls());
+			assertThrows(BulkheadFullException.class, ()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+			
+			release.countDown();
+			assertEquals(5, running.get(10, TimeUnit.SECONDS));
+			assertEquals(5, dates.size());
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(2, bulkhead.getMetrics().getAvailableConcurrentCalls());
+	}
+	
+	@DisplayName("FiscalApi-All pages are fetched with bounded parallelism and passed in page order")
+	@Test
+	public void fetchExchangeRate_pages() {
+		
+		totalPages=10;
+		properties.setMaxParallelPages(3);
+		properties.setPageSize(1);
+		
+		List<String> dates=new ArrayList<>();
+		int pages=api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null
+				, page->page.forEach(rate->dates.add(rate.getEffectiveDate())));
+		
+		assertEquals(10, pages);
+		assertEquals(10, dates.size());
+		for (int i=0; i<10; i++) {
+			assertEquals(pageDate(i + 1), dates.get(i));
+		}
+		assertEquals(10, requestCount.get());
+		assertTrue(maxInFlight.get() <= 3, "pages in flight: " + maxInFlight.get());
+		assertTrue(queries.stream().allMatch(query->query.contains("page[size]=1")));
+		assertTrue(queries.stream().allMatch(query->query.contains("sort=effective_date")));
+	}
+	
+	@DisplayName("FiscalApi-Async fetch passes each page on in page order")
+	@Test
+	public void fetchExchangeRateAsync_pages() throws Exception {
+		
+		totalPages=7;
+		properties.setMaxParallelPages(2);
+		
+		List<String> dates=new ArrayList<>();
+		int pages=api.fetchExchangeRateAsync(Collections.singletonList("Canada-Dollar"), "2023-10-28", "2024-12-31"
+				, page->page.forEach(rate->dates.add(rate.getEffectiveDate())))
+				.get(10, TimeUnit.SECONDS);
+		
+		assertEquals(7, pages);
+		assertEquals(7, dates.size());
+		for (int i=0; i<7; i++) {
+			assertEquals(pageDate(i + 1), dates.get(i));
+		}
+		assertEquals(7, requestCount.get());
+		assertTrue(maxInFlight.get() <= 2, "pages in flight: " + maxInFlight.get());
+		assertTrue(queries.stream().allMatch(query->query.contains("sort=-effective_date")));
+	}
+	
+	@DisplayName("FiscalApi-Connections are reused under concurrent load")
+	@Test
+	public void fetchExchangeRate_connectionReuse() throws Exception {
+		
+		int threads=16;
+		int callsPerThread=25;
+		
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures=new ArrayList<>();
+			for (int i=0; i<threads; i++) {
+				futures.add(executor.submit(()->{
+					for (int j=0; j<callsPerThread; j++) {
+						assertEquals(1, api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null).size());
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		assertEquals(threads * callsPerThread, requestCount.get());
+		//every connection is opened from its own client port, so the pool size bounds the number of ports
+		assertTrue(clientPorts.size() <= properties.getMaxConnections(), "connections opened: " + clientPorts.size());
+	}
+	
+	@DisplayName("FiscalApi-Async calls wait for a pooled connection without holding a thread")
+	@Test
+	public void fetchExchangeRateAsync_concurrent() throws Exception {
+		
+		int calls=200;
+		
+		List<CompletableFuture<List<ExchangeRate>>> futures=new ArrayList<>();
+		for (int i=0; i<calls; i++) {
+			futures.add(api.fetchExchangeRateAsync(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+		}
+		for (CompletableFuture<List<ExchangeRate>> future : futures) {
+			List<ExchangeRate> rateList=future.get(60, TimeUnit.SECONDS);
+			assertEquals(1, rateList.size());
+			assertEquals("Canada-Dollar", rateList.get(0).getCountryCurrencyDesc());
+		}
+		
+		assertEquals(calls, requestCount.get());
+		assertTrue(clientPorts.size() <= properties.getMaxConnections(), "connections opened: " + clientPorts.size());
+		assertEquals(calls, meterRegistry.get("purchaser.fiscalapi.requests").tag("mode", "async").timer().count());
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		
+		requestCount.incrementAndGet();
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		queries.add(exchange.getRequestURI().getQuery());
+		maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		try {
+			respond(exchange);
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+	
+	private void respond(HttpExchange exchange) throws IOException {
+		
+		CountDownLatch latch=release;
+		if (latch != null) {
+			try {
+				latch.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		Integer next=nextStatus.poll();
+		byte[] body=(totalPages == 1 ? RESPONSE : pageResponse(exchange.getRequestURI().getQuery())).getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(next == null ? status : next, body.length);
+		try (OutputStream out=exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+	
+	private String pageResponse(String query) {
+		
+		Matcher matcher=Pattern.compile("page\\[number\\]=(\\d+)").matcher(query);
+		int page=matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+		return "{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.35\""
+				+ ",\"record_date\":\"" + pageDate(page) + "\",\"effective_date\":\"" + pageDate(page) + "\"}]"
+				+ ",\"meta\":{\"count\":1,\"total-count\":" + totalPages + ",\"total-pages\":" + totalPages + "}}";
+	}
+	
+	private String pageDate(int page) {
+		return String.format("2024-%02d-01", page);
+	}
+}
@@ -0,0 +1,195 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import reactor.netty.resources.ConnectionProvider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.wex.purchaser.config.FiscalApiConfig;
+import com.wex.purchaser.config.FiscalApiProperties;
+import com.wex.purchaser.config.VirtualThreadConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Many concurrent FiscalApi calls against a slow stub server: blocking on a platform thread pool, 
+ * async on the WebClient, and blocking on virtual threads, which needs JDK 21 or later.
+ * Timing dependent, so excluded from the default build and run with: mvn -Pload test
+ */
+@Slf4j
+@Tag("load")
+public class FiscalApiVirtualThreadLoadTest {
+
+	private static final String RESPONSE="{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.35\""
+			+ ",\"record_date\":\"2024-03-31\",\"effective_date\":\"2024-03-31\"}]}";
+
+	private static final int CALLS=2000;
+
+	private static final int PLATFORM_THREADS=200;
+
+	//async calls open a connection each, fewer of them keep the run short on small hosts
+	private static final int ASYNC_CALLS=400;
+
+	private static final int ASYNC_PLATFORM_THREADS=40;
+
+	private static final long UPSTREAM_DELAY_MILLIS=500;
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private CloseableHttpClient httpClient;
+
+	private ConnectionProvider connectionProvider;
+
+	private FiscalApi api;
+	
+	private final MeterRegistry meterRegistry=new SimpleMeterRegistry();
+
+	@BeforeEach
+	public void setup() throws IOException {
+
+		server=HttpServer.create(new InetSocketAddress("localhost", 0), CALLS);
+		server.createContext("/rates_of_exchange", this::handle);
+		//every request waits for the upstream delay at the same time
+		serverExecutor=VirtualThreadConfig.isAvailable() ? VirtualThreadConfig.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		FiscalApiProperties properties=new FiscalApiProperties();
+		properties.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/rates_of_exchange");
+		properties.setMaxConnections(CALLS);
+		properties.setConnectionRequestTimeout(Duration.ofSeconds(60));
+		properties.setMaxConcurrentCalls(CALLS);
+		properties.setMaxPendingRequests(CALLS);
+
+		FiscalApiConfig config=new FiscalApiConfig();
+		httpClient=config.fiscalApiHttpClient(properties);
+
+		api=new FiscalApi();
+		ReflectionTestUtils.setField(api, "restTemplate", config.fiscalApiRestTemplate(httpClient));
+		ReflectionTestUtils.setField(api, "properties", properties);
+		ReflectionTestUtils.setField(api, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(api, "circuitBreaker", config.fiscalApiCircuitBreaker(properties, meterRegistry));
+		ReflectionTestUtils.setField(api, "retry", config.fiscalApiRetry(properties, meterRegistry));
+		ReflectionTestUtils.setField(api, "bulkhead", config.fiscalApiBulkhead(properties, meterRegistry));
+		
+		connectionProvider=config.fiscalApiConnectionProvider(properties);
+		ReflectionTestUtils.setField(api, "webClient", config.fiscalApiWebClient(connectionProvider, properties));
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		httpClient.close();
+		connectionProvider.dispose();
+		api.shutdown();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@DisplayName("FiscalApi-Slow blocking calls are bounded by the platform pool, async calls are not")
+	@Test
+	public void fetchExchangeRate_platformPoolAndAsync() throws Exception {
+
+		long platformMillis=run(Executors.newFixedThreadPool(ASYNC_PLATFORM_THREADS), ASYNC_CALLS);
+		long asyncMillis=runAsync(ASYNC_CALLS);
+
+		log.info(String.format("%d calls, %d ms upstream delay: platform pool of %d %d ms (%.0f calls/s), async %d ms (%.0f calls/s)"
+				, ASYNC_CALLS, UPSTREAM_DELAY_MILLIS, ASYNC_PLATFORM_THREADS
+				, platformMillis, ASYNC_CALLS * 1000.0 / platformMillis, asyncMillis, ASYNC_CALLS * 1000.0 / asyncMillis));
+
+		//the platform pool needs calls / threads rounds of the upstream delay, async calls wait all at once
+		assertTrue(platformMillis >= ASYNC_CALLS / ASYNC_PLATFORM_THREADS * UPSTREAM_DELAY_MILLIS, "platform " + platformMillis + " ms");
+		assertTrue(asyncMillis < ASYNC_CALLS / ASYNC_PLATFORM_THREADS * UPSTREAM_DELAY_MILLIS, "async " + asyncMillis + " ms, platform " + platformMillis + " ms");
+	}
+
+	@DisplayName("FiscalApi-Thousands of slow calls on virtual threads")
+	@EnabledIf("com.wex.purchaser.config.VirtualThreadConfig#isAvailable")
+	@Test
+	public void fetchExchangeRate_virtualThreads() throws Exception {
+
+		long platformMillis=run(Executors.newFixedThreadPool(PLATFORM_THREADS), CALLS);
+		long virtualMillis=run(VirtualThreadConfig.newVirtualThreadPerTaskExecutor(), CALLS);
+
+		log.info(String.format("%d calls, %d ms upstream delay: platform pool of %d %d ms (%.0f calls/s), virtual threads %d ms (%.0f calls/s)"
+				, CALLS, UPSTREAM_DELAY_MILLIS, PLATFORM_THREADS
+				, platformMillis, CALLS * 1000.0 / platformMillis, virtualMillis, CALLS * 1000.0 / virtualMillis));
+
+		//the platform pool needs CALLS / PLATFORM_THREADS rounds of the upstream delay, virtual threads wait all at once
+		assertTrue(platformMillis >= CALLS / PLATFORM_THREADS * UPSTREAM_DELAY_MILLIS, "platform " + platformMillis + " ms");
+		assertTrue(virtualMillis < platformMillis, "virtual threads " + virtualMillis + " ms, platform " + platformMillis + " ms");
+	}
+
+	private long run(ExecutorService executor, int calls) throws Exception {
+
+		long start=System.nanoTime();
+		try {
+			List<Future<List<ExchangeRate>>> futures=new ArrayList<>();
+			for (int i=0; i<calls; i++) {
+				futures.add(executor.submit(()->api.fetchExchangeRate(Collections.singletonList("Canada-Dollar"), "2023-10-28", null)));
+			}
+			for (Future<List<ExchangeRate>> future : futures) {
+				assertEquals(1, future.get(120, TimeUnit.SECONDS).size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private long runAsync(int calls) throws Exception {
+
+		long start=System.nanoTime();
+		List<CompletableFuture<List<ExchangeRate>>> futures=new ArrayList<>();
+		for (int i=0; i<calls; i++) {
+			futures.add(api.fetchExchangeRateAsync(Collections.singletonList("Canada-Dollar"), "2023-10-28", null));
+		}
+		for (CompletableFuture<List<ExchangeRate>> future : futures) {
+			assertEquals(1, future.get(120, TimeUnit.SECONDS).size());
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+
+		try {
+			Thread.sleep(UPSTREAM_DELAY_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		byte[] body=RESPONSE.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out=exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateSnapshotTest {
+	
+	@TempDir
+	Path dir;
+	
+	@DisplayName("RateSnapshot-Timelines are read back as written")
+	@Test
+	public void write_read() throws IOException {
+		
+		Path file=dir.resolve("rates.snapshot");
+		RateSnapshot.write(file, Arrays.asList(
+				new RateSnapshot.Entry("2023-10-28", timeline("Hong Kong-Dollar", false, "2023-12-31", "7.821", "2024-03-31", "7.831")),
+				new RateSnapshot.Entry("2022-01-01", timeline("Japan-Yen", true, "2023-12-31", "141.3", "2024-03-31", "-0.00000001")),
+				new RateSnapshot.Entry("2023-10-28", timeline("Côte d'Ivoire-Franc", false))));
+		
+		List<RateSnapshot.Entry> entries=RateSnapshot.read(file);
+		
+		assertEquals(3, entries.size());
+		RateTimeline hkd=entries.get(0).getTimeline();
+		assertEquals("2023-10-28", entries.get(0).getFromDate());
+		assertEquals("Hong Kong-Dollar", hkd.getCurrency());
+		assertFalse(hkd.isStale());
+		assertEquals(2, hkd.size());
+		assertEquals("2024-03-31", hkd.getEffectiveDate(1));
+		assertEquals(EpochDays.parse("2024-03-31"), hkd.getEpochDay(1));
+		assertEquals(new BigDecimal("7.821"), hkd.getRate(0));
+		
+		RateTimeline jpy=entries.get(1).getTimeline();
+		assertTrue(jpy.isStale());
+		assertEquals(new BigDecimal("141.3"), jpy.getRate(0));
+		assertEquals(new BigDecimal("-0.00000001"), jpy.getRate(1));
+		
+		assertEquals("Côte d'Ivoire-Franc", entries.get(2).getTimeline().getCurrency());
+		assertTrue(entries.get(2).getTimeline().isEmpty());
+	}
+	
+	@DisplayName("RateSnapshot-Corrupted file is rejected by the checksum")
+	@Test
+	public void read_corrupted() throws IOException {
+		
+		Path file=dir.resolve("rates.snapshot");
+		RateSnapshot.write(file, Arrays.asList(new RateSnapshot.Entry("2023-10-28", timeline("Hong Kong-Dollar", false, "2024-03-31", "7.831"))));
+		byte[] bytes=Files.readAllBytes(file);
+		bytes[bytes.length - 6]^=1;
+		Files.write(file, bytes);
+		
+		IOException e=assertThrows(IOException.class, ()->RateSnapshot.read(file));
+		assertTrue(e.getMessage().contains("checksum"));
+	}
+	
+	@DisplayName("RateSnapshot-File of another format or version is rejected")
+	@Test
+	public void read_otherVersion() throws IOException {
+		
+		Path file=dir.resolve("rates.snapshot");
+		RateSnapshot.write(file, new ArrayList<>());
+		byte[] bytes=Files.readAllBytes(file);
+		ByteBuffer.wrap(bytes).putInt(4, RateSnapshot.VERSION + 1);
+		Files.write(file, bytes);
+		assertThrows(IOException.class, ()->RateSnapshot.read(file));
+		
+		Files.write(file, "{\"data\":[]}".getBytes());
+		assertThrows(IOException.class, ()->RateSnapshot.read(file));
+	}
+	
+	private RateTimeline timeline(String currency, boolean stale, String... dateRates) {
+		
+		RateTimeline.Builder builder=RateTimeline.builder(currency, dateRates.length / 2);
+		for (int i=0; i<dateRates.length; i+=2) {
+			ExchangeRate rate=ExchangeRate.builder()
+					.countryCurrencyDesc(currency)
+					.effectiveDate(dateRates[i])
+					.exchangeRate(new BigDecimal(dateRates[i + 1]))
+					.build();
+			rate.setStale(stale);
+			builder.add(rate);
+		}
+		return builder.build();
+	}
+}
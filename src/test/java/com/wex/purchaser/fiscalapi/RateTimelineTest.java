@@ -0,0 +1,96 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateTimelineTest {
+
+	private RateTimeline timeline;
+	
+	@BeforeEach
+	public void setup() {
+		List<ExchangeRate> rates=new ArrayList<>();
+		rates.add(rate("2023-12-31", "7.821"));
+		rates.add(rate("2024-03-31", "7.831"));
+		rates.add(rate("2023-09-30", "7.841"));
+		timeline=RateTimeline.of("Hong Kong-Dollar", rates);
+	}
+	
+	@DisplayName("RateTimeline-Rates are sorted by effective date")
+	@Test
+	public void of_sorted() {
+		
+		assertEquals(3, timeline.size());
+		assertEquals("2023-09-30", timeline.getEffectiveDate(0));
+		assertEquals("2023-12-31", timeline.getEffectiveDate(1));
+		assertEquals("2024-03-31", timeline.getEffectiveDate(2));
+		assertEquals(LocalDate.parse("2024-03-31").toEpochDay(), timeline.getEpochDay(2));
+	}
+	
+	@DisplayName("RateTimeline-Builder grows and sorts rates added out of order once")
+	@Test
+	public void builder_unordered() {
+		
+		RateTimeline.Builder builder=RateTimeline.builder("Hong Kong-Dollar", 1);
+		for (int i=20; i>0; i--) {
+			builder.add(rate(LocalDate.parse("2023-01-01").plusDays(i).toString(), "7.8" + i));
+		}
+		RateTimeline built=builder.add(rate("2023-01-05", "7.9")).build();
+		
+		assertEquals(21, built.size());
+		for (int i=1; i<built.size(); i++) {
+			assertTrue(built.getEpochDay(i - 1) <= built.getEpochDay(i));
+		}
+		//same day keeps the order added
+		assertEquals(0, new BigDecimal("7.84").compareTo(built.getRate(3)));
+		assertEquals(0, new BigDecimal("7.9").compareTo(built.getRate(4)));
+		assertFalse(built.isStale());
+	}
+	
+	@DisplayName("RateTimeline-Latest rate before the end date")
+	@Test
+	public void indexOfLatest_found() {
+		
+		int index=timeline.indexOfLatest(day("2023-10-28"), day("2024-04-28"));
+		assertEquals(0, new BigDecimal("7.831").compareTo(timeline.getRate(index)));
+		
+		index=timeline.indexOfLatest(day("2023-06-28"), day("2023-12-28"));
+		assertEquals(0, new BigDecimal("7.841").compareTo(timeline.getRate(index)));
+	}
+	
+	@DisplayName("RateTimeline-Range bounds are exclusive")
+	@Test
+	public void indexOfLatest_exclusive() {
+		
+		assertEquals(1, timeline.indexOfLatest(day("2023-10-28"), day("2024-03-31")));
+		assertEquals(-1, timeline.indexOfLatest(day("2023-09-30"), day("2023-12-31")));
+	}
+	
+	@DisplayName("RateTimeline-No rate within range")
+	@Test
+	public void indexOfLatest_notFound() {
+		
+		assertEquals(-1, timeline.indexOfLatest(day("2023-03-01"), day("2023-09-01")));
+		assertEquals(-1, RateTimeline.of("Hong Kong-Dollar", new ArrayList<>()).indexOfLatest(0, Integer.MAX_VALUE));
+	}
+	
+	private ExchangeRate rate(String effectiveDate, String rate) {
+		return ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal(rate))
+				.effectiveDate(effectiveDate)
+				.build();
+	}
+	
+	private int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+}
@@ -0,0 +1,84 @@
+package com.wex.purchaser.fiscalapi;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.wex.purchaser.config.RateCacheProperties;
+import com.wex.purchaser.config.RatePrefetchProperties;
+import com.wex.purchaser.exception.ServiceException;
+
+@ExtendWith(MockitoExtension.class)
+public class RateWarmUpHealthIndicatorTest {
+	
+	private static final List<String> HKD=Collections.singletonList("Hong Kong-Dollar");
+	
+	@InjectMocks
+	private ExchangeRatePrefetcher prefetcher;
+	
+	@Mock
+	private ExchangeRateCache rateCache;
+	
+	@Spy
+	private RatePrefetchProperties properties=new RatePrefetchProperties();
+	
+	@Spy
+	private RateCacheProperties cacheProperties=new RateCacheProperties();
+	
+	private RateWarmUpHealthIndicator indicator;
+	
+	@BeforeEach
+	public void setup() {
+		properties.setCurrencies(HKD);
+		cacheProperties.setSnapshotFile("");
+		indicator=new RateWarmUpHealthIndicator();
+		ReflectionTestUtils.setField(indicator, "prefetcher", prefetcher);
+	}
+	
+	@DisplayName("RateWarmUp-Not ready until a failed warm-up succeeds on retry")
+	@Test
+	public void health_warmUpFailed() throws ServiceException {
+		
+		doThrow(new ServiceException("Exchange rate service not available"))
+		.doNothing().when(rateCache).refresh(eq(HKD), anyString());
+		
+		prefetcher.run(null);
+		
+		assertFalse(prefetcher.isWarmedUp());
+		assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+		
+		prefetcher.retryWarmUp();
+		
+		assertTrue(prefetcher.isWarmedUp());
+		assertEquals(Status.UP, indicator.health().getStatus());
+		
+		prefetcher.retryWarmUp();
+		verify(rateCache, times(2)).refresh(eq(HKD), anyString());
+	}
+	
+	@DisplayName("RateWarmUp-Ready without prefetch when it is disabled")
+	@Test
+	public void health_disabled() {
+		
+		properties.setEnabled(false);
+		
+		prefetcher.run(null);
+		prefetcher.retryWarmUp();
+		
+		assertEquals(Status.UP, indicator.health().getStatus());
+		verifyNoInteractions(rateCache);
+	}
+}
@@ -0,0 +1,150 @@
+package com.wex.purchaser.repository;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.flywaydb.core.Flyway;
+import org.h2.tools.Server;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Concurrent batched inserts of transactions into the migrated schema on each datasource mode:
+ * embedded H2 file, H2 server over TCP and the PostgreSQL compatible in-memory stand-in.
+ * The stored rows are asserted, the throughput of each mode is only logged.
+ */
+@Slf4j
+public class DataSourceWriteThroughputTest {
+
+	private static final String INSERT="insert into transactions (transaction_id, amount, created_at, description)"
+			+ " values (nextval('transaction_seq'), ?, ?, ?)";
+
+	private static final int ROWS=20000;
+
+	private static final int WRITERS=4;
+
+	private static final int BATCH_SIZE=50;
+
+	@TempDir
+	Path dataDir;
+
+	@DisplayName("DataSource-Write throughput of embedded file, server and PostgreSQL modes")
+	@Test
+	public void writeThroughput() throws Exception {
+
+		long fileMillis=run("jdbc:h2:file:" + dataDir.resolve("embedded").toAbsolutePath());
+
+		Server server=Server.createTcpServer("-tcp", "-tcpPort", "0", "-baseDir", dataDir.toAbsolutePath().toString(), "-ifNotExists").start();
+		long serverMillis;
+		try {
+			serverMillis=run("jdbc:h2:tcp://localhost:" + server.getPort() + "/server");
+		} finally {
+			server.stop();
+		}
+
+		long postgresMillis=run("jdbc:h2:mem:postgres;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+		log.info(String.format("%d rows, %d writers, batch of %d: embedded file %d ms (%.0f rows/s), server %d ms (%.0f rows/s), postgresql mode %d ms (%.0f rows/s)"
+				, ROWS, WRITERS, BATCH_SIZE
+				, fileMillis, ROWS * 1000.0 / fileMillis
+				, serverMillis, ROWS * 1000.0 / serverMillis
+				, postgresMillis, ROWS * 1000.0 / postgresMillis));
+	}
+
+	private long run(String url) throws Exception {
+
+		HikariConfig config=new HikariConfig();
+		config.setJdbcUrl(url);
+		config.setUsername("sa");
+		config.setPassword("");
+		config.setMaximumPoolSize(WRITERS);
+
+		try (HikariDataSource dataSource=new HikariDataSource(config)) {
+			assertTrue(Flyway.configure().dataSource(dataSource).load().migrate().success);
+
+			ExecutorService executor=Executors.newFixedThreadPool(WRITERS);
+			long start=System.nanoTime();
+			try {
+				List<Future<Integer>> futures=new ArrayList<>();
+				for (int i=0; i<WRITERS; i++) {
+					futures.add(executor.submit(()->insert(dataSource, ROWS / WRITERS)));
+				}
+				for (Future<Integer> future : futures) {
+					assertEquals(ROWS / WRITERS, future.get(120, TimeUnit.SECONDS));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			long millis=Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+			//every row of every batch stored once, and ids handed out by the sequence are not reused
+			assertEquals(ROWS, query(dataSource, "select count(*) from transactions").longValue());
+			assertEquals(0, expectedAmount().compareTo(query(dataSource, "select sum(amount) from transactions")));
+			assertTrue(query(dataSource, "select nextval('transaction_seq')").longValue()
+					> query(dataSource, "select max(transaction_id) from transactions").longValue());
+			return millis;
+		}
+	}
+
+	private int insert(HikariDataSource dataSource, int rows) throws SQLException {
+
+		int inserted=0;
+		try (Connection connection=dataSource.getConnection();
+				PreparedStatement statement=connection.prepareStatement(INSERT)) {
+			connection.setAutoCommit(false);
+			for (int i=0; i<rows; i++) {
+				statement.setBigDecimal(1, new BigDecimal(i % 1000).movePointLeft(2));
+				statement.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+				statement.setString(3, "Transaction " + i);
+				statement.addBatch();
+				if ((i + 1) % BATCH_SIZE == 0 || i == rows - 1) {
+					for (int count : statement.executeBatch()) {
+						inserted+=count == Statement.SUCCESS_NO_INFO ? 1 : count;
+					}
+					connection.commit();
+				}
+			}
+		}
+		return inserted;
+	}
+
+	private BigDecimal query(HikariDataSource dataSource, String sql) throws SQLException {
+
+		try (Connection connection=dataSource.getConnection();
+				Statement statement=connection.createStatement();
+				ResultSet resultSet=statement.executeQuery(sql)) {
+			resultSet.next();
+			return resultSet.getBigDecimal(1);
+		}
+	}
+
+	//sum of the amounts written by insert
+	private BigDecimal expectedAmount() {
+
+		BigDecimal amount=BigDecimal.ZERO;
+		for (int i=0; i<ROWS / WRITERS; i++) {
+			amount=amount.add(new BigDecimal(i % 1000).movePointLeft(2));
+		}
+		return amount.multiply(new BigDecimal(WRITERS));
+	}
+}
@@ -0,0 +1,139 @@
+package com.wex.purchaser.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Stores exchange rates into the migrated schema of an in-memory H2 database
+ */
+public class ExchangeRateWriterTest {
+	
+	private static final String HKD="Hong Kong-Dollar";
+	
+	private ExchangeRateWriter writer;
+	
+	private HikariDataSource dataSource;
+	
+	private JdbcTemplate jdbcTemplate;
+	
+	@BeforeEach
+	public void setup() {
+		
+		HikariConfig config=new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:rate-writer;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setPassword("");
+		dataSource=new HikariDataSource(config);
+		Flyway.configure().dataSource(dataSource).load().migrate();
+		jdbcTemplate=new JdbcTemplate(dataSource);
+		
+		writer=new ExchangeRateWriter();
+		ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(writer, "transactionManager", new DataSourceTransactionManager(dataSource));
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		jdbcTemplate.execute("drop all objects");
+		dataSource.close();
+	}
+	
+	@DisplayName("ExchangeRateWriter-Rates already stored are skipped")
+	@Test
+	public void insertIfAbsent_stored() {
+		
+		assertEquals(2, writer.insertIfAbsent(rates("2023-12-31", "2024-03-31")).size());
+		
+		List<StoredExchangeRate> insertedList=writer.insertIfAbsent(rates("2024-03-31", "2024-06-30"));
+		
+		assertEquals(1, insertedList.size());
+		assertEquals(LocalDate.parse("2024-06-30"), insertedList.get(0).getEffectiveDate());
+		assertEquals(3, jdbcTemplate.queryForObject("select count(*) from exchange_rates", Integer.class));
+	}
+	
+	@DisplayName("ExchangeRateWriter-Concurrent loads of the same dates store each rate once")
+	@Test
+	public void insertIfAbsent_concurrent() throws Exception {
+		
+		int threads=8;
+		String[] dates=new String[100];
+		for (int i=0; i<dates.length; i++) {
+			dates[i]=LocalDate.parse("2020-01-01").plusDays(i).toString();
+		}
+		
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start=new CountDownLatch(1);
+			List<Future<Integer>> futures=new ArrayList<>();
+			for (int t=0; t<threads; t++) {
+				Callable<Integer> load=()->{
+					start.await();
+					return writer.insertIfAbsent(rates(dates)).size();
+				};
+				futures.add(executor.submit(load));
+			}
+			start.countDown();
+			
+			int inserted=0;
+			for (Future<Integer> future : futures) {
+				inserted+=future.get(30, TimeUnit.SECONDS);
+			}
+			
+			assertEquals(dates.length, inserted);
+			assertEquals(dates.length, jdbcTemplate.queryForObject("select count(*) from exchange_rates", Integer.class));
+			assertEquals(dates.length, jdbcTemplate.queryForObject(
+					"select count(distinct effective_date) from exchange_rates where currency = ?", Integer.class, HKD));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@DisplayName("ExchangeRateWriter-Duplicate rate is rejected by the unique index")
+	@Test
+	public void uniqueIndex() {
+		
+		writer.insertIfAbsent(rates("2024-03-31"));
+		
+		assertThrows(DuplicateKeyException.class, ()->{
+			jdbcTemplate.update("insert into exchange_rates (exchange_rate_id, currency, effective_date, exchange_rate)"
+					+ " values (nextval('exchange_rate_seq'), ?, date '2024-03-31', 7.8)", HKD);
+		});
+	}
+	
+	private List<StoredExchangeRate> rates(String... effectiveDates) {
+		
+		List<StoredExchangeRate> rateList=new ArrayList<>();
+		for (String effectiveDate : effectiveDates) {
+			rateList.add(StoredExchangeRate.builder()
+					.currency(HKD)
+					.exchangeRate(new BigDecimal("7.831"))
+					.effectiveDate(LocalDate.parse(effectiveDate))
+					.build());
+		}
+		return rateList;
+	}
+}
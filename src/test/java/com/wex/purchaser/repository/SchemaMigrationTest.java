@@ -0,0 +1,144 @@
+package com.wex.purchaser.repository;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Migrates a database created by hibernate ddl-auto before the Flyway migrations, 
+ * with the settings of application.properties
+ */
+public class SchemaMigrationTest {
+	
+	private HikariDataSource dataSource;
+	
+	private JdbcTemplate jdbcTemplate;
+	
+	@BeforeEach
+	public void setup() {
+		
+		HikariConfig config=new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setPassword("");
+		dataSource=new HikariDataSource(config);
+		jdbcTemplate=new JdbcTemplate(dataSource);
+		
+		//schema and ids as created by GenerationType.AUTO and ddl-auto=update
+		jdbcTemplate.execute("create sequence hibernate_sequence start with 1 increment by 1");
+		jdbcTemplate.execute("create table transactions (transaction_id bigint not null, amount decimal(19,2)"
+				+ ", created_at timestamp, description varchar(50), primary key (transaction_id))");
+		for (int i=0; i<3; i++) {
+			jdbcTemplate.update("insert into transactions (transaction_id, amount, created_at, description)"
+					+ " values (nextval('hibernate_sequence'), 12.30, timestamp '2024-04-28 10:00:00', 'Legacy')");
+		}
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		jdbcTemplate.execute("drop all objects");
+		dataSource.close();
+	}
+	
+	private void migrate() {
+		migrate("UTC");
+	}
+	
+	private void migrate(String legacyTimeZone) {
+		Flyway.configure().dataSource(dataSource).baselineOnMigrate(true).baselineVersion("0")
+				.placeholders(Collections.singletonMap("legacy-time-zone", legacyTimeZone)).load().migrate();
+	}
+	
+	@DisplayName("Migration-Existing database is baselined and new ids do not clash with stored ones")
+	@Test
+	public void migrate_legacySchema() {
+		
+		migrate();
+		
+		//first block of the pooled optimizer after the migration
+		long next=jdbcTemplate.queryForObject("select nextval('transaction_seq')", Long.class);
+		assertTrue(next - 50 + 1 > 3);
+		jdbcTemplate.update("insert into transactions (transaction_id, amount, created_at, description)"
+				+ " values (?, 1.00, current_timestamp, 'New')", next - 50 + 1);
+		
+		assertEquals(4, jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class));
+		assertEquals(3, jdbcTemplate.queryForObject("select sum(transaction_count) from transaction_daily_totals", Integer.class));
+	}
+	
+	@DisplayName("Migration-Timestamps written in local time are converted to UTC with the daily totals")
+	@Test
+	public void migrate_legacyTimestamps() {
+		
+		jdbcTemplate.update("update transactions set created_at = timestamp '2024-04-28 23:30:00' where transaction_id = 3");
+		
+		migrate("America/New_York");
+		
+		assertEquals(Timestamp.valueOf("2024-04-29 03:30:00")
+				, jdbcTemplate.queryForObject("select created_at from transactions where transaction_id = 3", Timestamp.class));
+		assertEquals(Timestamp.valueOf("2024-04-28 14:00:00")
+				, jdbcTemplate.queryForObject("select created_at from transactions where transaction_id = 1", Timestamp.class));
+		assertEquals(1, jdbcTemplate.queryForObject("select transaction_count from transaction_daily_totals where transaction_date = date '2024-04-29'", Integer.class));
+		assertEquals(2, jdbcTemplate.queryForObject("select transaction_count from transaction_daily_totals where transaction_date = date '2024-04-28'", Integer.class));
+	}
+	
+	@DisplayName("Migration-Timestamps of a database created by the migrations are not converted")
+	@Test
+	public void migrate_newDatabase() {
+		
+		jdbcTemplate.execute("drop all objects");
+		Flyway.configure().dataSource(dataSource)
+				.placeholders(Collections.singletonMap("legacy-time-zone", "America/New_York")).load().migrate();
+		jdbcTemplate.update("insert into transactions (transaction_id, amount, created_at, description)"
+				+ " values (1, 12.30, timestamp '2024-04-28 23:30:00', 'New')");
+		
+		Flyway.configure().dataSource(dataSource)
+				.placeholders(Collections.singletonMap("legacy-time-zone", "America/New_York")).load().migrate();
+		
+		assertEquals(Timestamp.valueOf("2024-04-28 23:30:00")
+				, jdbcTemplate.queryForObject("select created_at from transactions", Timestamp.class));
+	}
+	
+	@DisplayName("Migration-Sequence already past the stored ids is not moved back")
+	@Test
+	public void migrate_sequenceAhead() {
+		
+		jdbcTemplate.execute("create sequence transaction_seq start with 1001 increment by 50");
+		
+		migrate();
+		
+		assertTrue(jdbcTemplate.queryForObject("select nextval('transaction_seq')", Long.class) >= 1001);
+	}
+	
+	@DisplayName("Migration-Duplicate exchange rates are removed before the unique index is created")
+	@Test
+	public void migrate_duplicateRates() {
+		
+		jdbcTemplate.execute("create table exchange_rates (exchange_rate_id bigint not null, currency varchar(100) not null"
+				+ ", effective_date date not null, exchange_rate decimal(19,6) not null, record_date date, primary key (exchange_rate_id))");
+		jdbcTemplate.execute("create index idx_exchange_rates_currency_date on exchange_rates (currency, effective_date)");
+		for (int i=1; i<=3; i++) {
+			jdbcTemplate.update("insert into exchange_rates (exchange_rate_id, currency, effective_date, exchange_rate)"
+					+ " values (?, 'Hong Kong-Dollar', date '2024-03-31', 7.831)", i);
+		}
+		
+		migrate();
+		
+		assertEquals(1L, jdbcTemplate.queryForObject("select exchange_rate_id from exchange_rates", Long.class));
+		assertThrows(DuplicateKeyException.class, ()->{
+			jdbcTemplate.update("insert into exchange_rates (exchange_rate_id, currency, effective_date, exchange_rate)"
+					+ " values (4, 'Hong Kong-Dollar', date '2024-03-31', 7.831)");
+		});
+	}
+}
@@ -0,0 +1,217 @@
+package com.wex.purchaser.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.wex.purchaser.config.ConversionViewProperties;
+import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.entity.TransactionConversion;
+import com.wex.purchaser.fiscalapi.ExchangeRate;
+import com.wex.purchaser.repository.TransactionConversionRepository;
+import com.wex.purchaser.repository.TransactionConversionRepository.ConvertedTransaction;
+import com.wex.purchaser.repository.TransactionRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class ConversionViewServiceTest {
+
+	private static final String HKD="Hong Kong-Dollar";
+
+	@InjectMocks
+	private ConversionViewService service;
+
+	@Mock
+	private TransactionConversionRepository repository;
+
+	@Mock
+	private TransactionRepository transactionRepository;
+
+	@Mock
+	private ExchangeRateService rateService;
+
+	@Spy
+	private ConversionViewProperties properties=new ConversionViewProperties();
+
+	@BeforeEach
+	public void setup() {
+		properties.setEnabled(true);
+		properties.setCurrencies(Collections.singletonList(HKD));
+		ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+	}
+
+	@DisplayName("ConversionView-New transaction is converted with latest rate within 6 months")
+	@Test
+	public void onCreated_converted() {
+
+		when(rateService.findStoredRates(Collections.singletonList(HKD), LocalDate.parse("2023-10-28")))
+		.thenReturn(Arrays.asList(rate("2023-12-31", "7.821"), rate("2024-03-31", "7.831")));
+
+		service.onCreated(Collections.singletonList(transaction(1, "2024-04-28", "1000")));
+
+		List<TransactionConversion> savedList=captureSaved();
+		assertEquals(1, savedList.size());
+		assertEquals(1, savedList.get(0).getTransactionId());
+		assertEquals(LocalDate.parse("2024-03-31"), savedList.get(0).getEffectiveDate());
+		assertEquals(LocalDate.parse("2024-04-28"), savedList.get(0).getTransactionDate());
+		assertEquals(new BigDecimal("7831.00"), savedList.get(0).getAmount());
+	}
+
+	@DisplayName("ConversionView-Transaction without rate is not converted")
+	@Test
+	public void onCreated_noRate() {
+
+		when(rateService.findStoredRates(anyList(), any())).thenReturn(new ArrayList<>());
+
+		service.onCreated(Collections.singletonList(transaction(1, "2024-04-28", "1000")));
+
+		verify(repository, never()).saveAll(anyList());
+	}
+
+	@DisplayName("ConversionView-New rate converts affected transactions again")
+	@Test
+	public void onRatesStored_refresh() {
+
+		TransactionConversion stored=TransactionConversion.builder()
+				.transactionId(1)
+				.currency(HKD)
+				.transactionDate(LocalDate.parse("2024-04-28"))
+				.effectiveDate(LocalDate.parse("2023-12-31"))
+				.exchangeRate(new BigDecimal("7.821"))
+				.amount(new BigDecimal("7821.00"))
+				.build();
+
+		when(transactionRepository.findByCreatedAtGreaterThanEqualAndCreatedAtLessThan(
+				timestamp("2024-04-01"), timestamp("2024-10-02")))
+		.thenReturn(Collections.singletonList(transaction(1, "2024-04-28", "1000")));
+		when(rateService.findStoredRates(anyList(), any()))
+		.thenReturn(Arrays.asList(rate("2023-12-31", "7.821"), rate("2024-03-31", "7.831")));
+		when(repository.findByCurrencyAndTransactionIdIn(HKD, Collections.singletonList(1L))).thenReturn(Collections.singletonList(stored));
+
+		StoredExchangeRate newRate=StoredExchangeRate.builder()
+				.currency(HKD)
+				.effectiveDate(LocalDate.parse("2024-03-31"))
+				.exchangeRate(new BigDecimal("7.831"))
+				.build();
+		service.onRatesStored(new ExchangeRatesStoredEvent(Collections.singletonList(newRate)));
+
+		List<TransactionConversion> savedList=captureSaved();
+		assertSame(stored, savedList.get(0));
+		assertEquals(LocalDate.parse("2024-03-31"), stored.getEffectiveDate());
+		assertEquals(new BigDecimal("7831.00"), stored.getAmount());
+	}
+
+	@DisplayName("ConversionView-Incomplete conversions are not used")
+	@Test
+	public void listConverted_incomplete() {
+
+		when(transactionRepository.findAllTransactionIds()).thenReturn(Arrays.asList(1L, 2L));
+		List<ConvertedTransaction> convertedList=Collections.singletonList(converted(1));
+		when(repository.findConverted(HKD)).thenReturn(convertedList);
+
+		assertFalse(service.listConverted(Collections.singletonList(HKD)).isPresent());
+	}
+
+	@DisplayName("ConversionView-Conversions of other transactions are not used though counts match")
+	@Test
+	public void listConverted_otherTransactions() {
+
+		when(transactionRepository.findAllTransactionIds()).thenReturn(Arrays.asList(1L, 3L));
+		List<ConvertedTransaction> convertedList=Arrays.asList(converted(1), converted(2));
+		when(repository.findConverted(HKD)).thenReturn(convertedList);
+
+		assertFalse(service.listConverted(Collections.singletonList(HKD)).isPresent());
+	}
+
+	@DisplayName("ConversionView-Rebuild skips a currency with every transaction converted")
+	@Test
+	public void rebuild_complete() {
+
+		when(repository.countNotConverted(HKD)).thenReturn(0L);
+
+		service.rebuild();
+
+		verifyNoInteractions(transactionRepository);
+	}
+
+	@DisplayName("ConversionView-Currency not kept is not used")
+	@Test
+	public void listConverted_notKept() {
+
+		assertFalse(service.listConverted(Collections.singletonList("Canada-Dollar")).isPresent());
+		verifyNoInteractions(repository);
+	}
+
+	@DisplayName("ConversionView-List stored conversions")
+	@Test
+	public void listConverted_success() {
+
+		when(transactionRepository.findAllTransactionIds()).thenReturn(Arrays.asList(1L, 2L));
+		List<ConvertedTransaction> convertedList=Arrays.asList(converted(1), converted(2));
+		when(repository.findConverted(HKD)).thenReturn(convertedList);
+
+		List<TransactionDTO> transactionList=service.listConverted(Collections.singletonList(HKD)).get();
+
+		assertEquals(2, transactionList.size());
+		assertEquals(2, transactionList.get(1).getTransactionId());
+		assertEquals("2024-03-31", transactionList.get(1).getExchangeRateEfferctiveDate());
+		assertEquals("2024-04-28", transactionList.get(1).getTransactionDate());
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<TransactionConversion> captureSaved() {
+		ArgumentCaptor<List<TransactionConversion>> captor=ArgumentCaptor.forClass(List.class);
+		verify(repository).saveAll(captor.capture());
+		return captor.getValue();
+	}
+
+	private Transaction transaction(long id, String date, String amount) {
+		return Transaction.builder()
+				.transactionId(id)
+				.description("Transaction " + id)
+				.amount(new BigDecimal(amount))
+				.createdAt(timestamp(date))
+				.build();
+	}
+
+	private Timestamp timestamp(String date) {
+		return Timestamp.from(Instant.parse(date + "T00:00:00Z"));
+	}
+
+	private ExchangeRate rate(String effectiveDate, String rate) {
+		return ExchangeRate.builder()
+				.countryCurrencyDesc(HKD)
+				.exchangeRate(new BigDecimal(rate))
+				.effectiveDate(effectiveDate)
+				.build();
+	}
+
+	private ConvertedTransaction converted(long id) {
+		ConvertedTransaction converted=mock(ConvertedTransaction.class);
+		lenient().when(converted.getTransactionId()).thenReturn(id);
+		lenient().when(converted.getEffectiveDate()).thenReturn(LocalDate.parse("2024-03-31"));
+		lenient().when(converted.getTransactionDate()).thenReturn(LocalDate.parse("2024-04-28"));
+		return converted;
+	}
+}
@@ -0,0 +1,262 @@
+package com.wex.purchaser.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.wex.purchaser.entity.StoredExchangeRate;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.fiscalapi.ExchangeRate;
+import com.wex.purchaser.fiscalapi.FiscalApi;
+import com.wex.purchaser.fiscalapi.RateTimeline;
+import com.wex.purchaser.repository.ExchangeRateRepository;
+import com.wex.purchaser.repository.ExchangeRateRepository.StoredDateRange;
+import com.wex.purchaser.repository.ExchangeRateWriter;
+
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateServiceTest {
+
+	private static final List<String> HKD=Collections.singletonList("Hong Kong-Dollar");
+	
+	@InjectMocks
+	private ExchangeRateService service;
+	
+	@Mock
+	private ExchangeRateRepository repository;
+	
+	@Mock
+	private ExchangeRateWriter writer;
+	
+	@Mock
+	private FiscalApi api;
+	
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
+	
+	@DisplayName("ExchangeRate-Nothing stored fetch from required date")
+	@Test
+	public void loadTimelines_emptyStore() throws ServiceException {
+		
+		when(writer.insertIfAbsent(anyList())).thenAnswer(i->i.getArgument(0));
+		when(repository.findStoredDateRange(HKD)).thenReturn(new ArrayList<>());
+		when(api.fetchExchangeRate(eq(HKD), eq("2023-10-28"), isNull(), any())).thenAnswer(pages(dtoList("2023-12-31")));
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31"));
+		
+		RateTimeline timeline=service.loadTimelines(HKD, "2023-10-28").get("Hong Kong-Dollar");
+		
+		//the fetched rate is taken from the page, not read back
+		assertEquals(1, timeline.size());
+		assertEquals("2023-12-31", timeline.getEffectiveDate(0));
+		verify(writer).insertIfAbsent(anyList());
+		verify(eventPublisher).publishEvent(any(ExchangeRatesStoredEvent.class));
+	}
+	
+	@DisplayName("ExchangeRate-Rates stored meanwhile by another load are not stored again")
+	@Test
+	public void loadTimelines_storedConcurrently() throws ServiceException {
+		
+		when(writer.insertIfAbsent(anyList())).thenReturn(new ArrayList<>());
+		when(repository.findStoredDateRange(HKD)).thenReturn(new ArrayList<>());
+		when(api.fetchExchangeRate(eq(HKD), eq("2023-10-28"), isNull(), any())).thenAnswer(pages(dtoList("2023-12-31")));
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31"));
+		
+		RateTimeline timeline=service.loadTimelines(HKD, "2023-10-28").get("Hong Kong-Dollar");
+		
+		assertEquals(1, timeline.size());
+		verify(repository, never()).saveAll(anyList());
+		verifyNoInteractions(eventPublisher);
+	}
+	
+	@DisplayName("ExchangeRate-Only dates newer than stored are fetched")
+	@Test
+	public void loadTimelines_delta() throws ServiceException {
+		
+		List<StoredDateRange> storedRanges=Collections.singletonList(range("2023-09-30", "2023-12-31"));
+		when(repository.findStoredDateRange(HKD)).thenReturn(storedRanges);
+		when(api.fetchExchangeRate(eq(HKD), eq("2024-01-01"), isNull(), any())).thenAnswer(pages(new ArrayList<>()));
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31"));
+		
+		RateTimeline timeline=service.loadTimelines(HKD, "2023-10-28").get("Hong Kong-Dollar");
+		
+		assertEquals(1, timeline.size());
+		assertFalse(timeline.isStale());
+		verify(api, times(1)).fetchExchangeRate(anyList(), anyString(), any(), any());
+		verify(writer, never()).insertIfAbsent(anyList());
+	}
+	
+	@DisplayName("ExchangeRate-Stored rates are used and marked stale when fiscal API is down")
+	@Test
+	public void loadTimelines_outage() throws ServiceException {
+		
+		List<StoredDateRange> storedRanges=Collections.singletonList(range("2023-09-30", "2023-12-31"));
+		when(repository.findStoredDateRange(HKD)).thenReturn(storedRanges);
+		when(api.fetchExchangeRate(eq(HKD), eq("2024-01-01"), isNull(), any())).thenThrow(new ResourceAccessException("timeout"));
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31"));
+		
+		RateTimeline timeline=service.loadTimelines(HKD, "2023-10-28").get("Hong Kong-Dollar");
+		
+		assertEquals(1, timeline.size());
+		assertTrue(timeline.isStale());
+	}
+	
+	@DisplayName("ExchangeRate-Pages are stored as they arrive and kept when a later page fails")
+	@Test
+	public void loadTimelines_pageFailed() throws ServiceException {
+		
+		List<StoredDateRange> storedRanges=Collections.singletonList(range("2023-09-30", "2023-12-31"));
+		when(writer.insertIfAbsent(anyList())).thenAnswer(i->i.getArgument(0));
+		when(repository.findStoredDateRange(HKD)).thenReturn(storedRanges);
+		when(api.fetchExchangeRate(eq(HKD), eq("2024-01-01"), isNull(), any())).thenAnswer(invocation->{
+			Consumer<List<ExchangeRate>> consumer=invocation.getArgument(3);
+			consumer.accept(dtoList("2024-03-31"));
+			throw new ResourceAccessException("timeout");
+		});
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31", "2024-03-31"));
+		
+		RateTimeline timeline=service.loadTimelines(HKD, "2023-10-28").get("Hong Kong-Dollar");
+		
+		//the stored rate of the fetched page is not added again
+		assertEquals(2, timeline.size());
+		assertEquals("2024-03-31", timeline.getEffectiveDate(1));
+		assertTrue(timeline.isStale());
+		verify(writer, times(1)).insertIfAbsent(anyList());
+		verify(eventPublisher).publishEvent(any(ExchangeRatesStoredEvent.class));
+	}
+	
+	@DisplayName("ExchangeRate-Nothing stored and fiscal API is down")
+	@Test
+	public void loadTimelines_outageEmptyStore() {
+		
+		when(repository.findStoredDateRange(HKD)).thenReturn(new ArrayList<>());
+		when(api.fetchExchangeRate(eq(HKD), eq("2023-10-28"), isNull(), any())).thenThrow(new ResourceAccessException("timeout"));
+		
+		Exception exception=assertThrows(ServiceException.class, ()->{
+			service.loadTimelines(HKD, "2023-10-28");
+		});
+		
+		assertTrue(exception.getMessage().contains("Exchange rate service not available"));
+	}
+	
+	@DisplayName("ExchangeRate-Async load stores each page as it arrives")
+	@Test
+	public void loadTimelinesAsync_emptyStore() throws Exception {
+		
+		ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+		
+		CompletableFuture<Integer> pending=new CompletableFuture<>();
+		List<Consumer<List<ExchangeRate>>> consumers=new ArrayList<>();
+		when(writer.insertIfAbsent(anyList())).thenAnswer(i->i.getArgument(0));
+		when(repository.findStoredDateRange(HKD)).thenReturn(new ArrayList<>());
+		when(api.fetchExchangeRateAsync(eq(HKD), eq("2023-10-28"), isNull(), any())).thenAnswer(invocation->{
+			consumers.add(invocation.getArgument(3));
+			return pending;
+		});
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31"));
+		
+		CompletableFuture<Map<String, RateTimeline>> future=service.loadTimelinesAsync(HKD, "2023-10-28");
+		assertFalse(future.isDone());
+		
+		consumers.get(0).accept(dtoList("2023-12-31"));
+		verify(writer).insertIfAbsent(anyList());
+		assertFalse(future.isDone());
+		
+		pending.complete(1);
+		
+		assertEquals(1, future.get(10, TimeUnit.SECONDS).get("Hong Kong-Dollar").size());
+		verify(writer, times(1)).insertIfAbsent(anyList());
+	}
+	
+	@DisplayName("ExchangeRate-Async load stores no page after a page failed to store")
+	@Test
+	public void loadTimelinesAsync_storeFailed() throws Exception {
+		
+		ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+		
+		List<StoredDateRange> storedRanges=Collections.singletonList(range("2023-09-30", "2023-12-31"));
+		when(writer.insertIfAbsent(anyList())).thenThrow(new IllegalStateException("database down"));
+		when(repository.findStoredDateRange(HKD)).thenReturn(storedRanges);
+		when(api.fetchExchangeRateAsync(eq(HKD), eq("2024-01-01"), isNull(), any())).thenAnswer(invocation->{
+			Consumer<List<ExchangeRate>> consumer=invocation.getArgument(3);
+			consumer.accept(dtoList("2024-03-31"));
+			consumer.accept(dtoList("2024-06-30"));
+			return CompletableFuture.completedFuture(2);
+		});
+		when(repository.findByCurrencyInAndEffectiveDateGreaterThanEqualOrderByEffectiveDate(HKD, LocalDate.parse("2023-10-28")))
+		.thenReturn(entityList("2023-12-31"));
+		
+		RateTimeline timeline=service.loadTimelinesAsync(HKD, "2023-10-28").get(10, TimeUnit.SECONDS).get("Hong Kong-Dollar");
+		
+		assertEquals(1, timeline.size());
+		assertTrue(timeline.isStale());
+		verify(writer, times(1)).insertIfAbsent(anyList());
+	}
+	
+	private List<ExchangeRate> dtoList(String effectiveDate) {
+		List<ExchangeRate> rateList=new ArrayList<>();
+		rateList.add(ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.821"))
+				.effectiveDate(effectiveDate)
+				.build());
+		return rateList;
+	}
+	
+	private List<StoredExchangeRate> entityList(String... effectiveDates) {
+		List<StoredExchangeRate> rateList=new ArrayList<>();
+		for (String effectiveDate : effectiveDates) {
+			rateList.add(StoredExchangeRate.builder()
+					.currency("Hong Kong-Dollar")
+					.exchangeRate(new BigDecimal("7.821"))
+					.effectiveDate(LocalDate.parse(effectiveDate))
+					.build());
+		}
+		return rateList;
+	}
+	
+	private StoredDateRange range(String earliest, String latest) {
+		StoredDateRange range=mock(StoredDateRange.class);
+		when(range.getCurrency()).thenReturn("Hong Kong-Dollar");
+		lenient().when(range.getEarliest()).thenReturn(LocalDate.parse(earliest));
+		when(range.getLatest()).thenReturn(LocalDate.parse(latest));
+		return range;
+	}
+	
+	//fetch answer passing the pages to the consumer
+	@SafeVarargs
+	private final Answer<Integer> pages(List<ExchangeRate>... pages) {
+		return invocation->{
+			Consumer<List<ExchangeRate>> consumer=invocation.getArgument(3);
+			for (List<ExchangeRate> page : pages) {
+				consumer.accept(page);
+			}
+			return pages.length;
+		};
+	}
+}
@@ -0,0 +1,193 @@
+package com.wex.purchaser.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.wex.purchaser.config.RateImportProperties;
+import com.wex.purchaser.dto.RateImportResultDTO;
+import com.wex.purchaser.exception.ServiceException;
+import com.wex.purchaser.repository.ExchangeRateWriter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Imports export files into the migrated schema of an in-memory H2 database
+ */
+public class RateImportServiceTest {
+	
+	private RateImportService service;
+	
+	private HikariDataSource dataSource;
+	
+	private JdbcTemplate jdbcTemplate;
+	
+	private final List<Object> events=new ArrayList<>();
+	
+	@TempDir
+	Path dir;
+	
+	@BeforeEach
+	public void setup() {
+		
+		HikariConfig config=new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:rate-import;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setPassword("");
+		dataSource=new HikariDataSource(config);
+		Flyway.configure().dataSource(dataSource).load().migrate();
+		jdbcTemplate=new JdbcTemplate(dataSource);
+		
+		RateImportProperties properties=new RateImportProperties();
+		properties.setBatchSize(100);
+		
+		ExchangeRateWriter writer=new ExchangeRateWriter();
+		ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(writer, "transactionManager", new DataSourceTransactionManager(dataSource));
+		
+		service=new RateImportService();
+		ReflectionTestUtils.setField(service, "writer", writer);
+		ReflectionTestUtils.setField(service, "properties", properties);
+		ReflectionTestUtils.setField(service, "eventPublisher", (ApplicationEventPublisher) events::add);
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		jdbcTemplate.execute("drop all objects");
+		dataSource.close();
+	}
+	
+	@DisplayName("RateImport-CSV download is imported once, invalid rows rejected")
+	@Test
+	public void importFile_csv() throws Exception {
+		
+		Path file=dir.resolve("RprtRateXchg.csv");
+		Files.write(file, Arrays.asList(
+				"\uFEFFRecord Date,Country,Currency,Country - Currency Description,Exchange Rate,Effective Date",
+				"2024-03-31,Canada,Dollar,Canada-Dollar,1.35,2024-03-31",
+				"2024-03-31,\"Korea, Republic Of\",Won,\"Korea, Republic Of-Won\",1344.5,2024-03-31",
+				"2023-12-31,Canada,Dollar,Canada-Dollar,1.326,2023-12-31",
+				"2023-12-31,Canada,Dollar,Canada-Dollar,,2023-12-31",
+				""), StandardCharsets.UTF_8);
+		
+		RateImportResultDTO result=service.importFile(file);
+		
+		assertEquals(4, result.getRowCount());
+		assertEquals(3, result.getInsertedCount());
+		assertEquals(1, result.getRejectedCount());
+		assertEquals(0, new BigDecimal("1344.5").compareTo(jdbcTemplate.queryForObject(
+				"select exchange_rate from exchange_rates where currency = ?", BigDecimal.class, "Korea, Republic Of-Won")));
+		assertEquals(1, events.size());
+		assertEquals(3, ((ExchangeRatesStoredEvent) events.get(0)).getRateList().size());
+		
+		result=service.importFile(file);
+		
+		assertEquals(0, result.getInsertedCount());
+		assertEquals(3, result.getSkippedCount());
+		assertEquals(3, jdbcTemplate.queryForObject("select count(*) from exchange_rates", Integer.class));
+		assertEquals(1, events.size());
+	}
+	
+	@DisplayName("RateImport-JSON in fiscal API format is imported")
+	@Test
+	public void importFile_json() throws Exception {
+		
+		Path file=dir.resolve("rates.json");
+		Files.write(file, ("{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.35\""
+				+ ",\"record_date\":\"2024-03-31\",\"effective_date\":\"2024-03-31\"}],\"meta\":{\"count\":1}}").getBytes(StandardCharsets.UTF_8));
+		
+		RateImportResultDTO result=service.importFile(file);
+		
+		assertEquals(1, result.getInsertedCount());
+		assertEquals(LocalDate.parse("2024-03-31"), jdbcTemplate.queryForObject(
+				"select record_date from exchange_rates where currency = 'Canada-Dollar'", LocalDate.class));
+	}
+	
+	@DisplayName("RateImport-File without required columns")
+	@Test
+	public void importFile_missingColumn() throws IOException {
+		
+		Path file=dir.resolve("rates.csv");
+		Files.write(file, Arrays.asList("Country,Exchange Rate", "Canada,1.35"), StandardCharsets.UTF_8);
+		
+		Exception exception=assertThrows(ServiceException.class, ()->service.importFile(file));
+		assertTrue(exception.getMessage().contains("currency"));
+		
+		assertThrows(ServiceException.class, ()->service.importFile(dir.resolve("missing.csv")));
+	}
+	
+	@DisplayName("RateImport-Quoted values spanning lines stay in one row")
+	@Test
+	public void importFile_multiLineValue() throws Exception {
+		
+		Path file=dir.resolve("rates.csv");
+		Files.write(file, Arrays.asList(
+				"Record Date,Country,Country - Currency Description,Exchange Rate,Effective Date",
+				"2024-03-31,\"Korea,",
+				"Republic Of\",\"Korea, Republic Of-Won\",1344.5,2024-03-31",
+				"2024-03-31,Canada,Canada-Dollar,1.35,2024-03-31"), StandardCharsets.UTF_8);
+		
+		RateImportResultDTO result=service.importFile(file);
+		
+		assertEquals(2, result.getRowCount());
+		assertEquals(2, result.getInsertedCount());
+		
+		Files.write(file, Arrays.asList(
+				"Record Date,Country,Country - Currency Description,Exchange Rate,Effective Date",
+				"2024-03-31,\"Korea, Republic Of,Korea, Republic Of-Won,1344.5,2024-03-31"), StandardCharsets.UTF_8);
+		
+		Exception exception=assertThrows(ServiceException.class, ()->service.importFile(file));
+		assertTrue(exception.getMessage().contains("quoted value"));
+	}
+	
+	@DisplayName("RateImport-Rows per second of a large CSV file")
+	@Test
+	public void importFile_throughput() throws Exception {
+		
+		int currencies=20;
+		int days=2500;
+		Path file=dir.resolve("large.csv");
+		try (BufferedWriter writer=Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("record_date,country_currency_desc,exchange_rate,effective_date\n");
+			LocalDate first=LocalDate.parse("2001-01-01");
+			for (int d=0; d<days; d++) {
+				String date=first.plusDays(d).toString();
+				for (int c=0; c<currencies; c++) {
+					writer.write(date + ",Country" + c + "-Currency," + (1 + c + d % 100 / 100.0) + "," + date + "\n");
+				}
+			}
+		}
+		
+		RateImportResultDTO result=service.importFile(file);
+		
+		//the import logs the throughput itself
+		assertEquals(currencies * days, result.getRowCount());
+		assertEquals(currencies * days, result.getInsertedCount());
+		assertEquals(0, result.getSkippedCount());
+		assertEquals(0, result.getRejectedCount());
+		assertEquals(result.getRowCount() * 1000.0 / result.getMillis(), result.getRowsPerSecond(), 0.001);
+		assertEquals(currencies * days, jdbcTemplate.queryForObject("select count(*) from exchange_rates", Integer.class));
+		assertEquals(currencies, jdbcTemplate.queryForObject("select count(distinct currency) from exchange_rates", Integer.class));
+		assertEquals(currencies * days, ((ExchangeRatesStoredEvent) events.get(0)).getRateList().size());
+	}
+}
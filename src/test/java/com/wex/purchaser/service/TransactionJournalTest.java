@@ -0,0 +1,121 @@
+package com.wex.purchaser.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.wex.purchaser.entity.Transaction;
+
+public class TransactionJournalTest {
+	
+	private static final long SEGMENT_SIZE=1024 * 1024;
+	
+	@TempDir
+	Path dir;
+	
+	@DisplayName("TransactionJournal-Transactions are read back as appended")
+	@Test
+	public void append_recover() throws IOException {
+		
+		Path file=dir.resolve("transactions.journal");
+		try (TransactionJournal journal=new TransactionJournal(file, SEGMENT_SIZE)) {
+			journal.append(transaction(1, "Coffee", "3.50"));
+			journal.append(transaction(2, "Café crème", "1234567890.99"));
+			journal.force();
+		}
+		
+		try (TransactionJournal journal=new TransactionJournal(file, SEGMENT_SIZE)) {
+			List<Transaction> transactions=journal.recover();
+			assertEquals(2, transactions.size());
+			assertEquals(1, transactions.get(0).getTransactionId());
+			assertEquals("Café crème", transactions.get(1).getDescription());
+			assertEquals(new BigDecimal("1234567890.99"), transactions.get(1).getAmount());
+			assertEquals(new Timestamp(1714262400000L), transactions.get(1).getCreatedAt());
+			
+			journal.clear();
+			assertTrue(journal.recover().isEmpty());
+			assertEquals(0, journal.size());
+		}
+	}
+	
+	@DisplayName("TransactionJournal-Record cut short by a crash is dropped and later appends are kept")
+	@Test
+	public void recover_tornRecord() throws IOException {
+		
+		Path file=dir.resolve("transactions.journal");
+		try (TransactionJournal journal=new TransactionJournal(file, SEGMENT_SIZE)) {
+			journal.append(transaction(1, "Coffee", "3.50"));
+			journal.append(transaction(2, "Tea", "2.80"));
+		}
+		Path segment=dir.resolve("transactions.journal.1");
+		long size=Files.size(segment);
+		try (FileChannel channel=FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 3);
+		}
+		
+		try (TransactionJournal journal=new TransactionJournal(file, SEGMENT_SIZE)) {
+			List<Transaction> transactions=journal.recover();
+			assertEquals(1, transactions.size());
+			journal.append(transaction(3, "Cake", "4.20"));
+		}
+		
+		try (TransactionJournal journal=new TransactionJournal(file, SEGMENT_SIZE)) {
+			List<Transaction> transactions=journal.recover();
+			assertEquals(2, transactions.size());
+			assertEquals("Cake", transactions.get(1).getDescription());
+		}
+	}
+	
+	@DisplayName("TransactionJournal-Segments are deleted once their transactions are released")
+	@Test
+	public void release_segments() throws IOException {
+		
+		Path file=dir.resolve("transactions.journal");
+		try (TransactionJournal journal=new TransactionJournal(file, 32)) {
+			long first=journal.append(transaction(1, "Coffee", "3.50"));
+			journal.append(transaction(2, "Tea", "2.80"));
+			long last=journal.append(transaction(3, "Cake", "4.20"));
+			assertTrue(last > first);
+			assertTrue(Files.exists(dir.resolve("transactions.journal." + first)));
+			
+			//each record starts a new segment, released while later records are still pending
+			journal.release(first, 1);
+			assertFalse(Files.exists(dir.resolve("transactions.journal." + first)));
+			assertTrue(journal.size() > 0);
+			
+			for (long segment=first + 1; segment<=last; segment++) {
+				journal.release(segment, 1);
+			}
+			assertEquals(0, journal.size());
+			
+			journal.append(transaction(4, "Juice", "3.10"));
+		}
+		
+		try (TransactionJournal journal=new TransactionJournal(file, 32)) {
+			List<Transaction> transactions=journal.recover();
+			assertEquals(1, transactions.size());
+			assertEquals(4, transactions.get(0).getTransactionId());
+		}
+	}
+	
+	private Transaction transaction(long transactionId, String description, String amount) {
+		
+		return Transaction.builder()
+				.transactionId(transactionId)
+				.description(description)
+				.amount(new BigDecimal(amount))
+				.createdAt(new Timestamp(1714262400000L))
+				.build();
+	}
+}
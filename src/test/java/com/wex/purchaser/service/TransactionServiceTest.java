@@ -4,8 +4,22 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -14,18 +28,34 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.wex.purchaser.dto.CreateTransactionResultDTO;
 import com.wex.purchaser.dto.TransactionDTO;
+import com.wex.purchaser.dto.TransactionPageDTO;
+import com.wex.purchaser.dto.TransactionStatisticsDTO;
 import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.entity.TransactionDailyTotal;
 import com.wex.purchaser.exception.ServiceException;
 import com.wex.purchaser.fiscalapi.ExchangeRate;
-import com.wex.purchaser.fiscalapi.FiscalApi;
+import com.wex.purchaser.fiscalapi.ExchangeRateCache;
+import com.wex.purchaser.fiscalapi.RateTimeline;
 import com.wex.purchaser.message.CreateTransactionRequest;
+import com.wex.purchaser.message.ListTransactionRequest;
 import com.wex.purchaser.repository.TransactionRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,7 +68,21 @@ public class TransactionServiceTest {
 	private TransactionRepository repository;
 	
 	@Mock
-	private FiscalApi api;
+	private ExchangeRateCache rateCache;
+	
+	@Mock
+	private ConversionViewService conversionView;
+	
+	@Mock
+	private TransactionStatisticsService statistics;
+	
+	@Mock
+	private TransactionWriteBehind writeBehind;
+	
+	@Spy
+	private MeterRegistry meterRegistry=new SimpleMeterRegistry();
+	
+	private static final List<String> HKD=Collections.singletonList("Hong Kong-Dollar");
 	
 	private SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
 	
@@ -61,6 +105,7 @@ public class TransactionServiceTest {
 	
 	@BeforeEach
 	public void setup() {
+		df.setTimeZone(TimeZone.getTimeZone("UTC"));
 	}
 	
 	@DisplayName("Transaction-Insert success")
@@ -86,6 +131,29 @@ public class TransactionServiceTest {
 		assertEquals(new BigDecimal(123), savedData.getAmount());
 	}
 	
+	@DisplayName("Transaction-Insert in write-behind mode returns the journaled transaction")
+	@Test
+	public void createTransaction_writeBehind() throws ServiceException {
+		
+		CreateTransactionRequest request=new CreateTransactionRequest();
+		request.setDescription("Transaction Description");
+		request.setAmount(new BigDecimal("12.30"));
+		
+		when(writeBehind.isEnabled()).thenReturn(true);
+		when(writeBehind.submit(Mockito.any(Transaction.class))).thenAnswer(i -> {
+			Transaction submitted=i.getArgument(0);
+			submitted.setTransactionId(51);
+			return submitted;
+		});
+		
+		Transaction transaction=service.createTransaction(request);
+		
+		assertEquals(51, transaction.getTransactionId());
+		assertEquals(new BigDecimal("12.30"), transaction.getAmount());
+		verify(repository, never()).save(Mockito.any(Transaction.class));
+		verifyNoInteractions(statistics, conversionView);
+	}
+	
 	@DisplayName("Transaction-Insert with null description")
 	@Test
 	public void createTransaction_NullDescription(){
@@ -181,6 +249,207 @@ public class TransactionServiceTest {
 		
 	}
 	
+	@DisplayName("Transaction-Enquire created transaction without reading DB again")
+	@Test
+	public void enquireTransactions_latestAfterCreate() throws Exception {
+		
+		Transaction transaction1=Transaction.builder()
+				.transactionId(1)
+				.description("Transaction 1 Description")
+				.amount(new BigDecimal(1000))
+				.createdAt(new Timestamp( df.parse("2024-04-28").getTime() ))
+				.build();
+		
+		ExchangeRate rate1=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.831"))
+				.effectiveDate("2024-03-31")
+				.build();
+		ExchangeRate rate2=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.811"))
+				.effectiveDate(LocalDate.now(ZoneOffset.UTC).minusDays(1).toString())
+				.build();
+		
+		CreateTransactionRequest request=new CreateTransactionRequest();
+		request.setDescription("Transaction 2 Description");
+		request.setAmount(new BigDecimal(100));
+		
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1);
+		when(repository.save(Mockito.any(Transaction.class))).thenAnswer(i->{
+			Transaction saved=i.getArgument(0);
+			saved.setTransactionId(2);
+			return saved;
+		});
+		when(rateCache.getTimelines(eq(HKD), anyString()))
+		.thenReturn(timelines(Arrays.asList(rate1, rate2)));
+		
+		ReflectionTestUtils.setField(service, "clock", Clock.fixed(Instant.parse("2024-04-28T00:00:00Z"), ZoneOffset.UTC));
+		assertEquals(1, service.enquireLastTransaction("Hong Kong-Dollar").getTransactionId());
+		
+		service.createTransaction(request);
+		
+		TransactionDTO transaction=service.enquireLastTransaction("Hong Kong-Dollar");
+		assertEquals(2, transaction.getTransactionId());
+		assertEquals(0, new BigDecimal("781.10").compareTo(transaction.getAmount()));
+		verify(repository, times(1)).findFirstByOrderByCreatedAtDescTransactionIdDesc();
+	}
+	
+	@DisplayName("Transaction-Enquire reads DB again for transactions created by other instances")
+	@Test
+	public void enquireTransactions_latestFromOtherInstance() throws Exception {
+		
+		Transaction transaction1=Transaction.builder()
+				.transactionId(1)
+				.description("Transaction 1 Description")
+				.amount(new BigDecimal(1000))
+				.createdAt(new Timestamp( df.parse("2024-04-28").getTime() ))
+				.build();
+		Transaction transaction3=Transaction.builder()
+				.transactionId(3)
+				.description("Transaction 3 Description")
+				.amount(new BigDecimal(100))
+				.createdAt(new Timestamp( df.parse("2024-04-29").getTime() ))
+				.build();
+		ExchangeRate rate=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.831"))
+				.effectiveDate("2024-03-31")
+				.build();
+		
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1, transaction3);
+		when(rateCache.getTimelines(eq(HKD), anyString())).thenReturn(timelines(Arrays.asList(rate)));
+		
+		ReflectionTestUtils.setField(service, "clock", Clock.fixed(Instant.parse("2024-04-29T00:00:00Z"), ZoneOffset.UTC));
+		assertEquals(1, service.enquireLastTransaction("Hong Kong-Dollar").getTransactionId());
+		assertEquals(1, service.enquireLastTransaction("Hong Kong-Dollar").getTransactionId());
+		
+		ReflectionTestUtils.setField(service, "clock", Clock.fixed(Instant.parse("2024-04-29T00:00:02Z"), ZoneOffset.UTC));
+		assertEquals(3, service.enquireLastTransaction("Hong Kong-Dollar").getTransactionId());
+		verify(repository, times(2)).findFirstByOrderByCreatedAtDescTransactionIdDesc();
+	}
+	
+	@DisplayName("Transaction-List filtered in DB with rates from the earliest matched transaction")
+	@SuppressWarnings("unchecked")
+	@Test
+	public void listTransactions_filtered() throws Exception {
+		
+		Transaction transaction1=Transaction.builder()
+				.transactionId(5)
+				.description("Coffee")
+				.amount(new BigDecimal(20))
+				.createdAt(new Timestamp( df.parse("2024-04-28").getTime() ))
+				.build();
+		
+		ExchangeRate rate1=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.831"))
+				.effectiveDate("2024-03-31")
+				.build();
+		
+		ListTransactionRequest request=new ListTransactionRequest();
+		request.setCurrency("Hong Kong-Dollar");
+		request.setFromDate("2024-04-01");
+		request.setToDate("2024-04-30");
+		request.setMinAmount(new BigDecimal(10));
+		request.setDescription("Cof");
+		
+		when(repository.findAll(any(Specification.class), any(Sort.class))).thenReturn(Collections.singletonList(transaction1));
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(Collections.singletonList(rate1)));
+		
+		List<TransactionDTO> transactionList=service.listTransactionFiltered(request);
+		
+		assertEquals(1, transactionList.size());
+		assertEquals(0, new BigDecimal("156.62").compareTo(transactionList.get(0).getAmount()));
+		verify(repository, never()).findAll();
+		verifyNoInteractions(conversionView);
+	}
+	
+	@DisplayName("Transaction-List without filter lists all transactions")
+	@Test
+	public void listTransactions_noFilter() throws Exception {
+		
+		ListTransactionRequest request=new ListTransactionRequest();
+		request.setCurrency("Hong Kong-Dollar");
+		
+		when(conversionView.listConverted(HKD)).thenReturn(Optional.empty());
+		when(repository.findAll()).thenReturn(new ArrayList<>());
+		
+		assertTrue(service.listTransactionFiltered(request).isEmpty());
+	}
+	
+	@DisplayName("Transaction-List with invalid filters")
+	@Test
+	public void listTransactions_invalidFilter() {
+		
+		ListTransactionRequest request=new ListTransactionRequest();
+		request.setCurrency("Hong Kong-Dollar");
+		request.setFromDate("2024-05-01");
+		request.setToDate("2024-04-30");
+		
+		Exception exception=assertThrows(ServiceException.class, ()->service.listTransactionFiltered(request));
+		assertEquals("fromDate should not be after toDate", exception.getMessage());
+		
+		request.setFromDate("2024/04/01");
+		exception=assertThrows(ServiceException.class, ()->service.listTransactionFiltered(request));
+		assertEquals("Invalid fromDate, expected yyyy-MM-dd", exception.getMessage());
+		
+		request.setFromDate(null);
+		request.setMinAmount(new BigDecimal(10));
+		request.setMaxAmount(new BigDecimal(5));
+		exception=assertThrows(ServiceException.class, ()->service.listTransactionFiltered(request));
+		assertEquals("minAmount should not be greater than maxAmount", exception.getMessage());
+		
+		verifyNoInteractions(repository);
+	}
+	
+	@DisplayName("Transaction-Statistics by month from daily totals")
+	@Test
+	public void getStatistics_monthly() throws Exception {
+		
+		ExchangeRate rate1=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.821"))
+				.effectiveDate("2023-12-31")
+				.build();
+		ExchangeRate rate2=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal("7.831"))
+				.effectiveDate("2024-03-31")
+				.build();
+		
+		List<TransactionDailyTotal> totals=Arrays.asList(
+				new TransactionDailyTotal(LocalDate.parse("2024-03-30"), 2, new BigDecimal("100.00")),
+				new TransactionDailyTotal(LocalDate.parse("2024-03-31"), 1, new BigDecimal("10.00")),
+				new TransactionDailyTotal(LocalDate.parse("2024-04-01"), 1, new BigDecimal("1000.00")));
+		
+		when(statistics.findDailyTotals(LocalDate.parse("2024-03-01"), null)).thenReturn(totals);
+		when(rateCache.getTimelines(HKD, "2023-09-30"))
+		.thenReturn(timelines(Arrays.asList(rate1, rate2)));
+		
+		List<TransactionStatisticsDTO> statisticsList=service.getStatistics("Hong Kong-Dollar", "month", "2024-03-01", null);
+		
+		assertEquals(2, statisticsList.size());
+		//rate of 2024-03-31 applies from the day after
+		assertEquals("2024-03", statisticsList.get(0).getPeriod());
+		assertEquals(3, statisticsList.get(0).getTransactionCount());
+		assertEquals(new BigDecimal("110.00"), statisticsList.get(0).getAmountInUSD());
+		assertEquals(new BigDecimal("860.31"), statisticsList.get(0).getAmount());
+		assertEquals(new BigDecimal("286.77"), statisticsList.get(0).getAverageAmount());
+		assertEquals("2024-04", statisticsList.get(1).getPeriod());
+		assertEquals(new BigDecimal("7831.00"), statisticsList.get(1).getAmount());
+		verifyNoInteractions(repository);
+	}
+	
+	@DisplayName("Transaction-Statistics with invalid period")
+	@Test
+	public void getStatistics_invalidPeriod() {
+		
+		Exception exception=assertThrows(ServiceException.class, ()->service.getStatistics("Hong Kong-Dollar", "WEEK", null, null));
+		assertEquals("Period should be DAY or MONTH", exception.getMessage());
+	}
+	
 	@DisplayName("Transaction-Enquire success")
 	@Test
 	public void enquireTransactions_success() throws Exception {
@@ -212,22 +481,69 @@ public class TransactionServiceTest {
 		rates.add(rate2);
 		rates.add(rate3);
 		
-		when(repository.findFirstByOrderByCreatedAt()).thenReturn(transaction1);
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 		
 		TransactionDTO transaction=service.enquireLastTransaction("Hong Kong-Dollar");
 		
 		assertEquals("Transaction 1 Description", transaction.getDescription());
 		assertEquals(0, new BigDecimal(7831).compareTo(transaction.getAmount()));
 		assertEquals(0, new BigDecimal(1000).compareTo(transaction.getAmountInUSD()));
+		assertEquals(1, meterRegistry.get("purchaser.transaction.enquire").tag("outcome", "SUCCESS").timer().count());
+		assertEquals(1, meterRegistry.get("purchaser.transaction.convert.size").summary().totalAmount());
 		assertEquals(0, new BigDecimal(7.831).compareTo(transaction.getExchangeRate()));
 		assertEquals("2024-04-28", transaction.getTransactionDate());
 		assertEquals("Hong Kong-Dollar", transaction.getCurrency());
 				
 	}
 	
+	@DisplayName("Transaction-Enquire async success")
+	@Test
+	public void enquireTransactionsAsync_success() throws Exception {
+		
+		ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+		
+		Transaction transaction1=Transaction.builder()
+				.transactionId(1)
+				.description("Transaction 1 Description")
+				.amount(new BigDecimal(1000))
+				.createdAt(new Timestamp( df.parse("2024-04-28").getTime() ))
+				.build();
+		
+		ExchangeRate rate1=ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal(7.831))
+				.effectiveDate("2024-03-31")
+				.build();
+		
+		CompletableFuture<Map<String, RateTimeline>> pending=new CompletableFuture<>();
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1);
+		when(rateCache.getTimelinesAsync(HKD, "2023-10-28")).thenReturn(pending);
+		
+		CompletableFuture<List<TransactionDTO>> future=service.enquireLastTransactionsAsync("Hong Kong-Dollar");
+		assertFalse(future.isDone());
+		
+		pending.complete(timelines(Collections.singletonList(rate1)));
+		
+		TransactionDTO transaction=future.get(10, TimeUnit.SECONDS).get(0);
+		assertEquals("Transaction 1 Description", transaction.getDescription());
+		assertEquals(0, new BigDecimal(7831).compareTo(transaction.getAmount()));
+		assertEquals("2024-03-31", transaction.getExchangeRateEfferctiveDate());
+	}
+	
+	@DisplayName("Transaction-Enquire async with null currency")
+	@Test
+	public void enquireTransactionsAsync_nullCurrency() {
+		
+		CompletableFuture<List<TransactionDTO>> future=service.enquireLastTransactionsAsync(null);
+		
+		ExecutionException exception=assertThrows(ExecutionException.class, ()->future.get(10, TimeUnit.SECONDS));
+		assertEquals("Currency must not be null", exception.getCause().getMessage());
+		verifyNoInteractions(repository);
+	}
+	
 	@DisplayName("Transaction-Enquire success 2dp scale ")
 	@Test
 	public void enquireTransactions_success_2DpScale() throws Exception {
@@ -247,10 +563,10 @@ public class TransactionServiceTest {
 		List<ExchangeRate> rates= new ArrayList<>();
 		rates.add(rate1);
 		
-		when(repository.findFirstByOrderByCreatedAt()).thenReturn(transaction1);
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 		
 		TransactionDTO transaction=service.enquireLastTransaction("Hong Kong-Dollar");
 		
@@ -275,6 +591,7 @@ public class TransactionServiceTest {
 	    String actualMessage = exception.getMessage();
 	
 	    assertTrue(actualMessage.contains(expectedMessage));
+	    assertEquals(1, meterRegistry.get("purchaser.transaction.enquire").tag("outcome", "REJECTED").timer().count());
 		
 	}
 	
@@ -297,10 +614,10 @@ public class TransactionServiceTest {
 		List<ExchangeRate> rates= new ArrayList<>();
 		rates.add(rate1);
 		
-		when(repository.findFirstByOrderByCreatedAt()).thenReturn(transaction1);
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 				
 		Exception exception=assertThrows(ServiceException.class, ()->{
 			service.enquireLastTransaction("Hong Kong-Dollar");
@@ -325,10 +642,10 @@ public class TransactionServiceTest {
 		
 		List<ExchangeRate> rates= new ArrayList<>();
 		
-		when(repository.findFirstByOrderByCreatedAt()).thenReturn(transaction1);
+		when(repository.findFirstByOrderByCreatedAtDescTransactionIdDesc()).thenReturn(transaction1);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 				
 		Exception exception=assertThrows(ServiceException.class, ()->{
 			service.enquireLastTransaction("Hong Kong-Dollar");
@@ -385,8 +702,8 @@ public class TransactionServiceTest {
 		
 		when(repository.findAll()).thenReturn(list);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-06-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-06-28"))
+		.thenReturn(timelines(rates));
 		
 		List<TransactionDTO> transactions=service.listTransaction("Hong Kong-Dollar");
 		
@@ -407,6 +724,25 @@ public class TransactionServiceTest {
 		
 	}
 	
+	@DisplayName("Transaction-List from stored conversions")
+	@Test
+	public void listTransaction_conversionView() throws Exception {
+		
+		TransactionDTO converted=TransactionDTO.builder()
+				.transactionId(1)
+				.currency("Hong Kong-Dollar")
+				.amount(new BigDecimal("7831.00"))
+				.build();
+		when(conversionView.listConverted(HKD)).thenReturn(Optional.of(Collections.singletonList(converted)));
+		
+		List<TransactionDTO> transactionList=service.listTransaction("Hong Kong-Dollar");
+		
+		assertEquals(1, transactionList.size());
+		assertEquals(new BigDecimal("7831.00"), transactionList.get(0).getAmount());
+		verify(repository, never()).findAll();
+		verifyNoInteractions(rateCache);
+	}
+	
 	@DisplayName("Transaction-List success 2dp scale")
 	@Test
 	public void listTransactions_success_2DpScale() throws Exception {
@@ -432,8 +768,8 @@ public class TransactionServiceTest {
 		
 		when(repository.findAll()).thenReturn(list);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 		
 		List<TransactionDTO> transactions=service.listTransaction("Hong Kong-Dollar");
 		
@@ -486,8 +822,8 @@ public class TransactionServiceTest {
 		
 		when(repository.findAll()).thenReturn(list);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 				
 		Exception exception=assertThrows(ServiceException.class, ()->{
 			service.listTransaction("Hong Kong-Dollar");
@@ -517,8 +853,8 @@ public class TransactionServiceTest {
 		
 		when(repository.findAll()).thenReturn(list);
 
-		when(api.parseExchangeRate("Hong Kong-Dollar", "2023-10-28"))
-		.thenReturn(rates);
+		when(rateCache.getTimelines(HKD, "2023-10-28"))
+		.thenReturn(timelines(rates));
 				
 		Exception exception=assertThrows(ServiceException.class, ()->{
 			service.listTransaction("Hong Kong-Dollar");
@@ -530,4 +866,213 @@ public class TransactionServiceTest {
 	    assertTrue(actualMessage.contains(expectedMessage));
 	}
 	
+	@DisplayName("Transaction-List page with next cursor")
+	@Test
+	public void listTransactionPage_success() throws Exception {
+		
+		List<Transaction> list=new ArrayList<>();
+		Transaction transaction1=Transaction.builder()
+				.transactionId(1)
+				.description("Transaction 1 Description")
+				.amount(new BigDecimal(2000))
+				.createdAt(new Timestamp( df.parse("2023-12-28").getTime() ))
+				.build();
+		Transaction transaction2=Transaction.builder()
+				.transactionId(2)
+				.description("Transaction 2 Description")
+				.amount(new BigDecimal(1000))
+				.createdAt(new Timestamp( df.parse("2024-04-28").getTime() ))
+				.build();
+		list.add(transaction1);
+		list.add(transaction2);
+		
+		List<ExchangeRate> rates= new ArrayList<>();
+		rates.add(ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal(7.831))
+				.effectiveDate("2024-03-31")
+				.build());
+		rates.add(ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal(7.841))
+				.effectiveDate("2023-09-30")
+				.build());
+		
+		when(repository.findByOrderByCreatedAtAscTransactionIdAsc(PageRequest.of(0, 2))).thenReturn(list);
+		when(repository.findPageAfter(transaction2.getCreatedAt(), 2, PageRequest.of(0, 2))).thenReturn(new ArrayList<>());
+		
+		when(rateCache.getTimelines(HKD, "2023-06-28"))
+		.thenReturn(timelines(rates));
+		
+		TransactionPageDTO page=service.listTransactionPage("Hong Kong-Dollar", null, 2);
+		
+		assertEquals(2, page.getTransactionList().size());
+		assertEquals(0, new BigDecimal(15682).compareTo(page.getTransactionList().get(0).getAmount()));
+		assertEquals(0, new BigDecimal(7831).compareTo(page.getTransactionList().get(1).getAmount()));
+		assertNotNull(page.getNextCursor());
+		
+		TransactionPageDTO nextPage=service.listTransactionPage("Hong Kong-Dollar", page.getNextCursor(), 2);
+		
+		assertEquals(0, nextPage.getTransactionList().size());
+		assertNull(nextPage.getNextCursor());
+	}
+	
+	@DisplayName("Transaction-List page with invalid cursor")
+	@Test
+	public void listTransactionPage_invalidCursor() throws Exception {
+		
+		Exception exception=assertThrows(ServiceException.class, ()->{
+			service.listTransactionPage("Hong Kong-Dollar", "not-a-cursor", 2);
+		});
+		
+		assertTrue(exception.getMessage().contains("Invalid cursor"));
+	}
+	
+	@DisplayName("Transaction-List page with invalid size")
+	@Test
+	public void listTransactionPage_invalidSize() throws Exception {
+		
+		Exception exception=assertThrows(ServiceException.class, ()->{
+			service.listTransactionPage("Hong Kong-Dollar", null, 0);
+		});
+		
+		assertTrue(exception.getMessage().contains("Page size should between 1 and 1000"));
+	}
+	
+	@DisplayName("Transaction-Insert batch with invalid item")
+	@Test
+	public void createTransactions_partial() throws ServiceException {
+		
+		List<CreateTransactionRequest> requestList=new ArrayList<>();
+		requestList.add(new CreateTransactionRequest("Transaction 1 Description", new BigDecimal(123)));
+		requestList.add(new CreateTransactionRequest("Transaction 2 Description", new BigDecimal(-1)));
+		requestList.add(new CreateTransactionRequest("Transaction 3 Description", new BigDecimal(456)));
+		
+		when(repository.saveAll(Mockito.anyList())).thenAnswer(i -> {
+			List<Transaction> saved=i.getArgument(0);
+			for (int j=0; j<saved.size(); j++) {
+				saved.get(j).setTransactionId(j + 1);
+			}
+			return saved;
+		});
+		
+		List<CreateTransactionResultDTO> resultList=service.createTransactions(requestList);
+		
+		assertEquals(3, resultList.size());
+		assertEquals(1L, resultList.get(0).getTransactionId());
+		assertNull(resultList.get(0).getErrorMessage());
+		assertNull(resultList.get(1).getTransactionId());
+		assertEquals("Amount should be positive", resultList.get(1).getErrorMessage());
+		assertEquals(2L, resultList.get(2).getTransactionId());
+		assertEquals(2, resultList.get(2).getIndex());
+	}
+	
+	@DisplayName("Transaction-Insert batch converts to the stored currencies only after commit")
+	@Test
+	public void createTransactions_conversionAfterCommit() throws ServiceException {
+		
+		List<CreateTransactionRequest> requestList=Collections.singletonList(
+				new CreateTransactionRequest("Transaction 1 Description", new BigDecimal(123)));
+		
+		when(repository.saveAll(Mockito.anyList())).thenAnswer(i -> i.getArgument(0));
+		doThrow(new IllegalStateException("view down")).when(conversionView).onCreated(Mockito.anyList());
+		
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			List<CreateTransactionResultDTO> resultList=service.createTransactions(requestList);
+			assertNull(resultList.get(0).getErrorMessage());
+			verifyNoInteractions(conversionView);
+			
+			//a failed conversion view write does not fail the committed batch
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+			verify(conversionView).onCreated(Mockito.anyList());
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+	
+	@DisplayName("Transaction-Insert batch with empty list")
+	@Test
+	public void createTransactions_empty() {
+		
+		Exception exception=assertThrows(ServiceException.class, ()->{
+			service.createTransactions(new ArrayList<>());
+		});
+		
+		assertTrue(exception.getMessage().contains("Transaction list must not be empty"));
+	}
+	
+	@DisplayName("Transaction-List success in multiple currencies")
+	@Test
+	public void listTransactions_multiCurrency() throws Exception {
+		
+		List<Transaction> list=new ArrayList<>();
+		list.add(Transaction.builder()
+				.transactionId(1)
+				.description("Transaction 1 Description")
+				.amount(new BigDecimal(1000))
+				.createdAt(new Timestamp( df.parse("2024-04-28").getTime() ))
+				.build());
+		
+		List<ExchangeRate> rates= new ArrayList<>();
+		rates.add(ExchangeRate.builder()
+				.countryCurrencyDesc("Hong Kong-Dollar")
+				.exchangeRate(new BigDecimal(7.831))
+				.effectiveDate("2024-03-31")
+				.build());
+		rates.add(ExchangeRate.builder()
+				.countryCurrencyDesc("Canada-Dollar")
+				.exchangeRate(new BigDecimal("1.35"))
+				.effectiveDate("2024-03-31")
+				.build());
+		
+		when(repository.findAll()).thenReturn(list);
+		
+		when(rateCache.getTimelines(Arrays.asList("Canada-Dollar", "Hong Kong-Dollar"), "2023-10-28"))
+		.thenReturn(timelines(rates));
+		
+		List<TransactionDTO> transactions=service.listTransaction("Canada-Dollar, Hong Kong-Dollar");
+		
+		assertEquals(2, transactions.size());
+		assertEquals("Canada-Dollar", transactions.get(0).getCurrency());
+		assertEquals(0, new BigDecimal(1350).compareTo(transactions.get(0).getAmount()));
+		assertEquals("Hong Kong-Dollar", transactions.get(1).getCurrency());
+		assertEquals(0, new BigDecimal(7831).compareTo(transactions.get(1).getAmount()));
+		assertEquals(1, transactions.get(1).getTransactionId());
+	}
+	
+	@DisplayName("Transaction-Conversion with stored rates during fiscal API outage is flagged stale")
+	@Test
+	public void mapToDTO_staleRate() {
+		
+		Transaction transaction=Transaction.builder()
+				.transactionId(1)
+				.amount(new BigDecimal(100))
+				.createdAt(Timestamp.from(Instant.parse("2024-04-28T10:00:00Z")))
+				.build();
+		ExchangeRate rate=ExchangeRate.builder()
+				.countryCurrencyDesc("Canada-Dollar")
+				.exchangeRate(new BigDecimal("1.35"))
+				.effectiveDate("2024-03-31")
+				.build();
+		
+		assertFalse(service.mapToDTO(transaction, RateTimeline.of("Canada-Dollar", Collections.singletonList(rate))).isStaleRate());
+		
+		rate.setStale(true);
+		TransactionDTO dto=service.mapToDTO(transaction, RateTimeline.of("Canada-Dollar", Collections.singletonList(rate)));
+		assertTrue(dto.isStaleRate());
+		assertEquals(0, new BigDecimal("135.00").compareTo(dto.getAmount()));
+	}
+	
+	private Map<String, RateTimeline> timelines(List<ExchangeRate> rates) {
+		Map<String, List<ExchangeRate>> rateMap=new HashMap<>();
+		rateMap.put("Hong Kong-Dollar", new ArrayList<>());
+		for (ExchangeRate rate : rates) {
+			rateMap.computeIfAbsent(rate.getCountryCurrencyDesc(), k->new ArrayList<>()).add(rate);
+		}
+		Map<String, RateTimeline> timelines=new HashMap<>();
+		rateMap.forEach((currency, list)->timelines.put(currency, RateTimeline.of(currency, list)));
+		return timelines;
+	}
+	
 }
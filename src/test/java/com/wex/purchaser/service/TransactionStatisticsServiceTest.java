@@ -0,0 +1,108 @@
+package com.wex.purchaser.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.repository.TransactionDailyTotalRepository;
+import com.wex.purchaser.repository.TransactionRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class TransactionStatisticsServiceTest {
+
+	@InjectMocks
+	private TransactionStatisticsService service;
+
+	@Mock
+	private TransactionDailyTotalRepository repository;
+
+	@Mock
+	private TransactionRepository transactionRepository;
+
+	@DisplayName("Statistics-New transactions are added to the total of their day")
+	@Test
+	public void onCreated_addedByDay() {
+
+		LocalDate day1=LocalDate.parse("2024-04-28");
+		LocalDate day2=LocalDate.parse("2024-04-29");
+
+		when(repository.increment(day1, 2, new BigDecimal("30.50"))).thenReturn(1);
+		when(repository.increment(day2, 1, new BigDecimal("5.00"))).thenReturn(0);
+
+		service.onCreated(Arrays.asList(
+				transaction("2024-04-28T01:00:00Z", "10.00"),
+				transaction("2024-04-28T23:59:59Z", "20.50"),
+				transaction("2024-04-29T00:00:00Z", "5.00")));
+
+		verify(repository, never()).insertDay(eq(day1), anyLong(), any());
+		verify(repository).insertDay(day2, 1, new BigDecimal("5.00"));
+	}
+
+	@DisplayName("Statistics-Totals are recomputed before read when stale")
+	@Test
+	public void findDailyTotals_rebuildWhenStale() {
+
+		when(transactionRepository.count()).thenReturn(3L);
+		when(repository.sumTransactionCount()).thenReturn(2L);
+
+		service.checkOnStartup();
+		service.findDailyTotals(null, null);
+		service.findDailyTotals(null, null);
+
+		verify(repository, times(1)).deleteAllDays();
+		verify(repository, times(1)).insertFromTransactions();
+		verify(repository, times(2)).findByTransactionDateBetweenOrderByTransactionDate(any(), any());
+	}
+
+	@DisplayName("Statistics-Totals stay stale when the rebuild fails")
+	@Test
+	public void findDailyTotals_rebuildFailed() {
+
+		when(transactionRepository.count()).thenReturn(3L);
+		when(repository.sumTransactionCount()).thenReturn(2L);
+		when(repository.insertFromTransactions()).thenThrow(new IllegalStateException("DB down")).thenReturn(1);
+
+		service.checkOnStartup();
+		assertThrows(IllegalStateException.class, ()->service.findDailyTotals(null, null));
+		service.findDailyTotals(null, null);
+
+		verify(repository, times(2)).insertFromTransactions();
+		verify(repository, times(1)).findByTransactionDateBetweenOrderByTransactionDate(any(), any());
+	}
+
+	@DisplayName("Statistics-Transactions created before a rebuild and added after it mark the totals stale")
+	@Test
+	public void onCreated_overlapsRebuild() {
+
+		service.rebuild();
+		service.onCreated(Arrays.asList(transaction(Instant.now().plusSeconds(60).toString(), "10.00")));
+		service.findDailyTotals(null, null);
+
+		verify(repository, times(1)).insertFromTransactions();
+
+		service.onCreated(Arrays.asList(transaction("2024-04-28T01:00:00Z", "10.00")));
+		service.findDailyTotals(null, null);
+
+		verify(repository, times(2)).insertFromTransactions();
+	}
+
+	private Transaction transaction(String createdAt, String amount) {
+		return Transaction.builder()
+				.amount(new BigDecimal(amount))
+				.createdAt(Timestamp.from(Instant.parse(createdAt)))
+				.build();
+	}
+}
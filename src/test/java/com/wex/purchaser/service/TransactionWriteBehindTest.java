@@ -0,0 +1,268 @@
+package com.wex.purchaser.service;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.wex.purchaser.config.WriteBehindProperties;
+import com.wex.purchaser.entity.Transaction;
+import com.wex.purchaser.exception.ServiceException;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Stores journaled transactions into the migrated schema of an in-memory H2 database
+ */
+public class TransactionWriteBehindTest {
+	
+	private HikariDataSource dataSource;
+	
+	private JdbcTemplate jdbcTemplate;
+	
+	private WriteBehindProperties properties;
+	
+	private EntityManagerFactory entityManagerFactory;
+	
+	private List<TransactionsStoredEvent> events=Collections.synchronizedList(new ArrayList<>());
+	
+	private List<TransactionWriteBehind> writers=new ArrayList<>();
+	
+	private static final long SEGMENT_SIZE=1024 * 1024;
+	
+	@TempDir
+	Path dir;
+	
+	@BeforeEach
+	public void setup() {
+		
+		HikariConfig config=new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setPassword("");
+		dataSource=new HikariDataSource(config);
+		Flyway.configure().dataSource(dataSource).load().migrate();
+		jdbcTemplate=new JdbcTemplate(dataSource);
+		
+		//hibernate on the migrated schema, for the id generator of Transaction
+		LocalContainerEntityManagerFactoryBean factory=new LocalContainerEntityManagerFactoryBean();
+		factory.setDataSource(dataSource);
+		factory.setPackagesToScan("com.wex.purchaser.entity");
+		factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		factory.afterPropertiesSet();
+		entityManagerFactory=factory.getObject();
+		
+		properties=new WriteBehindProperties();
+		properties.setEnabled(true);
+		properties.setJournalFile(dir.resolve("transactions.journal").toString());
+		properties.setBatchSize(100);
+		properties.setFlushInterval(Duration.ofMillis(10));
+	}
+	
+	@AfterEach
+	public void tearDown() throws Exception {
+		for (TransactionWriteBehind writer : writers) {
+			writer.shutdown();
+		}
+		entityManagerFactory.close();
+		jdbcTemplate.execute("drop all objects");
+		dataSource.close();
+	}
+	
+	private TransactionWriteBehind start() throws Exception {
+		
+		TransactionWriteBehind writer=new TransactionWriteBehind();
+		ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(writer, "transactionManager", new DataSourceTransactionManager(dataSource));
+		ReflectionTestUtils.setField(writer, "properties", properties);
+		ReflectionTestUtils.setField(writer, "eventPublisher", (ApplicationEventPublisher) event->events.add((TransactionsStoredEvent) event));
+		ReflectionTestUtils.setField(writer, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(writer, "entityManagerFactory", entityManagerFactory);
+		writer.start();
+		writers.add(writer);
+		return writer;
+	}
+	
+	@DisplayName("WriteBehind-Accepted transactions get unique ids and are stored in batches")
+	@Test
+	public void submit_stored() throws Exception {
+		
+		TransactionWriteBehind writer=start();
+		Set<Long> ids=new TreeSet<>();
+		for (int i=0; i<250; i++) {
+			ids.add(writer.submit(transaction("Transaction " + i)).getTransactionId());
+		}
+		assertEquals(250, ids.size());
+		
+		//hibernate saves take their ids from the same pooled blocks, including the first one
+		EntityManager entityManager=entityManagerFactory.createEntityManager();
+		try {
+			entityManager.getTransaction().begin();
+			for (int i=0; i<60; i++) {
+				Transaction saved=transaction("Saved " + i);
+				entityManager.persist(saved);
+				ids.add(saved.getTransactionId());
+			}
+			entityManager.getTransaction().commit();
+		} finally {
+			entityManager.close();
+		}
+		for (int i=0; i<60; i++) {
+			ids.add(writer.submit(transaction("Transaction " + (250 + i))).getTransactionId());
+		}
+		assertEquals(370, ids.size());
+		
+		writer.shutdown();
+		writers.clear();
+		
+		assertEquals(370, jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class));
+		assertEquals(310, events.stream().mapToInt(e->e.getTransactions().size()).sum());
+		assertEquals(310, writer.getStoredCount());
+		assertEquals(0, writer.getPendingCount());
+		assertEquals(0, new TransactionJournal(dir.resolve("transactions.journal"), SEGMENT_SIZE).size());
+	}
+	
+	@DisplayName("WriteBehind-Journaled transactions not stored are stored at the next start, once")
+	@Test
+	public void start_replayJournal() throws Exception {
+		
+		Transaction stored=transaction("Stored");
+		stored.setTransactionId(1);
+		Transaction pending=transaction("Pending");
+		pending.setTransactionId(2);
+		jdbcTemplate.update("insert into transactions (transaction_id, amount, created_at, description) values (?, ?, ?, ?)"
+				, stored.getTransactionId(), stored.getAmount(), stored.getCreatedAt(), stored.getDescription());
+		try (TransactionJournal journal=new TransactionJournal(dir.resolve("transactions.journal"), SEGMENT_SIZE)) {
+			journal.append(stored);
+			journal.append(pending);
+		}
+		
+		start();
+		
+		assertEquals(Collections.singletonList("Pending"), jdbcTemplate.queryForList("select description from transactions where transaction_id = 2", String.class));
+		assertEquals(2, jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class));
+	}
+	
+	@DisplayName("WriteBehind-Transactions are rejected while the queue is full")
+	@Test
+	public void submit_queueFull() throws Exception {
+		
+		properties.setQueueCapacity(2);
+		properties.setOfferTimeout(Duration.ofMillis(10));
+		
+		//the writer cannot insert until released
+		CountDownLatch release=new CountDownLatch(1);
+		jdbcTemplate=new JdbcTemplate(dataSource) {
+			@Override
+			public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.batchUpdate(sql, batchArgs);
+			}
+		};
+		TransactionWriteBehind writer=start();
+		
+		try {
+			writer.submit(transaction("First"));
+			writer.submit(transaction("Second"));
+			ServiceException e=assertThrows(ServiceException.class, ()->writer.submit(transaction("Third")));
+			assertTrue(e.getMessage().contains("try again later"));
+			assertEquals(1, writer.getRejectedCount());
+			assertEquals(2, writer.getPendingCount());
+		} finally {
+			release.countDown();
+		}
+		
+		writer.shutdown();
+		writers.clear();
+		assertEquals(2, jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class));
+	}
+	
+	@DisplayName("WriteBehind-Journal segments are deleted while transactions keep coming")
+	@Test
+	public void submit_journalSegments() throws Exception {
+		
+		properties.setJournalSegmentSize(DataSize.ofBytes(1024));
+		TransactionWriteBehind writer=start();
+		for (int i=0; i<500; i++) {
+			writer.submit(transaction("Transaction " + i));
+		}
+		
+		long deadline=System.currentTimeMillis() + 10000;
+		while (writer.getStoredCount() < 500 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(500, writer.getStoredCount());
+		
+		//released without waiting for an empty queue, only the current segment is left
+		try (Stream<Path> files=Files.list(dir)) {
+			assertEquals(1, files.filter(file->file.getFileName().toString().matches("transactions\\.journal\\.\\d+")).count());
+		}
+		assertEquals(0, new TransactionJournal(dir.resolve("transactions.journal"), SEGMENT_SIZE).size());
+	}
+	
+	@DisplayName("WriteBehind-Transactions refused by DB are dead-lettered and the others stored")
+	@Test
+	public void submit_deadLetter() throws Exception {
+		
+		TransactionWriteBehind writer=start();
+		writer.submit(transaction("Before"));
+		//longer than the description column
+		Transaction refused=writer.submit(transaction(String.join("", Collections.nCopies(60, "x"))));
+		writer.submit(transaction("After"));
+		
+		writer.shutdown();
+		writers.clear();
+		
+		assertEquals(2, jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class));
+		assertEquals(2, writer.getStoredCount());
+		assertEquals(1, writer.getDeadLetterCount());
+		assertEquals(0, new TransactionJournal(dir.resolve("transactions.journal"), SEGMENT_SIZE).size());
+		try (TransactionJournal deadLetters=new TransactionJournal(dir.resolve("transactions.journal.dead-letter"), SEGMENT_SIZE)) {
+			List<Transaction> transactions=deadLetters.recover();
+			assertEquals(1, transactions.size());
+			assertEquals(refused.getTransactionId(), transactions.get(0).getTransactionId());
+		}
+	}
+	
+	private Transaction transaction(String description) {
+		
+		return Transaction.builder()
+				.description(description)
+				.amount(new BigDecimal("12.30"))
+				.createdAt(new Timestamp(System.currentTimeMillis()))
+				.build();
+	}
+}